@@ -0,0 +1,225 @@
+package mkoutra.subtitleshift.cli;
+
+import mkoutra.subtitleshift.engine.RepairOptions;
+import mkoutra.subtitleshift.engine.RepairReport;
+import mkoutra.subtitleshift.engine.SubtitleEngine;
+import mkoutra.subtitleshift.format.SubtitleFormat;
+import mkoutra.subtitleshift.format.SubtitleFormats;
+import mkoutra.subtitleshift.model.LinearTransform;
+import mkoutra.subtitleshift.model.TimeTransform;
+import mkoutra.subtitleshift.model.Timestamp;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Shifts subtitle files and whole directory trees on local disk, without the web application:
+ * <pre>
+ * subtitle-shift --shift 1500 [--fps 25:23.976] [--threads 8] [--output shifted] [--repair [--drop-negative]] movies/ extra.srt
+ * </pre>
+ * Files are shifted in parallel, one per thread, and written under the output directory with their
+ * path relative to the argument they were found under. With --repair, the structure of every file is
+ * repaired while it is shifted (see {@link SubtitleEngine#repairFile}) and a JSON report is written next
+ * to it, as "&lt;file&gt;.repair.json". Exits with 1 if any file failed, 2 on invalid arguments,
+ * including an output file that would overwrite its input or be written for two inputs.
+ *
+ * @author Michalis Koutrakis
+ */
+public final class ShiftCli {
+
+    static final String USAGE = "Usage: subtitle-shift [--shift MS] [--fps SOURCE:TARGET] [--threads N] [--output DIR]"
+            + " [--repair [--drop-negative]] [--] FILE|DIR...";
+    static final String REPORT_SUFFIX = ".repair.json";
+
+    private ShiftCli() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    private record Job(Path input, Path output) {
+    }
+
+    /**
+     * Runs the command.
+     *
+     * @param args The command line arguments.
+     * @param out  Receives the summary.
+     * @param err  Receives usage and per-file errors.
+     * @return     The exit code.
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        long shift = 0;
+        String fps = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path outputDir = Paths.get("shifted");
+        boolean repair = false;
+        boolean dropNegative = false;
+        List<Path> inputs = new ArrayList<>();
+
+        TimeTransform transform;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-s", "--shift" -> shift = Timestamp.parseShift(value(args, ++i));
+                    case "-f", "--fps" -> fps = value(args, ++i);
+                    case "-t", "--threads" -> threads = Integer.parseInt(value(args, ++i));
+                    case "-o", "--output" -> outputDir = Paths.get(value(args, ++i));
+                    case "-r", "--repair" -> repair = true;
+                    case "--drop-negative" -> dropNegative = true;
+                    case "--" -> {
+                        while (++i < args.length) {     // Everything after "--" is a path, even "-name.srt"
+                            inputs.add(Paths.get(args[i]));
+                        }
+                    }
+                    default -> {
+                        if (args[i].startsWith("-")) {
+                            throw new IllegalArgumentException("Unknown option: " + args[i]);
+                        }
+                        inputs.add(Paths.get(args[i]));
+                    }
+                }
+            }
+            if (inputs.isEmpty() || threads < 1) {
+                throw new IllegalArgumentException("Nothing to shift");
+            }
+            if (dropNegative && !repair) {
+                throw new IllegalArgumentException("--drop-negative needs --repair");
+            }
+            if (fps == null) {
+                transform = TimeTransform.offset(shift);
+            } else {
+                String[] rates = fps.split(":");
+                if (rates.length != 2) {
+                    throw new IllegalArgumentException("Invalid framerates: " + fps);
+                }
+                transform = LinearTransform.framerate(rates[0], rates[1], shift);
+            }
+        } catch (IllegalArgumentException e) {  // NumberFormatException included
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
+
+        SubtitleEngine engine = SubtitleEngine.defaults();
+        RepairOptions options = repair
+                ? RepairOptions.parse(dropNegative ? "drop" : "clamp", true, true, "crlf")
+                : null;
+        Set<String> extensions = SubtitleFormats.defaults().getFormats().stream()
+                .flatMap(format -> format.getExtensions().stream())
+                .collect(Collectors.toSet());
+
+        List<Job> jobs;
+        try {
+            jobs = collect(inputs, outputDir, extensions);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return 2;
+        } catch (IOException e) {
+            err.println("Failed to list files: " + e.getMessage());
+            return 1;
+        }
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> results = new ArrayList<>(jobs.size());
+        for (Job job : jobs) {
+            results.add(executor.submit(() -> {
+                Files.createDirectories(job.output().getParent());
+                if (options == null) {
+                    return engine.shiftFile(job.input(), job.output(), transform).counts().cues();
+                }
+                RepairReport report = engine.repairFile(job.input(), job.output(), transform, options);
+                Files.writeString(job.output().resolveSibling(job.output().getFileName() + REPORT_SUFFIX),
+                        report.toJson(true), StandardCharsets.UTF_8);
+                return report.written();
+            }));
+        }
+        executor.shutdown();
+
+        int failed = 0;
+        long cues = 0;
+        for (int i = 0; i < jobs.size(); i++) {
+            try {
+                cues += results.get(i).get();
+            } catch (ExecutionException e) {
+                failed++;
+                err.println(jobs.get(i).input() + ": " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+                return 1;
+            }
+        }
+
+        out.printf(Locale.ROOT, "Shifted %d files (%d cues) by %s in %d ms, %d failed.%n",
+                jobs.size() - failed, cues, transform.describe(), (System.nanoTime() - start) / 1_000_000, failed);
+        return failed == 0 ? 0 : 1;
+    }
+
+    /**
+     * Lists the subtitle files of the inputs. A file argument is shifted whatever its extension;
+     * directories are searched recursively for files with the extension of a {@link SubtitleFormat},
+     * skipping the output directory, so that earlier results are not shifted again.
+     *
+     * @throws IllegalArgumentException If an output file would be its own input, or the output of two inputs:
+     *                                  the output is truncated before the input is read, and two jobs writing
+     *                                  the same file corrupt it.
+     */
+    private static List<Job> collect(List<Path> inputs, Path outputDir, Set<String> extensions) throws IOException {
+        Path outputRoot = outputDir.toAbsolutePath().normalize();
+        List<Job> jobs = new ArrayList<>();
+        for (Path input : inputs) {
+            if (!Files.isDirectory(input)) {
+                jobs.add(new Job(input, outputDir.resolve(input.getFileName())));
+                continue;
+            }
+            try (Stream<Path> paths = Files.walk(input)) {
+                paths.filter(path -> !path.toAbsolutePath().normalize().startsWith(outputRoot))
+                        .filter(Files::isRegularFile)
+                        .filter(path -> extensions.contains(extension(path)))
+                        .forEach(path -> jobs.add(new Job(path, outputDir.resolve(input.relativize(path)))));
+            }
+        }
+        Map<Path, Path> inputsByOutput = new HashMap<>();
+        for (Job job : jobs) {
+            if (Files.exists(job.input()) && Files.exists(job.output()) && Files.isSameFile(job.input(), job.output())) {
+                throw new IllegalArgumentException("The output would overwrite the input: " + job.input());
+            }
+            Path other = inputsByOutput.putIfAbsent(job.output().toAbsolutePath().normalize(), job.input());
+            if (other != null) {
+                throw new IllegalArgumentException("Both " + other + " and " + job.input() + " would be written to " + job.output());
+            }
+        }
+        return jobs;
+    }
+
+    private static String extension(Path path) {
+        String name = path.getFileName().toString();
+        return name.lastIndexOf('.') < 0 ? "" : name.substring(name.lastIndexOf('.')).toLowerCase(Locale.ROOT);
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+        }
+        return args[i];
+    }
+}
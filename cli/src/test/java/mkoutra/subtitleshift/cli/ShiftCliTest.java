@@ -0,0 +1,117 @@
+package mkoutra.subtitleshift.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShiftCliTest {
+
+    private static final String SRT = "1\n00:00:39,398 --> 00:00:40,940\nHello\n\n";
+    private static final String VTT = "WEBVTT\n\n00:39.398 --> 00:40.940\nHello\n";
+
+    @TempDir
+    Path root;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    private int run(String... args) {
+        return ShiftCli.run(args, new PrintStream(out, true, StandardCharsets.UTF_8), new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testShiftDirectoryTree() throws IOException {
+        Path movies = Files.createDirectories(root.resolve("movies/season1"));
+        Files.writeString(movies.resolve("e01.srt"), SRT);
+        Files.writeString(movies.resolve("e02.vtt"), VTT);
+        Files.writeString(movies.resolve("notes.txt"), "not a subtitle");
+        Path output = root.resolve("shifted");
+
+        assertEquals(0, run("--shift", "1000", "--threads", "2", "--output", output.toString(), root.resolve("movies").toString()));
+
+        assertEquals(SRT.replace("00:00:39,398 --> 00:00:40,940", "00:00:40,398 --> 00:00:41,940"),
+                Files.readString(output.resolve("season1/e01.srt")));
+        assertEquals(VTT.replace("00:39.398 --> 00:40.940", "00:40.398 --> 00:41.940"),
+                Files.readString(output.resolve("season1/e02.vtt")));
+        assertTrue(Files.notExists(output.resolve("season1/notes.txt")));
+        assertTrue(out.toString(StandardCharsets.UTF_8).startsWith("Shifted 2 files (2 cues) by +1000"));
+    }
+
+    @Test
+    void testRepairWritesReport() throws IOException {
+        Path input = Files.writeString(root.resolve("movie.srt"), SRT + "7\n00:00:41,000 --> 00:00:42,000\nBye\n");
+        Path output = root.resolve("shifted");
+
+        assertEquals(0, run("--shift", "-40000", "--repair", "--output", output.toString(), input.toString()));
+
+        assertEquals("1\r\n00:00:00,000 --> 00:00:00,940\r\nHello\r\n\r\n2\r\n00:00:01,000 --> 00:00:02,000\r\nBye\r\n",
+                Files.readString(output.resolve("movie.srt")));
+        String report = Files.readString(output.resolve("movie.srt" + ShiftCli.REPORT_SUFFIX));
+        assertTrue(report.startsWith("{\"cues\":2,\"written\":2,\"clamped\":1,\"dropped\":0,\"renumbered\":1,"));
+    }
+
+    @Test
+    void testMissingFileFails() {
+        assertEquals(1, run("--output", root.resolve("shifted").toString(), root.resolve("missing.srt").toString()));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("missing.srt"));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertEquals(2, run("--shift", "1s", "movie.srt"));
+        assertEquals(2, run("--fps", "25", "movie.srt"));
+        assertEquals(2, run("--shift", "1000"));
+        assertEquals(2, run("-x", "movie.srt"));
+        assertEquals(2, run("--shfit", "1000", "movie.srt"));
+        assertEquals(2, run("--drop-negative", "movie.srt"));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("Unknown option: --shfit"));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains(ShiftCli.USAGE));
+    }
+
+    @Test
+    void testOutputNeverOverwritesInput() throws IOException {
+        Path input = Files.writeString(root.resolve("movie.srt"), SRT);
+
+        assertEquals(2, run("--shift", "1000", "--output", root.toString(), input.toString()));
+        assertEquals(SRT, Files.readString(input));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("overwrite"));
+    }
+
+    @Test
+    void testOutputDirectoryIsNotShiftedAgain() throws IOException {
+        Files.writeString(root.resolve("movie.srt"), SRT);
+        Path output = root.resolve("shifted");
+
+        assertEquals(0, run("--shift", "1000", "--output", output.toString(), root.toString()));
+        assertEquals(0, run("--shift", "1000", "--output", output.toString(), root.toString()));
+
+        assertTrue(Files.notExists(output.resolve("shifted")));
+        assertTrue(Files.readString(output.resolve("movie.srt")).contains("00:00:40,398 --> 00:00:41,940"));
+    }
+
+    @Test
+    void testTwoInputsNeverShareAnOutput() throws IOException {
+        Path a = Files.writeString(Files.createDirectories(root.resolve("a")).resolve("movie.srt"), SRT);
+        Path b = Files.writeString(Files.createDirectories(root.resolve("b")).resolve("movie.srt"), SRT);
+        Path output = root.resolve("shifted");
+
+        assertEquals(2, run("--output", output.toString(), a.toString(), b.toString()));
+        assertEquals(2, run("--output", output.toString(), a.toString(), a.toString()));
+        assertEquals(2, run("--output", output.toString(), root.resolve("a").toString(), root.resolve("b").toString()));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("would be written to"));
+        assertTrue(Files.notExists(output));
+
+        // Within one tree, their paths keep them apart
+        assertEquals(0, run("--output", output.toString(), root.toString()));
+        assertTrue(Files.exists(output.resolve("a/movie.srt")));
+        assertTrue(Files.exists(output.resolve("b/movie.srt")));
+    }
+}
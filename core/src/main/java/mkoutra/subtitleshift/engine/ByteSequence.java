@@ -0,0 +1,59 @@
+package mkoutra.subtitleshift.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable {@link CharSequence} view over a range of a {@link ByteBuffer}, mapping every byte
+ * to the char with the same value (ISO-8859-1). It lets the char-level parsers scan ASCII-compatible
+ * bytes without decoding them or allocating a String.
+ *
+ * @author Michalis Koutrakis
+ */
+final class ByteSequence implements CharSequence {
+
+    private final ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    ByteSequence(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Points the view to another range of the buffer.
+     *
+     * @return This view.
+     */
+    ByteSequence reset(int offset, int length) {
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return (char) (buffer.get(offset + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new ByteSequence(buffer).reset(offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(charAt(i));
+        }
+        return sb.toString();
+    }
+}
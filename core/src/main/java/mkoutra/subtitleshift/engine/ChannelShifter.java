@@ -0,0 +1,282 @@
+package mkoutra.subtitleshift.engine;
+
+import mkoutra.subtitleshift.format.SubtitleFormat;
+import mkoutra.subtitleshift.model.TimeTransform;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Byte-level shifter for subtitle files in ASCII-compatible encodings.
+ * <p>
+ * The input file is memory-mapped and scanned line by line without decoding; the lines are handed
+ * to the {@link SubtitleFormat} through a {@link ByteSequence}, so the same code serves every format.
+ * Every byte that is not part of a time line is copied unchanged (line endings included), and only
+ * the timestamps of time lines are rewritten.
+ * <p>
+ * For fixed-width formats a shifted time line has the same length as the original one, so the output
+ * is exactly as long as the input and every byte keeps its offset. This lets large files be split into
+ * chunks that are shifted in parallel and written straight to their place in the output file.
+ *
+ * @author Michalis Koutrakis
+ */
+final class ChannelShifter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ChannelShifter() {
+    }
+
+    /**
+     * Checks if the encoding writes digits, ASCII letters and punctuation, and line breaks
+     * as the single ASCII bytes, and never uses those bytes inside other characters.
+     *
+     * @param charset The encoding of the subtitle file.
+     * @return        True if the file can be shifted at byte level.
+     */
+    static boolean supports(Charset charset) {
+        String name = charset.name();
+        return charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.US_ASCII)
+                || name.startsWith("ISO-8859-")
+                || name.startsWith("windows-125");
+    }
+
+    /**
+     * Shifts the time lines of the input file and writes the result to the output file.
+     *
+     * @param inputPath  The path to the original subtitle file.
+     * @param outputPath The path where the modified file will be saved.
+     * @param format     The format of the file.
+     * @param transform  The transform to apply to the timestamps.
+     * @return           The number of lines and cues processed.
+     * @throws IOException If an error occurs while reading or writing the file.
+     */
+    static ShiftCounts shift(Path inputPath, Path outputPath, SubtitleFormat format, TimeTransform transform) throws IOException {
+        try (FileChannel in = FileChannel.open(inputPath, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(outputPath, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (in.size() > Integer.MAX_VALUE) {
+                throw new IOException("Subtitle file too large: " + inputPath);
+            }
+            return shift(in.map(FileChannel.MapMode.READ_ONLY, 0, in.size()), out, format, transform);
+        }
+    }
+
+    /**
+     * Shifts the time lines of the input file in parallel chunks and writes the result to the output file.
+     * Chunks are split at cue boundaries (blank lines) and shifted on the common {@link java.util.concurrent.ForkJoinPool}.
+     *
+     * @param inputPath  The path to the original subtitle file.
+     * @param outputPath The path where the modified file will be saved.
+     * @param format     The format of the file, which must be {@link SubtitleFormat#isFixedWidth() fixed-width}.
+     * @param transform  The transform to apply to the timestamps, which must be {@link TimeTransform#isCueIndependent()}.
+     * @param chunkSize  The approximate number of bytes per chunk.
+     * @return           The number of lines and cues processed.
+     * @throws IOException If an error occurs while reading or writing the file.
+     */
+    static ShiftCounts shiftParallel(Path inputPath, Path outputPath, SubtitleFormat format,
+                                     TimeTransform transform, int chunkSize)
+            throws IOException {
+        if (!format.isFixedWidth()) {
+            throw new IllegalArgumentException(format.getName() + " time lines change length when shifted");
+        }
+        if (!transform.isCueIndependent()) {
+            throw new IllegalArgumentException("Chunks cannot know the index of their cues");
+        }
+        try (FileChannel in = FileChannel.open(inputPath, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(outputPath, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (in.size() > Integer.MAX_VALUE) {
+                throw new IOException("Subtitle file too large: " + inputPath);
+            }
+            ByteBuffer input = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            int[] bounds = chunkBounds(input, chunkSize);
+
+            return IntStream.range(0, bounds.length - 1)
+                    .parallel()
+                    .mapToObj(i -> {
+                        ByteBuffer chunk = input.slice(bounds[i], bounds[i + 1] - bounds[i]);
+                        try {
+                            return shift(chunk, new PositionedChannel(out, bounds[i]), format, transform);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .reduce(ShiftCounts.NONE, ShiftCounts::plus);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Splits the input into chunks of about {@code chunkSize} bytes. Every chunk but the first starts
+     * right after a blank line, so no cue is split. Files without blank lines stay in a single chunk.
+     *
+     * @return The chunk offsets, starting with 0 and ending with the limit of the input.
+     */
+    static int[] chunkBounds(ByteBuffer input, int chunkSize) {
+        int limit = input.limit();
+        int[] bounds = new int[8];
+        int count = 0;
+        bounds[count++] = 0;
+
+        int split = 0;
+        while (limit - split > chunkSize) {
+            split = nextCueStart(input, split + chunkSize, limit);
+            if (split >= limit) {
+                break;
+            }
+            if (count == bounds.length - 1) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[count++] = split;
+        }
+        bounds[count++] = limit;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Returns the offset right after the next blank line ("\n\n" or "\n\r\n") at or after {@code from},
+     * or {@code limit} if there is none.
+     */
+    private static int nextCueStart(ByteBuffer input, int from, int limit) {
+        for (int i = from; i < limit - 1; i++) {
+            if (input.get(i) != '\n') {
+                continue;
+            }
+            if (input.get(i + 1) == '\n') {
+                return i + 2;
+            }
+            if (input.get(i + 1) == '\r' && i + 2 < limit && input.get(i + 2) == '\n') {
+                return i + 3;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Shifts the time lines between the position and the limit of {@code input}
+     * and writes the result to {@code out}. The input position is left unchanged.
+     *
+     * @return The number of lines and cues processed.
+     */
+    static ShiftCounts shift(ByteBuffer input, WritableByteChannel out, SubtitleFormat format, TimeTransform transform)
+            throws IOException {
+        ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+        ByteSequence line = new ByteSequence(input);
+        long[] times = new long[2];                             // Reused for every time line
+        StringBuilder shiftedTimeLine = new StringBuilder();
+
+        int limit = input.limit();
+        int copyFrom = input.position();    // Start of the bytes not written yet
+        int pos = copyFrom;
+        long lines = 0;
+        long cues = 0;
+        while (pos < limit) {
+            lines++;
+            int end = pos;
+            byte b;
+            while (end < limit && (b = input.get(end)) != '\n' && b != '\r') {
+                end++;
+            }
+
+            if (format.parseTimes(line.reset(pos, end - pos), times)) {
+                copy(input, copyFrom, pos, output, out);
+                transform.applyToCue(cues++, times);
+                shiftedTimeLine.setLength(0);
+                format.writeTimeLine(line, times, shiftedTimeLine);
+                put(shiftedTimeLine, output, out);
+                copyFrom = end;             // The line ending is copied with the next range
+            }
+
+            // Skip "\n", "\r" or "\r\n"
+            if (end < limit && input.get(end) == '\r' && end + 1 < limit && input.get(end + 1) == '\n') {
+                end++;
+            }
+            pos = end + 1;
+        }
+
+        copy(input, copyFrom, limit, output, out);
+        output.flip();
+        while (output.hasRemaining()) {
+            out.write(output);
+        }
+        return new ShiftCounts(lines, cues);
+    }
+
+    /**
+     * Copies input bytes [from, to) into the output buffer, flushing it to the channel when full.
+     */
+    private static void copy(ByteBuffer input, int from, int to, ByteBuffer output, WritableByteChannel out)
+            throws IOException {
+        while (from < to) {
+            ensureRemaining(output, out, 1);
+            int length = Math.min(to - from, output.remaining());
+            input.get(from, output.array(), output.arrayOffset() + output.position(), length);
+            output.position(output.position() + length);
+            from += length;
+        }
+    }
+
+    /**
+     * Writes chars produced from a {@link ByteSequence} back as the bytes they came from.
+     */
+    private static void put(CharSequence chars, ByteBuffer output, WritableByteChannel out) throws IOException {
+        for (int i = 0; i < chars.length(); i++) {
+            ensureRemaining(output, out, 1);
+            output.put((byte) chars.charAt(i));
+        }
+    }
+
+    private static void ensureRemaining(ByteBuffer output, WritableByteChannel out, int length) throws IOException {
+        if (output.remaining() < length) {
+            output.flip();
+            while (output.hasRemaining()) {
+                out.write(output);
+            }
+            output.clear();
+        }
+    }
+
+    /**
+     * Writes to a file channel from a fixed offset on, using positional writes so that
+     * several chunks can write to the same channel concurrently.
+     */
+    private static final class PositionedChannel implements WritableByteChannel {
+
+        private final FileChannel channel;
+        private long position;
+
+        PositionedChannel(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int written = channel.write(src, position);
+            position += written;
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() {
+            // The channel is shared by all chunks and closed by shiftParallel
+        }
+    }
+}
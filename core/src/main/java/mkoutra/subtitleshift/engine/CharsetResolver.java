@@ -0,0 +1,162 @@
+package mkoutra.subtitleshift.engine;
+
+import org.apache.tika.parser.txt.CharsetDetector;
+import org.apache.tika.parser.txt.CharsetMatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Detects the character encoding of subtitle files.
+ * <p>
+ * Only a bounded prefix of the file is sampled. Files starting with a BOM, and files whose
+ * sample is valid UTF-8, are resolved without Tika. Other samples are detected with Tika and
+ * the result is cached by the SHA-256 of the sample, so re-uploads of the same file skip detection.
+ *
+ * @author Michalis Koutrakis
+ */
+public class CharsetResolver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CharsetResolver.class);
+
+    /** The defaults of storage.charsetSampleSize and storage.charsetCacheSize. */
+    public static final int DEFAULT_SAMPLE_SIZE = 8192;
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private final int sampleSize;
+    private final Map<ByteBuffer, Charset> cache;
+
+    /**
+     * @param sampleSize The number of leading bytes sampled to detect the charset of a file.
+     * @param cacheSize  The maximum number of cached detection results.
+     */
+    public CharsetResolver(int sampleSize, int cacheSize) {
+        this.sampleSize = sampleSize;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Charset> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Detects the most probable character encoding of the given stream.
+     * The stream is marked and reset, so it can still be read from the start afterward.
+     *
+     * @param inputStream A stream supporting mark/reset, positioned at the start of the file.
+     * @return            The detected Charset.
+     * @throws IOException If an error occurs while reading the stream.
+     */
+    public Charset detect(InputStream inputStream) throws IOException {
+        inputStream.mark(sampleSize);
+        byte[] sample = inputStream.readNBytes(sampleSize);
+        inputStream.reset();
+        return detect(sample, sample.length < sampleSize);
+    }
+
+    /**
+     * Detects the most probable character encoding of a sample taken from the start of a file.
+     *
+     * @param sample   The first bytes of the file.
+     * @param complete True if the sample holds the whole file, false if it may end mid-character.
+     * @return         The detected Charset.
+     */
+    public Charset detect(byte[] sample, boolean complete) {
+        Charset bomCharset = fromBom(sample);
+        if (bomCharset != null) {
+            return bomCharset;
+        }
+        if (isUtf8(sample, complete)) {
+            return StandardCharsets.UTF_8;
+        }
+
+        ByteBuffer key = ByteBuffer.wrap(sha256(sample));
+        Charset charset = cache.get(key);
+        if (charset == null) {
+            CharsetDetector charsetDetector = new CharsetDetector();
+            charsetDetector.setText(sample);
+            CharsetMatch match = charsetDetector.detect();
+            charset = Charset.forName(match.getNormalizedName());
+            cache.put(key, charset);
+            LOGGER.debug("Detected charset {} with confidence {}", charset, match.getConfidence());
+        }
+        return charset;
+    }
+
+    private static Charset fromBom(byte[] b) {
+        if (b.length >= 3 && (b[0] & 0xFF) == 0xEF && (b[1] & 0xFF) == 0xBB && (b[2] & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (b.length >= 2 && (b[0] & 0xFF) == 0xFE && (b[1] & 0xFF) == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (b.length >= 2 && (b[0] & 0xFF) == 0xFF && (b[1] & 0xFF) == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        return null;
+    }
+
+    /**
+     * Checks that the sample is well-formed UTF-8 (plain ASCII included).
+     * A multibyte sequence cut off by the end of an incomplete sample is accepted.
+     * NUL bytes are rejected: they do not occur in text files, but every ASCII character of a
+     * BOM-less UTF-16 file has one, and such a file must go to the detector instead.
+     */
+    static boolean isUtf8(byte[] b, boolean complete) {
+        int i = 0;
+        while (i < b.length) {
+            int lead = b[i] & 0xFF;
+            if (lead == 0) {
+                return false;
+            }
+            if (lead < 0x80) {
+                i++;
+                continue;
+            }
+
+            int continuations;
+            if (lead >= 0xC2 && lead <= 0xDF) {
+                continuations = 1;
+            } else if (lead >= 0xE0 && lead <= 0xEF) {
+                continuations = 2;
+            } else if (lead >= 0xF0 && lead <= 0xF4) {
+                continuations = 3;
+            } else {
+                return false;
+            }
+
+            for (int j = i + 1; j <= i + continuations; j++) {
+                if (j >= b.length) {
+                    return !complete;   // Sequence cut off by the end of the sample
+                }
+                if ((b[j] & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+            i += continuations + 1;
+        }
+        return true;
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);     // Every JVM must support SHA-256
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package mkoutra.subtitleshift.engine;
+
+import mkoutra.subtitleshift.format.SubtitleFormat;
+import mkoutra.subtitleshift.model.TimeTransform;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shifts a file and repairs its structure in the same pass, see {@link SubtitleEngine#repair}.
+ * <p>
+ * A cue is held back until the next one is read, since its end may have to be trimmed to the
+ * next start; so at most two cues are in memory at any time, whatever the size of the file.
+ * Each line of the input is split into one of:
+ * <ul>
+ *     <li>the header, before the first cue (e.g. "WEBVTT" or the [Script Info] of ASS),</li>
+ *     <li>the lead of a cue, between the blank line after the previous cue and its time line
+ *         (the sequence number in SRT, the identifier in WebVTT),</li>
+ *     <li>the time line of a cue,</li>
+ *     <li>the body of a cue, from its time line up to the lead of the next one.</li>
+ * </ul>
+ * A dropped cue is left out with its lead and body; for formats without text blocks (ASS),
+ * only its time line is.
+ *
+ * @author Michalis Koutrakis
+ */
+final class CueRepairer {
+
+    static final int MAX_ISSUES = 100;
+
+    private static final String BOM = "\uFEFF";
+
+    private static final class Cue {
+        final long index;
+        final long lineNumber;
+        final String timeLine;
+        final List<String> lead;
+        final List<String> body = new ArrayList<>();
+        final long start;
+        long end;
+
+        Cue(long index, long lineNumber, String timeLine, List<String> lead, long start, long end) {
+            this.index = index;
+            this.lineNumber = lineNumber;
+            this.timeLine = timeLine;
+            this.lead = lead;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final SubtitleFormat format;
+    private final TimeTransform transform;
+    private final RepairOptions options;
+    private final Writer writer;
+
+    private final List<String> pending = new ArrayList<>();
+    private final List<String> issues = new ArrayList<>();
+    private final StringBuilder timeLine = new StringBuilder();
+    private final long[] times = new long[2];
+
+    /** The last cue read, whose body is being read; null before the first cue and after a dropped one. */
+    private Cue current;
+    /** The last cue kept, written once the next cue is read. */
+    private Cue held;
+
+    private long cues;
+    private long written;
+    private long clamped;
+    private long dropped;
+    private long renumbered;
+    private long overlaps;
+    private long outOfOrder;
+    private long malformed;
+    private boolean inHeader = true;
+
+    CueRepairer(SubtitleFormat format, TimeTransform transform, RepairOptions options, Writer writer) {
+        this.format = format;
+        this.transform = transform;
+        this.options = options;
+        this.writer = writer;
+    }
+
+    RepairReport repair(BufferedReader reader) throws IOException {
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (format.parseTimes(line, times)) {
+                readCue(lineNumber, line);
+                continue;
+            }
+            if (format.looksLikeTimeLine(line)) {
+                malformed++;
+                issue(lineNumber, "malformed time line \"" + line + "\" copied as text");
+            }
+            pending.add(line);
+        }
+
+        endBody(pending.size());
+        if (held != null) {
+            write(held);
+        }
+        writer.flush();
+        return new RepairReport(cues, written, clamped, dropped, renumbered, overlaps, outOfOrder, malformed,
+                List.copyOf(issues));
+    }
+
+    private void readCue(long lineNumber, String line) throws IOException {
+        long originalStart = times[0];
+        long originalEnd = times[1];
+        transform.applyToCue(cues++, times);
+
+        // Transforms clamp at zero, so a cue shifted to or before zero now starts (and maybe ends) there
+        boolean endsAtZero = times[1] == 0 && originalEnd != 0;
+        boolean startsAtZero = times[0] == 0 && originalStart != 0;
+        boolean drop = endsAtZero || startsAtZero && options.negativeCues() == RepairOptions.NegativeCues.DROP;
+
+        List<String> lead;
+        if (!format.hasTextBlocks()) {
+            endBody(pending.size());
+            lead = List.of();
+            if (drop) {
+                dropped++;
+                issue(lineNumber, "cue " + cues + " dropped, at or before zero after the transform");
+                return;             // The next lines still belong to the current cue
+            }
+        } else {
+            int leadStart = leadStart(cues > 1);
+            lead = new ArrayList<>(pending.subList(leadStart, pending.size()));
+            endBody(leadStart);
+            pending.clear();
+            if (drop) {
+                dropped++;
+                issue(lineNumber, "cue " + cues + " dropped, at or before zero after the transform");
+                current = null;     // Its body is dropped with it
+                return;
+            }
+        }
+        if (startsAtZero) {
+            clamped++;
+            issue(lineNumber, "cue " + cues + " clamped to start at zero");
+        }
+
+        Cue cue = new Cue(cues, lineNumber, line, lead, times[0], times[1]);
+        if (held != null) {
+            if (cue.start < held.start) {
+                outOfOrder++;
+                issue(lineNumber, "cue " + cue.index + " starts before cue " + held.index);
+            } else if (cue.start < held.end) {
+                overlaps++;
+                issue(held.lineNumber, "cue " + held.index + " overlaps cue " + cue.index + " by "
+                        + (held.end - cue.start) + " ms" + (options.fixOverlaps() ? ", end trimmed" : ""));
+                if (options.fixOverlaps()) {
+                    held.end = cue.start;
+                }
+            }
+            write(held);
+        }
+        held = cue;
+        current = cue;
+    }
+
+    /**
+     * @return The index in pending of the first line of the lead of the cue being read:
+     *         the line after the last blank line, or the sequence number of a numbered format
+     *         that directly follows the text of the previous cue.
+     *
+     * @param afterCue Whether a cue was read before, so that pending starts with its body.
+     */
+    private int leadStart(boolean afterCue) {
+        int leadStart = pending.size();
+        while (leadStart > 0 && !pending.get(leadStart - 1).isBlank()) {
+            leadStart--;
+        }
+        if (leadStart == 0 && afterCue) {
+            leadStart = pending.size();         // No blank line after the previous cue, so no lead
+        }
+        if (format.isNumbered() && leadStart == pending.size() && leadStart > 0
+                && isNumber(pending.get(leadStart - 1))) {
+            leadStart--;
+        }
+        return leadStart;
+    }
+
+    /**
+     * Moves pending[0, end) to the body of the current cue, to the output if no cue was kept yet,
+     * or nowhere if the current cue was dropped with its text block.
+     */
+    private void endBody(int end) throws IOException {
+        List<String> lines = pending.subList(0, end);
+        if (current != null) {
+            current.body.addAll(lines);
+        } else if (inHeader || !format.hasTextBlocks()) {
+            for (String line : lines) {
+                writeLine(line);
+            }
+        }
+        lines.clear();
+        inHeader &= cues == 0;
+    }
+
+    private void write(Cue cue) throws IOException {
+        written++;
+        int numberLine = format.isNumbered() && !cue.lead.isEmpty() && isNumber(cue.lead.get(cue.lead.size() - 1))
+                ? cue.lead.size() - 1
+                : -1;
+        for (int i = 0; i < cue.lead.size(); i++) {
+            if (i == numberLine && options.renumber()) {
+                writeNumber(cue, cue.lead.get(i));
+            } else {
+                writeLine(cue.lead.get(i));
+            }
+        }
+        if (numberLine < 0 && format.isNumbered() && options.renumber()) {
+            writeNumber(cue, null);
+        }
+
+        times[0] = cue.start;
+        times[1] = cue.end;
+        timeLine.setLength(0);
+        format.writeTimeLine(cue.timeLine, times, timeLine);
+        writer.append(timeLine).append(options.lineSeparator());
+
+        for (String line : cue.body) {
+            writeLine(line);
+        }
+    }
+
+    /**
+     * Writes the sequence number of a cue, keeping the byte order mark of the first line of the file.
+     */
+    private void writeNumber(Cue cue, String original) throws IOException {
+        String number = String.valueOf(written);
+        String prefix = original != null && original.startsWith(BOM) ? BOM : "";
+        if (original == null || !original.strip().equals(prefix + number)) {
+            renumbered++;
+            issue(cue.lineNumber, original == null
+                    ? "cue " + cue.index + " had no sequence number, numbered " + number
+                    : "cue " + cue.index + " renumbered from " + original.strip().replace(BOM, "") + " to " + number);
+        }
+        writeLine(prefix + number);
+    }
+
+    private void writeLine(String line) throws IOException {
+        writer.append(line).append(options.lineSeparator());
+    }
+
+    private void issue(long lineNumber, String description) {
+        if (issues.size() < MAX_ISSUES) {
+            issues.add("line " + lineNumber + ": " + description);
+        }
+    }
+
+    private static boolean isNumber(String line) {
+        String number = line.strip();
+        int from = number.startsWith(BOM) ? 1 : 0;
+        if (number.length() == from) {
+            return false;
+        }
+        for (int i = from; i < number.length(); i++) {
+            if (number.charAt(i) < '0' || number.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,25 @@
+package mkoutra.subtitleshift.engine;
+
+import java.util.List;
+
+/**
+ * A window of consecutive cues of a file, with their times before and after a transform.
+ *
+ * @param offset  The 0-based index of the first cue of the window.
+ * @param cues    At most the requested number of cues, in file order.
+ * @param hasMore True if the file has more cues after the window.
+ */
+public record CueWindow(long offset, List<Cue> cues, boolean hasMore) {
+
+    /**
+     * @param cue          The 1-based number of the cue, counting the time lines of the file.
+     * @param start        The start in milliseconds, as in the file.
+     * @param end          The end in milliseconds, as in the file.
+     * @param shiftedStart The start in milliseconds after the transform.
+     * @param shiftedEnd   The end in milliseconds after the transform.
+     * @param text         The lines of text of the cue, joined by "\n"; the whole time line for formats
+     *                     without text blocks, e.g. ASS.
+     */
+    public record Cue(long cue, long start, long end, long shiftedStart, long shiftedEnd, String text) {
+    }
+}
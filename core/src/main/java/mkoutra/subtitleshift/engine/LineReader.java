@@ -0,0 +1,82 @@
+package mkoutra.subtitleshift.engine;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads lines like {@link java.io.BufferedReader#readLine()}, but also returns the terminator of each line,
+ * so that the char path writes "\r\n", "\n" and "\r" lines back as they were, as {@link ChannelShifter} does.
+ * <p>
+ * The line is returned in a reused builder, so reading does not allocate per line.
+ *
+ * @author Michalis Koutrakis
+ */
+final class LineReader {
+
+    static final String CRLF = "\r\n";
+    static final String LF = "\n";
+    static final String CR = "\r";
+    static final String NONE = "";
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private final StringBuilder line = new StringBuilder();
+    private String terminator = NONE;
+
+    LineReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return The next line without its terminator, valid until the next call, or null at the end of the stream.
+     * @throws IOException If the stream cannot be read.
+     */
+    StringBuilder readLine() throws IOException {
+        line.setLength(0);
+        while (true) {
+            if (position == limit && !fill()) {
+                terminator = NONE;
+                return line.isEmpty() ? null : line;
+            }
+            int start = position;
+            while (position < limit) {
+                char c = buffer[position];
+                if (c == '\n' || c == '\r') {
+                    line.append(buffer, start, position - start);
+                    position++;
+                    if (c == '\n') {
+                        terminator = LF;
+                    } else if ((position < limit || fill()) && buffer[position] == '\n') {
+                        position++;
+                        terminator = CRLF;
+                    } else {
+                        terminator = CR;
+                    }
+                    return line;
+                }
+                position++;
+            }
+            line.append(buffer, start, position - start);
+        }
+    }
+
+    /**
+     * @return The terminator of the last line read: {@link #CRLF}, {@link #LF}, {@link #CR},
+     *         or {@link #NONE} for a last line without one.
+     */
+    String terminator() {
+        return terminator;
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+}
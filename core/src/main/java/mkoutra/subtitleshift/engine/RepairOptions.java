@@ -0,0 +1,63 @@
+package mkoutra.subtitleshift.engine;
+
+import java.util.Locale;
+
+/**
+ * What the repair stage fixes while a file is shifted.
+ *
+ * @param negativeCues  What to do with cues that start at or before zero after the transform.
+ *                      Cues that also end there are always dropped, as they would never be shown.
+ * @param renumber      Whether to rewrite the sequence numbers of numbered formats (SRT) as 1, 2, 3...
+ * @param fixOverlaps   Whether to end a cue when the next one starts, if they overlap.
+ * @param lineSeparator The line ending of the output, {@link #CRLF} or {@link #LF}.
+ *
+ * @author Michalis Koutrakis
+ */
+public record RepairOptions(NegativeCues negativeCues, boolean renumber, boolean fixOverlaps, String lineSeparator) {
+
+    public static final String CRLF = "\r\n";
+    public static final String LF = "\n";
+
+    public enum NegativeCues {
+        /** Keep the cue, starting at zero. */
+        CLAMP,
+        /** Leave the cue out. */
+        DROP
+    }
+
+    public RepairOptions {
+        if (negativeCues == null) {
+            throw new IllegalArgumentException("Missing negative cue handling");
+        }
+        if (!CRLF.equals(lineSeparator) && !LF.equals(lineSeparator)) {
+            throw new IllegalArgumentException("Invalid line separator");
+        }
+    }
+
+    /**
+     * @return Clamp negative cues, renumber, fix overlaps and end lines with CRLF.
+     */
+    public static RepairOptions defaults() {
+        return new RepairOptions(NegativeCues.CLAMP, true, true, CRLF);
+    }
+
+    /**
+     * Parses request or command line values.
+     *
+     * @param negativeCues              "clamp" or "drop".
+     * @param renumber                  Whether to renumber the cues.
+     * @param fixOverlaps               Whether to fix overlapping cues.
+     * @param lineEnding                "crlf" or "lf".
+     * @return                          The options.
+     * @throws IllegalArgumentException If a value is invalid.
+     */
+    public static RepairOptions parse(String negativeCues, boolean renumber, boolean fixOverlaps, String lineEnding) {
+        String separator = switch (lineEnding.toLowerCase(Locale.ROOT)) {
+            case "crlf" -> CRLF;
+            case "lf" -> LF;
+            default -> throw new IllegalArgumentException("Invalid line ending: " + lineEnding);
+        };
+        return new RepairOptions(NegativeCues.valueOf(negativeCues.toUpperCase(Locale.ROOT)),
+                renumber, fixOverlaps, separator);
+    }
+}
@@ -0,0 +1,70 @@
+package mkoutra.subtitleshift.engine;
+
+import java.util.List;
+
+/**
+ * What the repair stage found and fixed in a file.
+ *
+ * @param cues        The number of cues (time lines) read.
+ * @param written     The number of cues written.
+ * @param clamped     Cues that started before zero after the transform and now start at zero.
+ * @param dropped     Cues left out, because they were at or before zero after the transform.
+ * @param renumbered  Cues whose sequence number was rewritten or added.
+ * @param overlaps    Cues that ended after the next cue started; trimmed if overlaps were fixed.
+ * @param outOfOrder  Cues that start before the previous cue. They are reported, not reordered.
+ * @param malformed   Lines that look like time lines but cannot be parsed. They are copied as text.
+ * @param issues      A description of the first issues found, with their line numbers.
+ *
+ * @author Michalis Koutrakis
+ */
+public record RepairReport(long cues, long written, long clamped, long dropped, long renumbered,
+                           long overlaps, long outOfOrder, long malformed, List<String> issues) {
+
+    /**
+     * @return True if nothing had to be fixed or reported.
+     */
+    public boolean isClean() {
+        return clamped == 0 && dropped == 0 && renumbered == 0 && overlaps == 0 && outOfOrder == 0 && malformed == 0;
+    }
+
+    /**
+     * Formats the report as a JSON object, e.g. for a response header or a sidecar file.
+     *
+     * @param withIssues Whether to include the list of issues, which may be long.
+     * @return           The report on a single line.
+     */
+    public String toJson(boolean withIssues) {
+        StringBuilder json = new StringBuilder(128)
+                .append("{\"cues\":").append(cues)
+                .append(",\"written\":").append(written)
+                .append(",\"clamped\":").append(clamped)
+                .append(",\"dropped\":").append(dropped)
+                .append(",\"renumbered\":").append(renumbered)
+                .append(",\"overlaps\":").append(overlaps)
+                .append(",\"outOfOrder\":").append(outOfOrder)
+                .append(",\"malformed\":").append(malformed);
+        if (withIssues) {
+            json.append(",\"issues\":[");
+            for (int i = 0; i < issues.size(); i++) {
+                json.append(i == 0 ? "\"" : ",\"");
+                appendEscaped(json, issues.get(i));
+                json.append('"');
+            }
+            json.append(']');
+        }
+        return json.append('}').toString();
+    }
+
+    private static void appendEscaped(StringBuilder json, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+    }
+}
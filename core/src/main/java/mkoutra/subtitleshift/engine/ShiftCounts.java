@@ -0,0 +1,13 @@
+package mkoutra.subtitleshift.engine;
+
+/**
+ * Number of lines and cues (time lines) processed while shifting a file.
+ */
+public record ShiftCounts(long lines, long cues) {
+
+    static final ShiftCounts NONE = new ShiftCounts(0, 0);
+
+    ShiftCounts plus(ShiftCounts other) {
+        return new ShiftCounts(lines + other.lines, cues + other.cues);
+    }
+}
@@ -0,0 +1,380 @@
+package mkoutra.subtitleshift.engine;
+
+import mkoutra.subtitleshift.format.SubtitleFormat;
+import mkoutra.subtitleshift.format.SubtitleFormats;
+import mkoutra.subtitleshift.model.CueIndex;
+import mkoutra.subtitleshift.model.TimeTransform;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses and shifts subtitle files, with no dependency on the web application.
+ * <p>
+ * Files in ASCII-compatible encodings are shifted at byte level through {@link ChannelShifter},
+ * in parallel chunks once they reach parallelThreshold bytes (fixed-width formats and
+ * cue-independent transforms only); other encodings (e.g. UTF-16) are decoded and shifted line by line.
+ * An engine is immutable and can be shared by any number of threads.
+ *
+ * @author Michalis Koutrakis
+ */
+public class SubtitleEngine {
+
+    public static final String PATH_BYTE = "byte";
+    public static final String PATH_PARALLEL = "parallel";
+    public static final String PATH_CHAR = "char";
+
+    public static final long DEFAULT_PARALLEL_THRESHOLD = 8L * 1024 * 1024;
+    public static final int DEFAULT_PARALLEL_CHUNK_SIZE = 1024 * 1024;
+
+    private final CharsetResolver charsetResolver;
+    private final SubtitleFormats subtitleFormats;
+    private final long parallelThreshold;
+    private final int parallelChunkSize;
+
+    /**
+     * @param path   How the file was shifted: {@link #PATH_BYTE}, {@link #PATH_PARALLEL} or {@link #PATH_CHAR}.
+     * @param counts The number of lines and cues processed.
+     */
+    public record Result(String path, ShiftCounts counts) {
+    }
+
+    /**
+     * @param charsetResolver   Detects the encoding of the files.
+     * @param subtitleFormats   Detects the format of the files.
+     * @param parallelThreshold Files of at least this many bytes are shifted in parallel chunks.
+     * @param parallelChunkSize The approximate number of bytes per chunk.
+     */
+    public SubtitleEngine(CharsetResolver charsetResolver, SubtitleFormats subtitleFormats,
+                          long parallelThreshold, int parallelChunkSize) {
+        this.charsetResolver = charsetResolver;
+        this.subtitleFormats = subtitleFormats;
+        this.parallelThreshold = parallelThreshold;
+        this.parallelChunkSize = parallelChunkSize;
+    }
+
+    /**
+     * @return An engine with the built-in formats and the default settings.
+     */
+    public static SubtitleEngine defaults() {
+        return new SubtitleEngine(
+                new CharsetResolver(CharsetResolver.DEFAULT_SAMPLE_SIZE, CharsetResolver.DEFAULT_CACHE_SIZE),
+                SubtitleFormats.defaults(), DEFAULT_PARALLEL_THRESHOLD, DEFAULT_PARALLEL_CHUNK_SIZE);
+    }
+
+    /**
+     * Detects the encoding from the first bytes of the stream, leaving the stream position unchanged.
+     *
+     * @param inputStream A stream supporting mark/reset, positioned at the start of the file.
+     */
+    public Charset detectCharset(InputStream inputStream) throws IOException {
+        return charsetResolver.detect(inputStream);
+    }
+
+    /**
+     * Detects the format from the first bytes of the stream, leaving the stream position unchanged.
+     *
+     * @param inputStream A stream supporting mark/reset, positioned at the start of the file.
+     * @param charset     The encoding of the file.
+     * @param filename    The name of the file, used if the format cannot be detected from the content.
+     */
+    public SubtitleFormat detectFormat(InputStream inputStream, Charset charset, String filename) throws IOException {
+        inputStream.mark(charsetResolver.getSampleSize());
+        byte[] sample = inputStream.readNBytes(charsetResolver.getSampleSize());
+        inputStream.reset();
+        return subtitleFormats.detect(new String(sample, charset), filename);
+    }
+
+    /**
+     * Detects the encoding and the format of a file, applies a transform to its timestamps
+     * and writes the result to a new file.
+     *
+     * @param inputPath  The path to the original subtitle file.
+     * @param outputPath The path where the modified file will be saved.
+     * @param transform  The transform to apply to the timestamps.
+     * @return           How the file was shifted, and the number of lines and cues processed.
+     * @throws IOException If an error occurs while reading or writing the file.
+     */
+    public Result shiftFile(Path inputPath, Path outputPath, TimeTransform transform) throws IOException {
+        Charset charset;
+        SubtitleFormat format;
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(inputPath))) {
+            charset = detectCharset(inputStream);
+            format = detectFormat(inputStream, charset, inputPath.getFileName().toString());
+        }
+        return shiftFile(inputPath, outputPath, charset, format, transform);
+    }
+
+    /**
+     * Applies a transform to the timestamps of a file of known encoding and format
+     * and writes the result to a new file.
+     *
+     * @param inputPath  The path to the original subtitle file.
+     * @param outputPath The path where the modified file will be saved.
+     * @param charset    The encoding of the file.
+     * @param format     The format of the file.
+     * @param transform  The transform to apply to the timestamps.
+     * @return           How the file was shifted, and the number of lines and cues processed.
+     * @throws IOException If an error occurs while reading or writing the file.
+     */
+    public Result shiftFile(Path inputPath, Path outputPath, Charset charset, SubtitleFormat format,
+                            TimeTransform transform) throws IOException {
+        if (ChannelShifter.supports(charset) && format.isFixedWidth() && transform.isCueIndependent()
+                && Files.size(inputPath) >= parallelThreshold) {
+            return new Result(PATH_PARALLEL,
+                    ChannelShifter.shiftParallel(inputPath, outputPath, format, transform, parallelChunkSize));
+        }
+        if (ChannelShifter.supports(charset)) {
+            return new Result(PATH_BYTE, ChannelShifter.shift(inputPath, outputPath, format, transform));
+        }
+        try (BufferedReader reader = Files.newBufferedReader(inputPath, charset);
+             Writer writer = Files.newBufferedWriter(outputPath, charset)) {
+            return new Result(PATH_CHAR, shiftLines(reader, writer, format, transform));
+        }
+    }
+
+    /**
+     * Applies a transform to the timestamps of a stream and writes the result to another stream,
+     * in the same encoding. The output stream is flushed but not closed.
+     *
+     * @param inputStream  The subtitle file, positioned at its start.
+     * @param outputStream The stream receiving the shifted subtitles.
+     * @param charset      The encoding of the file.
+     * @param format       The format of the file.
+     * @param transform    The transform to apply to the timestamps.
+     * @return             The number of lines and cues processed.
+     * @throws IOException If an error occurs while reading or writing.
+     */
+    public ShiftCounts shift(InputStream inputStream, OutputStream outputStream, Charset charset,
+                             SubtitleFormat format, TimeTransform transform) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, charset));
+        ShiftCounts counts = shiftLines(new InputStreamReader(inputStream, charset), writer, format, transform);
+        writer.flush();
+        return counts;
+    }
+
+    /**
+     * Copies subtitle lines from the reader to the writer, transforming the timestamp lines.
+     * Every line keeps its terminator, so the output matches the byte path of {@link ChannelShifter}.
+     *
+     * @param reader    The source of the subtitle lines.
+     * @param writer    The destination of the (shifted) subtitle lines.
+     * @param format    The format of the subtitles.
+     * @param transform The transform to apply to the timestamps.
+     *                  Shifted timestamps are clamped to the range of the format.
+     * @return          The number of lines and cues processed.
+     * @throws IOException If an error occurs while reading or writing the lines, e.g. when the client of
+     *                     a response disconnects; the shift stops there.
+     */
+    public static ShiftCounts shiftLines(Reader reader, Writer writer, SubtitleFormat format,
+                                         TimeTransform transform) throws IOException {
+        LineReader lineReader = new LineReader(reader);
+        long[] times = new long[2];                             // Reused for every time line
+        StringBuilder shiftedTimeLine = new StringBuilder();
+        long lines = 0;
+        long cues = 0;
+
+        StringBuilder line;
+        while ((line = lineReader.readLine()) != null) {
+            lines++;
+            if (format.parseTimes(line, times)) {
+                transform.applyToCue(cues++, times);
+                shiftedTimeLine.setLength(0);
+                format.writeTimeLine(line, times, shiftedTimeLine);
+                writer.append(shiftedTimeLine);
+            } else {
+                writer.append(line);
+            }
+            writer.write(lineReader.terminator());
+        }
+        return new ShiftCounts(lines, cues);
+    }
+
+    /**
+     * Applies a transform to the timestamps of a file and repairs its structure in the same pass:
+     * cues shifted before zero are clamped or dropped, SRT cues are renumbered, overlapping cues
+     * are trimmed and every line ends with the same separator. Malformed time lines and cues out
+     * of order are reported. Repairing always takes the char path, as lines may be dropped or added.
+     *
+     * @param inputPath  The path to the original subtitle file.
+     * @param outputPath The path where the repaired file will be saved.
+     * @param transform  The transform to apply to the timestamps.
+     * @param options    What to repair.
+     * @return           What was found and fixed.
+     * @throws IOException If an error occurs while reading or writing the file.
+     */
+    public RepairReport repairFile(Path inputPath, Path outputPath, TimeTransform transform,
+                                   RepairOptions options) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(inputPath));
+             OutputStream outputStream = Files.newOutputStream(outputPath)) {
+            Charset charset = detectCharset(inputStream);
+            SubtitleFormat format = detectFormat(inputStream, charset, inputPath.getFileName().toString());
+            return repair(inputStream, outputStream, charset, format, transform, options);
+        }
+    }
+
+    /**
+     * Applies a transform to the timestamps of a stream and repairs its structure in the same pass,
+     * see {@link #repairFile}. The output stream is flushed but not closed.
+     *
+     * @param inputStream  The subtitle file, positioned at its start.
+     * @param outputStream The stream receiving the repaired subtitles, in the same encoding.
+     * @param charset      The encoding of the file.
+     * @param format       The format of the file.
+     * @param transform    The transform to apply to the timestamps.
+     * @param options      What to repair.
+     * @return             What was found and fixed.
+     * @throws IOException If an error occurs while reading or writing.
+     */
+    public RepairReport repair(InputStream inputStream, OutputStream outputStream, Charset charset,
+                               SubtitleFormat format, TimeTransform transform, RepairOptions options)
+            throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, charset));
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, charset));
+        return new CueRepairer(format, transform, options, writer).repair(reader);
+    }
+
+    /**
+     * Reads the start and end times of every cue into a {@link CueIndex}.
+     *
+     * @param inputStream  The subtitle file, positioned at its start.
+     * @param filename     The name of the file, used if the format cannot be detected from the content.
+     * @return             The index of the cues, in file order.
+     * @throws IOException If the file cannot be read.
+     */
+    public CueIndex buildIndex(InputStream inputStream, String filename) throws IOException {
+        InputStream bufferedStream = new BufferedInputStream(inputStream);
+        Charset charset = detectCharset(bufferedStream);
+        SubtitleFormat format = detectFormat(bufferedStream, charset, filename);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(bufferedStream, charset));
+
+        CueIndex.Builder index = CueIndex.builder();
+        long[] times = new long[2];
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (format.parseTimes(line, times)) {
+                index.add(times[0], times[1]);
+            }
+        }
+        return index.build();
+    }
+
+    /**
+     * Finds the start times of cues, e.g. to anchor a {@link mkoutra.subtitleshift.model.LinearTransform}.
+     * Stops reading as soon as the last requested cue is found.
+     *
+     * @param inputStream               The subtitle file, positioned at its start.
+     * @param filename                  The name of the file, used if the format cannot be detected from the content.
+     * @param cues                      1-based cue numbers, counting the time lines of the file.
+     * @return                          The start time in milliseconds of every requested cue.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If the file has fewer cues.
+     */
+    public long[] findCueStarts(InputStream inputStream, String filename, long... cues) throws IOException {
+        long last = 0;
+        for (long cue : cues) {
+            if (cue < 1) {
+                throw new IllegalArgumentException("Invalid cue number: " + cue);
+            }
+            last = Math.max(last, cue);
+        }
+
+        InputStream bufferedStream = new BufferedInputStream(inputStream);
+        Charset charset = detectCharset(bufferedStream);
+        SubtitleFormat format = detectFormat(bufferedStream, charset, filename);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(bufferedStream, charset));
+
+        long[] starts = new long[cues.length];
+        long[] times = new long[2];
+        long cue = 0;
+        String line;
+        while (cue < last && (line = reader.readLine()) != null) {
+            if (format.parseTimes(line, times)) {
+                cue++;
+                for (int i = 0; i < cues.length; i++) {
+                    if (cues[i] == cue) {
+                        starts[i] = times[0];
+                    }
+                }
+            }
+        }
+        if (cue < last) {
+            throw new IllegalArgumentException("The file has only " + cue + " cues");
+        }
+        return starts;
+    }
+
+    /**
+     * Reads a window of cues with their times before and after a transform, e.g. to preview a shift.
+     * Only the time lines up to the window are parsed, and reading stops right after it.
+     *
+     * @param inputStream               The subtitle file, positioned at its start.
+     * @param filename                  The name of the file, used if the format cannot be detected from the content.
+     * @param transform                 The transform applied to the cues of the window.
+     * @param offset                    The 0-based index of the first cue of the window.
+     * @param limit                     The maximum number of cues of the window.
+     * @return                          The cues of the window, fewer than limit at the end of the file.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If offset is negative or limit is not positive.
+     */
+    public CueWindow readCues(InputStream inputStream, String filename, TimeTransform transform,
+                              long offset, int limit) throws IOException {
+        if (offset < 0 || limit < 1) {
+            throw new IllegalArgumentException("Invalid window: " + limit + " cues from " + offset);
+        }
+
+        InputStream bufferedStream = new BufferedInputStream(inputStream);
+        Charset charset = detectCharset(bufferedStream);
+        SubtitleFormat format = detectFormat(bufferedStream, charset, filename);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(bufferedStream, charset));
+
+        List<CueWindow.Cue> cues = new ArrayList<>(Math.min(limit, 1024));
+        long[] times = new long[2];
+        long[] shifted = new long[2];
+        StringBuilder text = new StringBuilder();
+        long cue = -1;                  // 0-based index of the last time line read
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!format.parseTimes(line, times)) {
+                continue;
+            }
+            cue++;
+            if (cue < offset) {
+                continue;               // Before the window: the time line is parsed, nothing else
+            }
+            if (cues.size() == limit) {
+                return new CueWindow(offset, cues, true);
+            }
+
+            shifted[0] = times[0];
+            shifted[1] = times[1];
+            transform.applyToCue(cue, shifted);
+            text.setLength(0);
+            if (format.hasTextBlocks()) {
+                while ((line = reader.readLine()) != null && !line.isBlank()) {
+                    text.append(text.isEmpty() ? "" : "\n").append(line);
+                }
+            } else {
+                text.append(line);
+            }
+            cues.add(new CueWindow.Cue(cue + 1, times[0], times[1], shifted[0], shifted[1], text.toString()));
+            if (line == null) {
+                break;
+            }
+        }
+        return new CueWindow(offset, cues, false);
+    }
+}
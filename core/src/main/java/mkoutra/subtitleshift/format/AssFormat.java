@@ -0,0 +1,104 @@
+package mkoutra.subtitleshift.format;
+
+import java.util.List;
+
+/**
+ * Advanced SubStation Alpha and SubStation Alpha (.ass, .ssa), with event lines such as
+ * "Dialogue: 0,0:00:01.50,0:00:04.00,Default,,0,0,0,,Text".
+ * <p>
+ * Start and end are the second and third fields of "Dialogue:" and "Comment:" events, in
+ * "h:mm:ss.cc" with centiseconds; shifted times are rounded to centiseconds and clamped
+ * to 9:59:59.99. Every other field, including the text, is kept.
+ *
+ * @author Michalis Koutrakis
+ */
+public class AssFormat implements SubtitleFormat {
+
+    private static final String[] EVENTS = {"Dialogue:", "Comment:"};
+    private static final long MAX_MILLISECONDS = 10 * TimeFields.HOUR - 10;
+
+    @Override
+    public String getName() {
+        return "Advanced SubStation Alpha";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of(".ass", ".ssa");
+    }
+
+    @Override
+    public boolean matches(CharSequence sample) {
+        return TimeFields.indexOf(sample, "[Script Info]", 0) >= 0 || TimeFields.indexOf(sample, "[Events]", 0) >= 0;
+    }
+
+    @Override
+    public boolean parseTimes(CharSequence line, long[] times) {
+        int startFrom = startField(line);
+        if (startFrom < 0) {
+            return false;
+        }
+        int endFrom = TimeFields.indexOf(line, ',', startFrom) + 1;
+        if (endFrom == 0) {
+            return false;
+        }
+        int endTo = TimeFields.indexOf(line, ',', endFrom);
+        if (endTo < 0) {
+            return false;
+        }
+
+        long start = TimeFields.parseClock(line, startFrom, endFrom - 1, '.', 2);
+        if (start < 0) {
+            return false;
+        }
+        long end = TimeFields.parseClock(line, endFrom, endTo, '.', 2);
+        if (end < 0) {
+            return false;
+        }
+
+        times[0] = start;
+        times[1] = end;
+        return true;
+    }
+
+    @Override
+    public void writeTimeLine(CharSequence line, long[] times, StringBuilder out) {
+        int startFrom = startField(line);
+        int endFrom = TimeFields.indexOf(line, ',', startFrom) + 1;
+        int endTo = TimeFields.indexOf(line, ',', endFrom);
+
+        out.append(line, 0, startFrom);
+        TimeFields.appendClock(out, TimeFields.toCentiseconds(times[0], MAX_MILLISECONDS), 1, '.', 2);
+        out.append(',');
+        TimeFields.appendClock(out, TimeFields.toCentiseconds(times[1], MAX_MILLISECONDS), 1, '.', 2);
+        out.append(line, endTo, line.length());
+    }
+
+    @Override
+    public boolean looksLikeTimeLine(CharSequence line) {
+        for (String event : EVENTS) {
+            if (TimeFields.startsWith(line, event)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasTextBlocks() {
+        return false;
+    }
+
+    /**
+     * @return The index of the start field of an event line, or -1 if the line is not an event.
+     */
+    private static int startField(CharSequence line) {
+        for (String event : EVENTS) {
+            if (TimeFields.startsWith(line, event)) {
+                int layerEnd = TimeFields.indexOf(line, ',', event.length());
+                return layerEnd < 0 ? -1 : layerEnd + 1;
+            }
+        }
+        return -1;
+    }
+}
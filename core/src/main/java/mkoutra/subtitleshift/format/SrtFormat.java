@@ -0,0 +1,88 @@
+package mkoutra.subtitleshift.format;
+
+import mkoutra.subtitleshift.model.Timestamp;
+
+import java.util.List;
+
+/**
+ * SubRip (.srt), with time lines such as "00:00:39,398 --> 00:00:43,798".
+ * <p>
+ * The timestamps themselves are handled by the static helpers of {@link Timestamp}.
+ * Time lines always have the same length, so SRT files can be shifted in place.
+ *
+ * @author Michalis Koutrakis
+ */
+public class SrtFormat implements SubtitleFormat {
+
+    /** Length of a time line, e.g. "00:00:39,398 --> 00:00:43,798". */
+    public static final int LENGTH = 29;
+
+    private static final String ARROW = " --> ";
+    private static final int END_OFFSET = 17;
+
+    @Override
+    public String getName() {
+        return "SubRip";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of(".srt");
+    }
+
+    @Override
+    public boolean parseTimes(CharSequence line, long[] times) {
+        if (line.length() != LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < ARROW.length(); i++) {
+            if (line.charAt(Timestamp.LENGTH + i) != ARROW.charAt(i)) {
+                return false;
+            }
+        }
+
+        long start = Timestamp.parse(line, 0);
+        if (start < 0) {
+            return false;
+        }
+        long end = Timestamp.parse(line, END_OFFSET);
+        if (end < 0) {
+            return false;
+        }
+
+        times[0] = start;
+        times[1] = end;
+        return true;
+    }
+
+    @Override
+    public void writeTimeLine(CharSequence line, long[] times, StringBuilder out) {
+        TimeFields.appendClock(out, Timestamp.clamp(times[0]), 2, ',', 3);
+        out.append(ARROW);
+        TimeFields.appendClock(out, Timestamp.clamp(times[1]), 2, ',', 3);
+    }
+
+    @Override
+    public boolean isFixedWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean isNumbered() {
+        return true;
+    }
+
+    /**
+     * Writes a time line with the given timestamps into {@code out}.
+     * Timestamps outside the representable range are clamped.
+     *
+     * @param start The start timestamp in milliseconds.
+     * @param end   The end timestamp in milliseconds.
+     * @param out   A buffer of at least {@link #LENGTH} chars.
+     */
+    public static void format(long start, long end, char[] out) {
+        Timestamp.format(start, out, 0);
+        ARROW.getChars(0, ARROW.length(), out, Timestamp.LENGTH);
+        Timestamp.format(end, out, END_OFFSET);
+    }
+}
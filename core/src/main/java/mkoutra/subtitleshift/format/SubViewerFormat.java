@@ -0,0 +1,67 @@
+package mkoutra.subtitleshift.format;
+
+import mkoutra.subtitleshift.model.Timestamp;
+
+import java.util.List;
+
+/**
+ * SubViewer 2.0 (.sub), with time lines such as "00:04:35.03,00:04:39.82".
+ * <p>
+ * Times have centiseconds; shifted times are rounded to centiseconds. Time lines always have
+ * the same length, so SubViewer files can be shifted in place.
+ *
+ * @author Michalis Koutrakis
+ */
+public class SubViewerFormat implements SubtitleFormat {
+
+    private static final int TIMESTAMP_LENGTH = 11;   // "hh:mm:ss.cc"
+    private static final int LENGTH = 2 * TIMESTAMP_LENGTH + 1;
+    private static final long MAX_MILLISECONDS = Timestamp.MAX_MILLISECONDS / 10 * 10;
+
+    @Override
+    public String getName() {
+        return "SubViewer";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of(".sub");
+    }
+
+    @Override
+    public boolean matches(CharSequence sample) {
+        return TimeFields.indexOf(sample, "[INFORMATION]", 0) >= 0 || SubtitleFormat.super.matches(sample);
+    }
+
+    @Override
+    public boolean parseTimes(CharSequence line, long[] times) {
+        if (line.length() != LENGTH || line.charAt(TIMESTAMP_LENGTH) != ',') {
+            return false;
+        }
+
+        long start = TimeFields.parseClock(line, 0, TIMESTAMP_LENGTH, '.', 2);
+        if (start < 0) {
+            return false;
+        }
+        long end = TimeFields.parseClock(line, TIMESTAMP_LENGTH + 1, LENGTH, '.', 2);
+        if (end < 0) {
+            return false;
+        }
+
+        times[0] = start;
+        times[1] = end;
+        return true;
+    }
+
+    @Override
+    public void writeTimeLine(CharSequence line, long[] times, StringBuilder out) {
+        TimeFields.appendClock(out, TimeFields.toCentiseconds(times[0], MAX_MILLISECONDS), 2, '.', 2);
+        out.append(',');
+        TimeFields.appendClock(out, TimeFields.toCentiseconds(times[1], MAX_MILLISECONDS), 2, '.', 2);
+    }
+
+    @Override
+    public boolean isFixedWidth() {
+        return true;
+    }
+}
@@ -0,0 +1,99 @@
+package mkoutra.subtitleshift.format;
+
+import java.util.List;
+
+/**
+ * A line-based subtitle format, e.g. SRT or WebVTT.
+ * <p>
+ * Shifting reads a file line by line: the format recognizes its time lines and rewrites them,
+ * every other line is copied unchanged. Implementations parse into caller-owned buffers so that
+ * no objects are created per cue, and only replace the timestamps of a time line, keeping
+ * everything else (cue settings, styles, text) as it is.
+ * <p>
+ * Formats are tried in the order of {@link SubtitleFormats}; supporting another format
+ * only takes another implementation added to {@link SubtitleFormats#defaults()}.
+ *
+ * @author Michalis Koutrakis
+ */
+public interface SubtitleFormat {
+
+    String getName();
+
+    /**
+     * @return The file extensions of the format, lower case and including the dot, e.g. ".srt".
+     */
+    List<String> getExtensions();
+
+    /**
+     * Checks if the beginning of a file looks like this format.
+     * By default, a format matches if any complete line of the sample is one of its time lines.
+     *
+     * @param sample The decoded first bytes of the file.
+     * @return       True if the file is likely in this format.
+     */
+    default boolean matches(CharSequence sample) {
+        long[] times = new long[2];
+        int start = 0;
+        for (int i = 0; i < sample.length(); i++) {
+            char c = sample.charAt(i);
+            if (c == '\n' || c == '\r') {
+                if (parseTimes(sample.subSequence(start, i), times)) {
+                    return true;
+                }
+                start = i + 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the line is a time line and, if so, parses its start and end.
+     *
+     * @param line  A line of the subtitle file, without the line ending.
+     * @param times Receives the start (index 0) and end (index 1) in milliseconds.
+     * @return      True if the line is a time line, otherwise false (times is left untouched).
+     */
+    boolean parseTimes(CharSequence line, long[] times);
+
+    /**
+     * Appends {@code line} to {@code out} with its timestamps replaced by {@code times}.
+     * Times outside the range of the format are clamped.
+     *
+     * @param line  A time line accepted by {@link #parseTimes}.
+     * @param times The new start (index 0) and end (index 1) in milliseconds.
+     * @param out   Receives the rewritten time line.
+     */
+    void writeTimeLine(CharSequence line, long[] times, StringBuilder out);
+
+    /**
+     * @return True if a rewritten time line is always as long as the original one, so the file
+     *         can be shifted in place and split into independently shifted chunks.
+     */
+    default boolean isFixedWidth() {
+        return false;
+    }
+
+    /**
+     * Checks if a line that {@link #parseTimes} rejected was meant to be a time line, e.g. one with
+     * a typo in a timestamp. Such lines are copied as text, and reported by the repair stage.
+     * By default, any line with an arrow ("-->") is meant to be a time line.
+     */
+    default boolean looksLikeTimeLine(CharSequence line) {
+        return TimeFields.indexOf(line, "-->", 0) >= 0;
+    }
+
+    /**
+     * @return True if every cue is preceded by a line with its sequence number, as in SRT.
+     */
+    default boolean isNumbered() {
+        return false;
+    }
+
+    /**
+     * @return True if the text of a cue follows its time line, up to a blank line, as in SRT and WebVTT;
+     *         false if the whole cue is on its time line, as in ASS.
+     */
+    default boolean hasTextBlocks() {
+        return true;
+    }
+}
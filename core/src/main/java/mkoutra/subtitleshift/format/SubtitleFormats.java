@@ -0,0 +1,69 @@
+package mkoutra.subtitleshift.format;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Registry of the supported {@link SubtitleFormat}s, in detection order.
+ *
+ * @author Michalis Koutrakis
+ */
+public class SubtitleFormats {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubtitleFormats.class);
+
+    private final List<SubtitleFormat> formats;
+    private final SubtitleFormat defaultFormat;
+
+    public SubtitleFormats(List<SubtitleFormat> formats) {
+        this.formats = List.copyOf(formats);
+        this.defaultFormat = forFilename("default.srt").orElse(formats.get(formats.size() - 1));
+    }
+
+    /**
+     * @return The built-in formats. SRT time lines are the least distinctive, so SRT is tried last.
+     */
+    public static SubtitleFormats defaults() {
+        return new SubtitleFormats(List.of(new VttFormat(), new AssFormat(), new SubViewerFormat(), new SrtFormat()));
+    }
+
+    public List<SubtitleFormat> getFormats() {
+        return formats;
+    }
+
+    /**
+     * Returns the format with the extension of the filename, e.g. SRT for "movie.srt".
+     *
+     * @param filename The name of the file.
+     * @return         The format, or empty if no format has that extension.
+     */
+    public Optional<SubtitleFormat> forFilename(String filename) {
+        if (filename == null || filename.lastIndexOf('.') < 0) {
+            return Optional.empty();
+        }
+        String extension = filename.substring(filename.lastIndexOf('.')).toLowerCase(Locale.ROOT);
+        return formats.stream()
+                .filter(format -> format.getExtensions().contains(extension))
+                .findFirst();
+    }
+
+    /**
+     * Detects the format of a file from its content, falling back to its extension and then to SRT.
+     *
+     * @param sample   The decoded first bytes of the file.
+     * @param filename The name of the file, may be null.
+     * @return         The detected format.
+     */
+    public SubtitleFormat detect(CharSequence sample, String filename) {
+        for (SubtitleFormat format : formats) {
+            if (format.matches(sample)) {
+                LOGGER.debug("Detected {} content in {}", format.getName(), filename);
+                return format;
+            }
+        }
+        return forFilename(filename).orElse(defaultFormat);
+    }
+}
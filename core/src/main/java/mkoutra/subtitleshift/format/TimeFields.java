@@ -0,0 +1,138 @@
+package mkoutra.subtitleshift.format;
+
+/**
+ * Allocation-free helpers for scanning and writing the "[h:]mm:ss.fff" clocks used by the formats.
+ *
+ * @author Michalis Koutrakis
+ */
+final class TimeFields {
+
+    static final long HOUR = 60 * 60 * 1000;
+
+    private TimeFields() {
+    }
+
+    /**
+     * Parses a clock spanning exactly [from, to): optional hours of up to four digits and ':',
+     * two digits of minutes, ':', two digits of seconds, the separator and the fraction digits.
+     *
+     * @param separator      The char between the seconds and the fraction, e.g. '.' or ','.
+     * @param fractionDigits 3 for milliseconds, 2 for centiseconds.
+     * @return               The time in milliseconds, or -1 if the text is not such a clock.
+     */
+    static long parseClock(CharSequence s, int from, int to, char separator, int fractionDigits) {
+        int fraction = to - fractionDigits;
+        int seconds = fraction - 3;
+        int minutes = seconds - 3;
+        if (minutes < from || s.charAt(fraction - 1) != separator || s.charAt(seconds - 1) != ':') {
+            return -1;
+        }
+
+        int hh = 0;
+        if (minutes > from) {
+            if (minutes - 1 - from < 1 || minutes - 1 - from > 4 || s.charAt(minutes - 1) != ':') {
+                return -1;
+            }
+            hh = digits(s, from, minutes - 1);
+        }
+        int mm = digits(s, minutes, minutes + 2);
+        int ss = digits(s, seconds, seconds + 2);
+        int ff = digits(s, fraction, to);
+        if ((hh | mm | ss | ff) < 0) {
+            return -1;
+        }
+        return ((hh * 60L + mm) * 60 + ss) * 1000 + (fractionDigits == 3 ? ff : ff * 10L);
+    }
+
+    /**
+     * Appends {@code milliseconds} as "h:mm:ss.fff", with at least {@code hourDigits} digits of hours
+     * (hours are left out if 0) and {@code fractionDigits} digits of fraction (the rest is truncated).
+     */
+    static void appendClock(StringBuilder out, long milliseconds, int hourDigits, char separator, int fractionDigits) {
+        if (hourDigits > 0) {
+            appendPadded(out, milliseconds / HOUR, hourDigits);
+            out.append(':');
+        }
+        appendPadded(out, milliseconds / (60 * 1000) % 60, 2);
+        out.append(':');
+        appendPadded(out, milliseconds / 1000 % 60, 2);
+        out.append(separator);
+        int fraction = (int) (milliseconds % 1000);
+        appendPadded(out, fractionDigits == 3 ? fraction : fraction / 10, fractionDigits);
+    }
+
+    /**
+     * Rounds to the nearest centisecond and clamps to [0, max].
+     */
+    static long toCentiseconds(long milliseconds, long max) {
+        return Math.max(0, Math.min(max, (milliseconds + 5) / 10 * 10));
+    }
+
+    /**
+     * @return The index of {@code target} in s at or after {@code from}, or -1.
+     */
+    static int indexOf(CharSequence s, String target, int from) {
+        outer:
+        for (int i = from; i <= s.length() - target.length(); i++) {
+            for (int j = 0; j < target.length(); j++) {
+                if (s.charAt(i + j) != target.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The index of {@code c} in s at or after {@code from}, or -1.
+     */
+    static int indexOf(CharSequence s, char c, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static boolean startsWith(CharSequence s, String prefix) {
+        if (s.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (s.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the ASCII digits in [from, to).
+     *
+     * @return The parsed value, or -1 if a non-digit char is found.
+     */
+    private static int digits(CharSequence s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static void appendPadded(StringBuilder out, long value, int width) {
+        long bound = 1;
+        for (int i = 1; i < width; i++) {
+            bound *= 10;                    // Smallest value with width digits
+        }
+        for (; bound > 1 && value < bound; bound /= 10) {
+            out.append('0');
+        }
+        out.append(value);
+    }
+}
@@ -0,0 +1,89 @@
+package mkoutra.subtitleshift.format;
+
+import mkoutra.subtitleshift.model.Timestamp;
+
+import java.util.List;
+
+/**
+ * WebVTT (.vtt), with time lines such as "01:02.345 --> 00:01:03.000 align:start position:10%".
+ * <p>
+ * Hours are optional; a rewritten timestamp keeps the hours if the original had them or
+ * if it reaches one hour. Cue settings after the end timestamp are kept.
+ *
+ * @author Michalis Koutrakis
+ */
+public class VttFormat implements SubtitleFormat {
+
+    private static final String HEADER = "WEBVTT";
+    private static final String ARROW = " --> ";
+    private static final int SHORT_LENGTH = 9;  // "mm:ss.ttt"
+
+    @Override
+    public String getName() {
+        return "WebVTT";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of(".vtt");
+    }
+
+    @Override
+    public boolean matches(CharSequence sample) {
+        int offset = sample.length() > 0 && sample.charAt(0) == '\uFEFF' ? 1 : 0;  // Byte order mark
+        return TimeFields.startsWith(sample.subSequence(offset, sample.length()), HEADER);
+    }
+
+    @Override
+    public boolean parseTimes(CharSequence line, long[] times) {
+        int arrow = TimeFields.indexOf(line, ARROW, SHORT_LENGTH);
+        if (arrow < 0) {
+            return false;
+        }
+        int endFrom = arrow + ARROW.length();
+        int endTo = endOfTimestamp(line, endFrom);
+
+        long start = TimeFields.parseClock(line, 0, arrow, '.', 3);
+        if (start < 0) {
+            return false;
+        }
+        long end = TimeFields.parseClock(line, endFrom, endTo, '.', 3);
+        if (end < 0) {
+            return false;
+        }
+
+        times[0] = start;
+        times[1] = end;
+        return true;
+    }
+
+    @Override
+    public void writeTimeLine(CharSequence line, long[] times, StringBuilder out) {
+        int arrow = TimeFields.indexOf(line, ARROW, SHORT_LENGTH);
+        int endFrom = arrow + ARROW.length();
+        int endTo = endOfTimestamp(line, endFrom);
+
+        append(out, times[0], arrow > SHORT_LENGTH);
+        out.append(ARROW);
+        append(out, times[1], endTo - endFrom > SHORT_LENGTH);
+        out.append(line, endTo, line.length());     // Cue settings
+    }
+
+    private static void append(StringBuilder out, long milliseconds, boolean hours) {
+        long clamped = Timestamp.clamp(milliseconds);
+        TimeFields.appendClock(out, clamped, hours || clamped >= TimeFields.HOUR ? 2 : 0, '.', 3);
+    }
+
+    /**
+     * @return The index of the first space or tab at or after {@code from}, or the length of the line.
+     */
+    private static int endOfTimestamp(CharSequence line, int from) {
+        for (int i = from; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ' ' || c == '\t') {
+                return i;
+            }
+        }
+        return line.length();
+    }
+}
@@ -0,0 +1,123 @@
+package mkoutra.subtitleshift.model;
+
+import java.util.Arrays;
+
+/**
+ * A compact index of the cues of a file: start and end times in primitive arrays,
+ * plus a start-ordered view for finding the cue shown at a given time by binary search.
+ *
+ * @author Michalis Koutrakis
+ */
+public final class CueIndex {
+
+    private final long[] starts;    // In file order
+    private final long[] ends;
+    private final long[] sorted;    // (start << 32 | cue), ordered by start
+    private final long[] maxEnds;   // maxEnds[i] = the latest end among the first i + 1 cues of sorted
+
+    private CueIndex(long[] starts, long[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+        this.sorted = new long[starts.length];
+        for (int cue = 0; cue < starts.length; cue++) {
+            sorted[cue] = starts[cue] << 32 | cue;  // Times fit in 29 bits, so the packing keeps the order
+        }
+        Arrays.sort(sorted);
+
+        this.maxEnds = new long[starts.length];
+        long maxEnd = -1;
+        for (int i = 0; i < sorted.length; i++) {
+            maxEnd = Math.max(maxEnd, ends[cueAt(i)]);
+            maxEnds[i] = maxEnd;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The number of cues.
+     */
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * @param cue The 0-based index of the cue in the file.
+     */
+    public long start(int cue) {
+        return starts[cue];
+    }
+
+    /**
+     * @param cue The 0-based index of the cue in the file.
+     */
+    public long end(int cue) {
+        return ends[cue];
+    }
+
+    /**
+     * @return The start times of all cues in ascending order.
+     */
+    public long[] sortedStarts() {
+        long[] result = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            result[i] = sorted[i] >>> 32;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the cue shown at {@code time}, i.e. with start &lt;= time &lt; end.
+     * If several cues overlap at that time, the one starting last is returned.
+     *
+     * @param time A time in milliseconds.
+     * @return     The 0-based index of the cue in the file, or -1 if no cue is shown at that time.
+     */
+    public int find(long time) {
+        // The last cue starting at or before time
+        int i = Arrays.binarySearch(sorted, time << 32 | 0xFFFFFFFFL);
+        i = i >= 0 ? i : -i - 2;
+
+        // Earlier cues can only contain time while some of them ends after it
+        for (; i >= 0 && maxEnds[i] > time; i--) {
+            if (ends[cueAt(i)] > time) {
+                return cueAt(i);
+            }
+        }
+        return -1;
+    }
+
+    private int cueAt(int sortedIndex) {
+        return (int) sorted[sortedIndex];
+    }
+
+    /**
+     * Collects cue times while a file is read, in growing primitive arrays.
+     */
+    public static final class Builder {
+
+        private long[] starts = new long[256];
+        private long[] ends = new long[256];
+        private int size;
+
+        private Builder() {
+        }
+
+        public Builder add(long start, long end) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = Timestamp.clamp(start);
+            ends[size] = Timestamp.clamp(end);
+            size++;
+            return this;
+        }
+
+        public CueIndex build() {
+            return new CueIndex(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size));
+        }
+    }
+}
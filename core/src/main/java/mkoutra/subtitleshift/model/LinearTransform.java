@@ -0,0 +1,122 @@
+package mkoutra.subtitleshift.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+
+/**
+ * The linear transform t' = a·t + b, with the scale a kept as the fraction numerator/denominator
+ * so that it is applied in integer arithmetic, rounding to the nearest millisecond.
+ * <p>
+ * Besides a plain offset, it corrects framerate drift (e.g. subtitles timed for a 25 fps release
+ * played with a 23.976 fps video) or maps two known cue times to their correct times.
+ *
+ * @author Michalis Koutrakis
+ */
+public record LinearTransform(long numerator, long denominator, long offset) implements PointTransform {
+
+    /** Keeps t·numerator within a long for every t up to {@link Timestamp#MAX_MILLISECONDS}. */
+    private static final long MAX_TERM = 1_000_000_000L;
+
+    /** NTSC framerates are 1000/1001 of the nominal ones and usually written rounded. */
+    private static final Map<String, long[]> NTSC_FRAMERATES = Map.of(
+            "23.976", new long[] {24000, 1001},
+            "29.97", new long[] {30000, 1001},
+            "59.94", new long[] {60000, 1001});
+
+    public LinearTransform {
+        if (numerator <= 0 || denominator <= 0 || numerator > MAX_TERM || denominator > MAX_TERM) {
+            throw new IllegalArgumentException("Invalid scale: " + numerator + "/" + denominator);
+        }
+        long gcd = gcd(numerator, denominator);
+        numerator /= gcd;
+        denominator /= gcd;
+    }
+
+    /**
+     * Rescales times of subtitles timed for {@code sourceFps} to a video running at {@code targetFps},
+     * then adds the offset.
+     *
+     * @param sourceFps                 The framerate the subtitles were timed for, e.g. "25".
+     * @param targetFps                 The framerate of the video, e.g. "23.976".
+     * @param offset                    The time shift in milliseconds applied after scaling.
+     * @return                          The transform.
+     * @throws IllegalArgumentException If a framerate is not a positive number.
+     */
+    public static LinearTransform framerate(String sourceFps, String targetFps, long offset) {
+        long[] source = parseFramerate(sourceFps);
+        long[] target = parseFramerate(targetFps);
+        // t' = t · source / target
+        return new LinearTransform(source[0] * target[1], source[1] * target[0], offset);
+    }
+
+    /**
+     * Maps {@code from1} to {@code to1} and {@code from2} to {@code to2} (±1 ms for rounding).
+     *
+     * @return                          The transform.
+     * @throws IllegalArgumentException If the anchors are equal or would reverse the order of the cues.
+     */
+    public static LinearTransform anchors(long from1, long to1, long from2, long to2) {
+        if (from1 == from2 || (to2 - to1) / (double) (from2 - from1) <= 0) {
+            throw new IllegalArgumentException("Anchors must be two distinct cues in the same order");
+        }
+        long numerator = Math.abs(to2 - to1);
+        long denominator = Math.abs(from2 - from1);
+        long gcd = gcd(numerator, denominator);
+        numerator /= gcd;
+        denominator /= gcd;
+        while (numerator > MAX_TERM || denominator > MAX_TERM) {    // Only loses sub-millisecond precision
+            numerator = (numerator + 1) / 2;
+            denominator = (denominator + 1) / 2;
+        }
+        return new LinearTransform(numerator, denominator, to1 - scale(from1, numerator, denominator));
+    }
+
+    @Override
+    public long apply(long milliseconds) {
+        return Timestamp.shift(scale(Timestamp.clamp(milliseconds), numerator, denominator), offset);
+    }
+
+    /**
+     * @return "+1234" for a plain offset, otherwise e.g. "x1001_960+1234".
+     */
+    @Override
+    public String describe() {
+        String signedOffset = (offset < 0 ? "" : "+") + offset;
+        return numerator == denominator ? signedOffset : "x" + numerator + "_" + denominator + signedOffset;
+    }
+
+    private static long scale(long milliseconds, long numerator, long denominator) {
+        if (numerator == denominator) {
+            return milliseconds;
+        }
+        return Math.floorDiv(milliseconds * numerator + denominator / 2, denominator);
+    }
+
+    /**
+     * @return The framerate as {numerator, denominator}.
+     */
+    private static long[] parseFramerate(String fps) {
+        if (NTSC_FRAMERATES.containsKey(fps)) {
+            return NTSC_FRAMERATES.get(fps);
+        }
+        try {
+            BigDecimal value = new BigDecimal(fps).setScale(3, RoundingMode.HALF_UP);
+            if (value.signum() <= 0 || value.compareTo(BigDecimal.valueOf(1000)) > 0) {
+                throw new IllegalArgumentException("Invalid framerate: " + fps);
+            }
+            return new long[] {value.unscaledValue().longValueExact(), 1000};
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid framerate: " + fps, e);
+        }
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,193 @@
+package mkoutra.subtitleshift.model;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the transform that aligns the cues of a subtitle file with those of a reference file
+ * with correct timing (e.g. the same film in another language), from their cue start times alone.
+ * <p>
+ * Every source cue votes for the offsets to the reference cues within {@code maxOffset} of it, in a
+ * histogram of {@value #BIN} ms bins. Matching cues agree on the offset while unrelated pairs spread
+ * their votes, so the fullest bin gives a coarse offset. Sliding a window over the sorted reference
+ * starts costs O(n·k) for n source cues and k reference cues per window, not O(n·m).
+ * The offset is then refined to the median difference of the cues matched within {@value #TOLERANCE} ms.
+ * <p>
+ * With drift, the votes are repeated for the common framerate conversions, and the best one seeds
+ * a least-squares line through the matched cues.
+ *
+ * @author Michalis Koutrakis
+ */
+public final class OffsetEstimator {
+
+    /** The width of a histogram bin in milliseconds. */
+    static final int BIN = 100;
+
+    /** How far from its expected time a reference cue still counts as a match. */
+    static final long TOLERANCE = 500;
+
+    /** The default for the largest offset considered: 10 minutes. */
+    public static final long DEFAULT_MAX_OFFSET = 10 * 60 * 1000;
+
+    private static final int MIN_MATCHES = 3;
+
+    /** Scales tried with drift, as {numerator, denominator}: none, 25 ↔ 23.976, 25 ↔ 24, 24 ↔ 23.976. */
+    private static final long[][] SCALES = {
+            {1, 1}, {1001, 960}, {960, 1001}, {25, 24}, {24, 25}, {1001, 1000}, {1000, 1001}};
+
+    /**
+     * @param transform   The transform mapping the source times to the reference times.
+     * @param matchedCues The number of source cues that matched a reference cue within the tolerance.
+     */
+    public record Estimate(LinearTransform transform, int matchedCues) {
+    }
+
+    private OffsetEstimator() {
+    }
+
+    /**
+     * @param source    The cue start times of the file to align, in ascending order.
+     * @param reference The cue start times of the reference file, in ascending order.
+     * @param drift     Whether to estimate a scale as well as an offset.
+     * @param maxOffset The largest offset considered, in milliseconds.
+     * @return          The estimated transform.
+     * @throws IllegalArgumentException If too few cues match for any offset.
+     */
+    public static Estimate estimate(long[] source, long[] reference, boolean drift, long maxOffset) {
+        int[] histogram = new int[(int) (2 * maxOffset / BIN) + 2];
+        long[] scaled = new long[source.length];
+
+        // Coarse offset: the best-voted pair of adjacent bins, over the candidate scales
+        long[] bestScale = SCALES[0];
+        long bestOffset = 0;
+        int bestVotes = -1;
+        for (long[] scale : drift ? SCALES : new long[][] {SCALES[0]}) {
+            for (int i = 0; i < source.length; i++) {
+                scaled[i] = source[i] * scale[0] / scale[1];
+            }
+            Arrays.fill(histogram, 0);
+            vote(scaled, reference, maxOffset, histogram);
+
+            for (int bin = 0; bin < histogram.length - 1; bin++) {
+                int votes = histogram[bin] + histogram[bin + 1];
+                if (votes > bestVotes) {
+                    bestVotes = votes;
+                    bestScale = scale;
+                    bestOffset = (bin + 1L) * BIN - maxOffset;
+                }
+            }
+        }
+
+        for (int i = 0; i < source.length; i++) {
+            scaled[i] = source[i] * bestScale[0] / bestScale[1];
+        }
+        double slope = bestScale[0] / (double) bestScale[1];
+        double intercept = bestOffset;
+        int matched;
+        if (!drift) {
+            long[] differences = new long[source.length];
+            matched = match(scaled, reference, 1, bestOffset, null, differences);
+            requireMatches(matched);
+            Arrays.sort(differences, 0, matched);
+            return new Estimate(new LinearTransform(1, 1, differences[matched / 2]), matched);
+        }
+
+        // Fit t' = slope·t + intercept to the matches, twice, as a better line matches more cues
+        long[] matches = new long[source.length];
+        long[] differences = new long[source.length];
+        matched = match(source, reference, slope, intercept, matches, differences);
+        for (int round = 0; round < 2; round++) {
+            requireMatches(matched);
+            double[] line = fit(matches, differences, matched);
+            slope = line[0];
+            intercept = line[1];
+            matched = match(source, reference, slope, intercept, matches, differences);
+        }
+        requireMatches(matched);
+
+        long first = matches[0];
+        long last = matches[matched - 1];
+        LinearTransform transform = first == last
+                ? new LinearTransform(1, 1, Math.round(intercept + (slope - 1) * first))
+                : LinearTransform.anchors(first, Math.round(slope * first + intercept),
+                                          last, Math.round(slope * last + intercept));
+        return new Estimate(transform, matched);
+    }
+
+    /**
+     * Adds a vote for reference[j] - source[i] for every pair within maxOffset of each other.
+     */
+    static void vote(long[] source, long[] reference, long maxOffset, int[] histogram) {
+        int from = 0;
+        for (long start : source) {
+            while (from < reference.length && reference[from] < start - maxOffset) {
+                from++;
+            }
+            for (int j = from; j < reference.length && reference[j] <= start + maxOffset; j++) {
+                histogram[(int) ((reference[j] - start + maxOffset) / BIN)]++;
+            }
+        }
+    }
+
+    /**
+     * Matches every source time to the nearest reference time to slope·t + intercept, if within the tolerance.
+     *
+     * @param matches     Receives the matched source times, or null.
+     * @param differences Receives reference - source for each match.
+     * @return            The number of matches.
+     */
+    private static int match(long[] source, long[] reference, double slope, double intercept,
+                             long[] matches, long[] differences) {
+        int matched = 0;
+        for (long start : source) {
+            long expected = Math.round(slope * start + intercept);
+            int i = Arrays.binarySearch(reference, expected);
+            i = i >= 0 ? i : -i - 1;
+            long nearest = Long.MAX_VALUE;
+            if (i < reference.length) {
+                nearest = reference[i];
+            }
+            if (i > 0 && expected - reference[i - 1] < Math.abs(nearest - expected)) {
+                nearest = reference[i - 1];
+            }
+            if (Math.abs(nearest - expected) <= TOLERANCE) {
+                if (matches != null) {
+                    matches[matched] = start;
+                }
+                differences[matched++] = nearest - start;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Least-squares line through (t, t + difference), centered on the means to keep the precision.
+     *
+     * @return {slope, intercept}
+     */
+    private static double[] fit(long[] times, long[] differences, int count) {
+        double meanTime = 0;
+        double meanTarget = 0;
+        for (int i = 0; i < count; i++) {
+            meanTime += times[i];
+            meanTarget += times[i] + differences[i];
+        }
+        meanTime /= count;
+        meanTarget /= count;
+
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < count; i++) {
+            double time = times[i] - meanTime;
+            covariance += time * (times[i] + differences[i] - meanTarget);
+            variance += time * time;
+        }
+        double slope = variance == 0 ? 1 : covariance / variance;
+        return new double[] {slope, meanTarget - slope * meanTime};
+    }
+
+    private static void requireMatches(int matched) {
+        if (matched < MIN_MATCHES) {
+            throw new IllegalArgumentException("The subtitles do not match the reference");
+        }
+    }
+}
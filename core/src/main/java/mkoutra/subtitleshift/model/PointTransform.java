@@ -0,0 +1,24 @@
+package mkoutra.subtitleshift.model;
+
+/**
+ * A transform mapping every time on its own, whatever cue it belongs to,
+ * so that it also maps single times, e.g. a time given by the user.
+ *
+ * @author Michalis Koutrakis
+ */
+public interface PointTransform extends TimeTransform {
+
+    /**
+     * Maps a time. The result is clamped to [0, {@link Timestamp#MAX_MILLISECONDS}].
+     *
+     * @param milliseconds A time in [0, {@link Timestamp#MAX_MILLISECONDS}].
+     * @return             The mapped time.
+     */
+    long apply(long milliseconds);
+
+    @Override
+    default void applyToCue(long cue, long[] times) {
+        times[0] = apply(times[0]);
+        times[1] = apply(times[1]);
+    }
+}
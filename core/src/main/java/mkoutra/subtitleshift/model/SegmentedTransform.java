@@ -0,0 +1,111 @@
+package mkoutra.subtitleshift.model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Applies a different offset from each of several points of a file on, e.g. after an ad break.
+ * <p>
+ * Segments start either at a time or at a cue number. A cue gets the offset of the last segment
+ * starting at or before it, found by binary search over a sorted primitive array; cues before the
+ * first segment are left unchanged. With time segments, the start of a cue decides its segment,
+ * so both ends of a cue always move together.
+ *
+ * @author Michalis Koutrakis
+ */
+public final class SegmentedTransform implements TimeTransform {
+
+    private static final int MAX_DESCRIPTION_LENGTH = 64;
+
+    private final boolean byCue;
+    private final long[] starts;    // Sorted ascending
+    private final long[] offsets;
+
+    private SegmentedTransform(boolean byCue, long[] starts, long[] offsets) {
+        if (starts.length == 0 || starts.length != offsets.length) {
+            throw new IllegalArgumentException("Every segment needs a start and an offset");
+        }
+        // Sort the (start, offset) pairs by start
+        Integer[] order = new Integer[starts.length];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, (a, b) -> Long.compare(starts[a], starts[b]));
+
+        this.byCue = byCue;
+        this.starts = new long[starts.length];
+        this.offsets = new long[starts.length];
+        for (int i = 0; i < order.length; i++) {
+            this.starts[i] = starts[order[i]];
+            this.offsets[i] = offsets[order[i]];
+            if (this.starts[i] < (byCue ? 1 : 0) || (i > 0 && this.starts[i] == this.starts[i - 1])) {
+                throw new IllegalArgumentException("Invalid or duplicate segment start: " + this.starts[i]);
+            }
+        }
+    }
+
+    /**
+     * @param fromTimes The start time of each segment in milliseconds.
+     * @param offsets   The time shift of each segment in milliseconds.
+     */
+    public static SegmentedTransform byTime(long[] fromTimes, long[] offsets) {
+        return new SegmentedTransform(false, fromTimes, offsets);
+    }
+
+    /**
+     * @param fromCues The first cue (1-based) of each segment.
+     * @param offsets  The time shift of each segment in milliseconds.
+     */
+    public static SegmentedTransform byCue(long[] fromCues, long[] offsets) {
+        return new SegmentedTransform(true, fromCues, offsets);
+    }
+
+    /**
+     * Shifts both ends of a cue by the offset of its segment: the segment containing the cue number,
+     * or the time segment containing its start.
+     */
+    @Override
+    public void applyToCue(long cue, long[] times) {
+        long offset = offsetAt(byCue ? cue + 1 : times[0]);
+        times[0] = Timestamp.shift(times[0], offset);
+        times[1] = Timestamp.shift(times[1], offset);
+    }
+
+    @Override
+    public boolean isCueIndependent() {
+        return !byCue;
+    }
+
+    /**
+     * @return e.g. "s#12+2000#40-500" for cue segments or "s600000+2000" for time segments;
+     *         long descriptions are replaced by a digest.
+     */
+    @Override
+    public String describe() {
+        StringBuilder description = new StringBuilder("s");
+        for (int i = 0; i < starts.length; i++) {
+            description.append(byCue ? "#" : "").append(starts[i]).append(offsets[i] < 0 ? "" : "+").append(offsets[i]);
+        }
+        if (description.length() <= MAX_DESCRIPTION_LENGTH) {
+            return description.toString();
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(description.toString().getBytes(StandardCharsets.US_ASCII));
+            return "s" + HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private long offsetAt(long value) {
+        int i = Arrays.binarySearch(starts, value);
+        int segment = i >= 0 ? i : -i - 2;     // The last segment starting at or before value
+        return segment < 0 ? 0 : offsets[segment];
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentedTransform[" + describe() + "]";
+    }
+}
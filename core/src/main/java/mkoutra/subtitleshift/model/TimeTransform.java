@@ -0,0 +1,43 @@
+package mkoutra.subtitleshift.model;
+
+/**
+ * A mapping of subtitle times, applied to every cue while a file is shifted.
+ * <p>
+ * Transforms work on primitive milliseconds and must not allocate, since they are
+ * called once per cue on the hot path. Transforms that map each time on its own,
+ * whatever cue it belongs to, are {@link PointTransform}s.
+ *
+ * @author Michalis Koutrakis
+ */
+public interface TimeTransform {
+
+    /**
+     * Maps the start and end of a cue in place. The results are clamped to [0, {@link Timestamp#MAX_MILLISECONDS}].
+     *
+     * @param cue   The 0-based index of the cue in the file.
+     * @param times The start (index 0) and end (index 1) in milliseconds.
+     */
+    void applyToCue(long cue, long[] times);
+
+    /**
+     * @return False if the result of {@link #applyToCue} depends on the cue index, in which case
+     *         the cues of a file must be visited in order from the first one.
+     */
+    default boolean isCueIndependent() {
+        return true;
+    }
+
+    /**
+     * @return A short, file-name safe description that identifies the transform,
+     *         e.g. "+1234". Used in output file names and cache keys.
+     */
+    String describe();
+
+    /**
+     * @param shift The time shift in milliseconds.
+     * @return      A transform adding {@code shift} to every time.
+     */
+    static PointTransform offset(long shift) {
+        return new LinearTransform(1, 1, shift);
+    }
+}
@@ -0,0 +1,174 @@
+package mkoutra.subtitleshift.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An immutable subtitle timestamp, stored as milliseconds.
+ * <p>
+ * The static helpers parse and format "hh:mm:ss,xxx" directly from/into char buffers,
+ * so hot paths can work on primitive {@code long} values without creating Timestamp objects.
+ * Shifting saturates: results below zero become 00:00:00,000 and results above
+ * {@link #MAX_MILLISECONDS} become 99:59:59,999.
+ *
+ * @author Michalis Koutrakis
+ */
+public record Timestamp(long milliseconds) {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Timestamp.class);
+
+    /** Length of a formatted timestamp, e.g. "01:01:05,123". */
+    public static final int LENGTH = 12;
+
+    /** The largest timestamp that fits in "hh:mm:ss,xxx", i.e. 99:59:59,999. */
+    public static final long MAX_MILLISECONDS = ((99L * 60 + 59) * 60 + 59) * 1000 + 999;
+
+    public Timestamp {
+        if (milliseconds < 0 || milliseconds > MAX_MILLISECONDS) {
+            throw new IllegalArgumentException("Timestamp out of range: " + milliseconds);
+        }
+    }
+
+    /**
+     * Parses a timestamp in the format "hh:mm:ss,xxx".
+     *
+     * @param timestamp                 The timestamp text.
+     * @return                          The parsed Timestamp.
+     * @throws IllegalArgumentException If the text is not a valid timestamp.
+     */
+    public static Timestamp parse(String timestamp) {
+        long milliseconds = timestamp.length() == LENGTH ? parse(timestamp, 0) : -1;
+        if (milliseconds < 0) {
+            LOGGER.error("Invalid timestamp encountered: {}", timestamp);
+            throw new IllegalArgumentException("Invalid timestamp: " + timestamp);
+        }
+        return new Timestamp(milliseconds);
+    }
+
+    /**
+     * Parses "hh:mm:ss,xxx" starting at {@code offset}, without allocating.
+     * The caller must ensure that at least {@link #LENGTH} chars are available.
+     *
+     * @return The timestamp in milliseconds, or -1 if the text is not a timestamp.
+     */
+    public static long parse(CharSequence s, int offset) {
+        if (s.charAt(offset + 2) != ':' || s.charAt(offset + 5) != ':' || s.charAt(offset + 8) != ',') {
+            return -1;
+        }
+
+        int hh = digits(s, offset, 2);
+        int mm = digits(s, offset + 3, 2);
+        int ss = digits(s, offset + 6, 2);
+        int xxx = digits(s, offset + 9, 3);
+        if ((hh | mm | ss | xxx) < 0) {
+            return -1;
+        }
+        return ((hh * 60L + mm) * 60 + ss) * 1000 + xxx;
+    }
+
+    /**
+     * Writes {@code milliseconds} as "hh:mm:ss,xxx" into {@code out} starting at {@code offset}.
+     * Values outside [0, {@link #MAX_MILLISECONDS}] are clamped.
+     */
+    public static void format(long milliseconds, char[] out, int offset) {
+        long clamped = clamp(milliseconds);
+        int hh = (int) (clamped / (3600 * 1000));
+        int rest = (int) (clamped % (3600 * 1000));
+        int mm = rest / (60 * 1000);
+        rest %= (60 * 1000);
+        int ss = rest / 1000;
+        int xxx = rest % 1000;
+
+        out[offset] = (char) ('0' + hh / 10);
+        out[offset + 1] = (char) ('0' + hh % 10);
+        out[offset + 2] = ':';
+        out[offset + 3] = (char) ('0' + mm / 10);
+        out[offset + 4] = (char) ('0' + mm % 10);
+        out[offset + 5] = ':';
+        out[offset + 6] = (char) ('0' + ss / 10);
+        out[offset + 7] = (char) ('0' + ss % 10);
+        out[offset + 8] = ',';
+        out[offset + 9] = (char) ('0' + xxx / 100);
+        out[offset + 10] = (char) ('0' + xxx / 10 % 10);
+        out[offset + 11] = (char) ('0' + xxx % 10);
+    }
+
+    /**
+     * Parses a timeshift such as "2000" or "-1500". Meant to be called once per request.
+     *
+     * @param timeshift                 The timeshift in milliseconds.
+     * @return                          The timeshift as a long.
+     * @throws IllegalArgumentException If the timeshift is not an integer.
+     */
+    public static long parseShift(String timeshift) {
+        try {
+            return Long.parseLong(timeshift);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid timeshift: " + timeshift, e);
+        }
+    }
+
+    /**
+     * Adds {@code shift} to {@code milliseconds}, clamping the result to [0, {@link #MAX_MILLISECONDS}].
+     * Never overflows, whatever the shift.
+     */
+    public static long shift(long milliseconds, long shift) {
+        long sum = milliseconds + shift;
+        // Overflow only happens if both operands have the same sign and the sum has the other one.
+        if (((milliseconds ^ sum) & (shift ^ sum)) < 0) {
+            return shift < 0 ? 0 : MAX_MILLISECONDS;
+        }
+        return clamp(sum);
+    }
+
+    public static long clamp(long milliseconds) {
+        return Math.max(0, Math.min(MAX_MILLISECONDS, milliseconds));
+    }
+
+    public Timestamp shift(long shift) {
+        return new Timestamp(shift(milliseconds, shift));
+    }
+
+    public long toMilliseconds() {
+        return milliseconds;
+    }
+
+    public int getHh() {
+        return (int) (milliseconds / (3600 * 1000));
+    }
+
+    public int getMm() {
+        return (int) (milliseconds / (60 * 1000) % 60);
+    }
+
+    public int getSs() {
+        return (int) (milliseconds / 1000 % 60);
+    }
+
+    public int getXxx() {
+        return (int) (milliseconds % 1000);
+    }
+
+    @Override
+    public String toString() {
+        char[] out = new char[LENGTH];
+        format(milliseconds, out, 0);
+        return new String(out);
+    }
+
+    /**
+     * Parses {@code count} ASCII digits starting at {@code offset}.
+     *
+     * @return The parsed value, or -1 if a non-digit char is found.
+     */
+    private static int digits(CharSequence s, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
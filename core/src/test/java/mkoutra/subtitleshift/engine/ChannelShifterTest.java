@@ -0,0 +1,105 @@
+package mkoutra.subtitleshift.engine;
+
+import mkoutra.subtitleshift.format.AssFormat;
+import mkoutra.subtitleshift.format.SrtFormat;
+import mkoutra.subtitleshift.model.TimeTransform;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelShifterTest {
+
+    private static final SrtFormat SRT = new SrtFormat();
+
+    @TempDir
+    Path tempDir;
+
+    private static String shift(String subtitles, Charset charset, long shift) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChannelShifter.shift(ByteBuffer.wrap(subtitles.getBytes(charset)), Channels.newChannel(out), SRT, TimeTransform.offset(shift));
+        return out.toString(charset);
+    }
+
+    @Test
+    void testPreservesLineEndingsAndText() throws IOException {
+        String subtitles = "1\r\n00:00:01,000 --> 00:00:02,000\r\nΚαλημέρα\r\n\r\n"
+                + "2\n00:00:03,000 --> 00:00:04,000\nκόσμε\n\n"
+                + "3\r00:00:05,000 --> 00:00:06,000\rτέλος";
+        String expected = "1\r\n00:00:01,500 --> 00:00:02,500\r\nΚαλημέρα\r\n\r\n"
+                + "2\n00:00:03,500 --> 00:00:04,500\nκόσμε\n\n"
+                + "3\r00:00:05,500 --> 00:00:06,500\rτέλος";
+
+        assertEquals(expected, shift(subtitles, StandardCharsets.UTF_8, 500));
+        assertEquals(expected, shift(subtitles, Charset.forName("windows-1253"), 500));
+    }
+
+    @Test
+    void testShiftFile() throws IOException {
+        Path outputPath = tempDir.resolve("Fallen1_+1234.srt");
+        ChannelShifter.shift(Paths.get("src/test/resources/testFiles/Fallen1.srt"), outputPath, SRT, TimeTransform.offset(1234));
+
+        assertArrayEquals(
+                Files.readAllBytes(Paths.get("src/test/resources/testshifted/Fallen1_+1234.srt")),
+                Files.readAllBytes(outputPath));
+    }
+
+    @Test
+    void testShiftParallelMatchesSequential() throws IOException {
+        StringBuilder subtitles = new StringBuilder();
+        char[] timeLine = new char[SrtFormat.LENGTH];
+        for (int i = 1; i <= 2000; i++) {
+            SrtFormat.format(i * 1000L, i * 1000L + 500, timeLine);
+            String eol = i % 3 == 0 ? "\n" : "\r\n";
+            subtitles.append(i).append(eol).append(timeLine).append(eol).append("Γραμμή ").append(i).append(eol).append(eol);
+        }
+        Path inputPath = tempDir.resolve("large.srt");
+        Files.writeString(inputPath, subtitles, StandardCharsets.UTF_8);
+        Path sequentialPath = tempDir.resolve("sequential.srt");
+        Path parallelPath = tempDir.resolve("parallel.srt");
+
+        ShiftCounts sequential = ChannelShifter.shift(inputPath, sequentialPath, SRT, TimeTransform.offset(-1500));
+        ShiftCounts parallel = ChannelShifter.shiftParallel(inputPath, parallelPath, SRT, TimeTransform.offset(-1500), 4096);
+
+        assertEquals(sequential, parallel);
+        assertEquals(2000, parallel.cues());
+        assertArrayEquals(Files.readAllBytes(sequentialPath), Files.readAllBytes(parallelPath));
+    }
+
+    @Test
+    void testChunkBoundsSplitAtBlankLines() {
+        ByteBuffer input = ByteBuffer.wrap("1\na\n\n2\r\nb\r\n\r\n3\nc".getBytes(StandardCharsets.US_ASCII));
+
+        assertArrayEquals(new int[]{0, 5, 13, 16}, ChannelShifter.chunkBounds(input, 2));
+        assertArrayEquals(new int[]{0, 16}, ChannelShifter.chunkBounds(input, 100));
+    }
+
+    @Test
+    void testShiftOtherFormat() throws IOException {
+        String subtitles = "[Events]\r\nDialogue: 0,0:00:01.50,0:00:04.00,Default,,0,0,0,,Καλημέρα\r\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChannelShifter.shift(ByteBuffer.wrap(subtitles.getBytes(StandardCharsets.UTF_8)), Channels.newChannel(out),
+                new AssFormat(), TimeTransform.offset(1000));
+
+        assertEquals("[Events]\r\nDialogue: 0,0:00:02.50,0:00:05.00,Default,,0,0,0,,Καλημέρα\r\n",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testSupports() {
+        assertTrue(ChannelShifter.supports(StandardCharsets.UTF_8));
+        assertTrue(ChannelShifter.supports(Charset.forName("windows-1253")));
+        assertTrue(ChannelShifter.supports(StandardCharsets.ISO_8859_1));
+        assertFalse(ChannelShifter.supports(StandardCharsets.UTF_16LE));
+    }
+}
@@ -0,0 +1,57 @@
+package mkoutra.subtitleshift.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CharsetResolverTest {
+
+    private final CharsetResolver charsetResolver = new CharsetResolver(CharsetResolver.DEFAULT_SAMPLE_SIZE, CharsetResolver.DEFAULT_CACHE_SIZE);
+
+    @Test
+    void testBomFastPath() throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(
+                Files.newInputStream(Paths.get("src/test/resources/testFiles/Fallen1.srt")))) {
+            assertEquals(StandardCharsets.UTF_8, charsetResolver.detect(inputStream));
+            assertEquals(0xEF, inputStream.read());  // The stream is reset to its start
+        }
+    }
+
+    @Test
+    void testIsUtf8() {
+        byte[] greek = "Καλημέρα".getBytes(StandardCharsets.UTF_8);
+        assertTrue(CharsetResolver.isUtf8(greek, true));
+        assertTrue(CharsetResolver.isUtf8("00:00:39,398".getBytes(StandardCharsets.US_ASCII), true));
+
+        byte[] truncated = Arrays.copyOf(greek, greek.length - 1);
+        assertFalse(CharsetResolver.isUtf8(truncated, true));
+        assertTrue(CharsetResolver.isUtf8(truncated, false));
+
+        assertFalse(CharsetResolver.isUtf8("Καλημέρα".getBytes(Charset.forName("windows-1253")), false));
+        assertFalse(CharsetResolver.isUtf8("00:00:39,398".getBytes(StandardCharsets.UTF_16LE), true));
+    }
+
+    @Test
+    void testUtf16WithoutBom() {
+        byte[] sample = "1\r\n00:00:01,000 --> 00:00:02,000\r\nHello world\r\n".getBytes(StandardCharsets.UTF_16LE);
+        assertEquals(StandardCharsets.UTF_16LE, charsetResolver.detect(sample, true));
+    }
+
+    @Test
+    void testDetectionIsCached() {
+        byte[] sample = "1\n00:00:01,000 --> 00:00:02,000\nΚαλημέρα κόσμε, τι κάνεις;\n"
+                .getBytes(Charset.forName("windows-1253"));
+        Charset first = charsetResolver.detect(sample, true);
+        assertNotEquals(StandardCharsets.UTF_8, first);
+        assertSame(first, charsetResolver.detect(sample.clone(), true));
+    }
+}
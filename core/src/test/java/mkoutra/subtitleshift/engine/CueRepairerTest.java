@@ -0,0 +1,154 @@
+package mkoutra.subtitleshift.engine;
+
+import mkoutra.subtitleshift.format.AssFormat;
+import mkoutra.subtitleshift.format.SrtFormat;
+import mkoutra.subtitleshift.format.SubtitleFormat;
+import mkoutra.subtitleshift.format.VttFormat;
+import mkoutra.subtitleshift.model.TimeTransform;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CueRepairerTest {
+
+    private static final SubtitleEngine ENGINE = SubtitleEngine.defaults();
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    private RepairReport repair(String subtitles, SubtitleFormat format, long shift, RepairOptions options)
+            throws IOException {
+        return ENGINE.repair(new ByteArrayInputStream(subtitles.getBytes(StandardCharsets.UTF_8)), out,
+                StandardCharsets.UTF_8, format, TimeTransform.offset(shift), options);
+    }
+
+    private String output() {
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testCleanFileOnlyNormalizesLineEndings() throws IOException {
+        String subtitles = "1\r\n00:00:01,000 --> 00:00:02,000\r\nΚαλημέρα\n\n"
+                + "2\r00:00:03,000 --> 00:00:04,000\rκόσμε\r\n";
+        RepairReport report = repair(subtitles, new SrtFormat(), 500, RepairOptions.defaults());
+
+        assertEquals("1\r\n00:00:01,500 --> 00:00:02,500\r\nΚαλημέρα\r\n\r\n"
+                + "2\r\n00:00:03,500 --> 00:00:04,500\r\nκόσμε\r\n", output());
+        assertTrue(report.isClean());
+        assertEquals(2, report.cues());
+        assertEquals(2, report.written());
+    }
+
+    @Test
+    void testNegativeCuesAreClampedOrDropped() throws IOException {
+        String subtitles = "1\n00:00:01,000 --> 00:00:02,000\nfirst\n\n"
+                + "2\n00:00:03,000 --> 00:00:06,000\nsecond\n\n"
+                + "3\n00:00:07,000 --> 00:00:08,000\nthird\n";
+
+        RepairReport clamped = repair(subtitles, new SrtFormat(), -4000, RepairOptions.defaults());
+        assertEquals("1\n00:00:00,000 --> 00:00:02,000\nsecond\n\n"
+                + "2\n00:00:03,000 --> 00:00:04,000\nthird\n", output().replace("\r\n", "\n"));
+        assertEquals(1, clamped.dropped());
+        assertEquals(1, clamped.clamped());
+        assertEquals(2, clamped.renumbered());
+        assertEquals(2, clamped.written());
+
+        out.reset();
+        RepairReport dropped = repair(subtitles, new SrtFormat(), -4000,
+                RepairOptions.parse("drop", true, true, "lf"));
+        assertEquals("1\n00:00:03,000 --> 00:00:04,000\nthird\n", output());
+        assertEquals(2, dropped.dropped());
+        assertEquals(0, dropped.clamped());
+    }
+
+    @Test
+    void testOverlapsAreTrimmed() throws IOException {
+        String subtitles = "1\n00:00:01,000 --> 00:00:05,000\nfirst\n\n"
+                + "2\n00:00:04,000 --> 00:00:06,000\nsecond\n\n"
+                + "3\n00:00:03,000 --> 00:00:04,000\nearlier\n";
+        RepairReport report = repair(subtitles, new SrtFormat(), 0, RepairOptions.parse("clamp", true, true, "lf"));
+
+        assertTrue(output().startsWith("1\n00:00:01,000 --> 00:00:04,000\nfirst\n"));
+        assertEquals(1, report.overlaps());
+        assertEquals(1, report.outOfOrder());
+        assertTrue(report.issues().get(0).startsWith("line 2: cue 1 overlaps cue 2 by 1000 ms"));
+
+        out.reset();
+        repair(subtitles, new SrtFormat(), 0, RepairOptions.parse("clamp", true, false, "lf"));
+        assertTrue(output().startsWith("1\n00:00:01,000 --> 00:00:05,000\n"));
+    }
+
+    @Test
+    void testSequenceNumbersAreRewritten() throws IOException {
+        String subtitles = "\uFEFF7\n00:00:01,000 --> 00:00:02,000\nfirst\n\n"
+                + "00:00:03,000 --> 00:00:04,000\nno number\n\n"
+                + "9\n00:00:05,000 --> 00:00:06,000\nthird\n";
+
+        RepairReport report = repair(subtitles, new SrtFormat(), 0, RepairOptions.parse("clamp", true, true, "lf"));
+        assertEquals("\uFEFF1\n00:00:01,000 --> 00:00:02,000\nfirst\n\n"
+                + "2\n00:00:03,000 --> 00:00:04,000\nno number\n\n"
+                + "3\n00:00:05,000 --> 00:00:06,000\nthird\n", output());
+        assertEquals(3, report.renumbered());
+
+        out.reset();
+        repair(subtitles, new SrtFormat(), 0, RepairOptions.parse("clamp", false, true, "lf"));
+        assertEquals(subtitles, output());
+    }
+
+    @Test
+    void testMalformedTimeLinesAreReported() throws IOException {
+        String subtitles = "1\n00:00:01,000 --> 00:00:02,000\nfirst\n\n"
+                + "2\n00:00:03,00 --> 00:00:04,000\nbroken\n";
+        RepairReport report = repair(subtitles, new SrtFormat(), 0, RepairOptions.parse("clamp", true, true, "lf"));
+
+        assertEquals(subtitles, output());
+        assertEquals(1, report.malformed());
+        assertEquals(1, report.written());
+        assertEquals("line 6: malformed time line \"00:00:03,00 --> 00:00:04,000\" copied as text",
+                report.issues().get(0));
+    }
+
+    @Test
+    void testDroppedVttCueKeepsNextIdentifier() throws IOException {
+        String subtitles = "WEBVTT\n\nintro\n00:01.000 --> 00:02.000\nhello\n\n"
+                + "main\n00:05.000 --> 00:06.000 align:start\nworld\n";
+        RepairReport report = repair(subtitles, new VttFormat(), -3000, RepairOptions.parse("clamp", true, true, "lf"));
+
+        assertEquals("WEBVTT\n\nmain\n00:02.000 --> 00:03.000 align:start\nworld\n", output());
+        assertEquals(1, report.dropped());
+        assertEquals(0, report.renumbered());
+    }
+
+    @Test
+    void testDroppedAssEventKeepsOtherLines() throws IOException {
+        String subtitles = "[Events]\n"
+                + "Dialogue: 0,0:00:01.00,0:00:02.00,Default,,0,0,0,,early\n"
+                + "Comment: 0,0:00:05.00,0:00:06.00,Default,,0,0,0,,note\n"
+                + "\n[Fonts]\n";
+        RepairReport report = repair(subtitles, new AssFormat(), -3000, RepairOptions.parse("clamp", true, true, "lf"));
+
+        assertEquals("[Events]\nComment: 0,0:00:02.00,0:00:03.00,Default,,0,0,0,,note\n\n[Fonts]\n", output());
+        assertEquals(1, report.dropped());
+    }
+
+    @Test
+    void testReportJson() {
+        RepairReport report = new RepairReport(3, 2, 0, 1, 0, 0, 0, 1, List.of("line 2: \"x\""));
+
+        assertEquals("{\"cues\":3,\"written\":2,\"clamped\":0,\"dropped\":1,\"renumbered\":0,"
+                + "\"overlaps\":0,\"outOfOrder\":0,\"malformed\":1}", report.toJson(false));
+        assertTrue(report.toJson(true).endsWith(",\"issues\":[\"line 2: \\\"x\\\"\"]}"));
+        assertFalse(report.isClean());
+    }
+
+    @Test
+    void testInvalidOptions() {
+        assertThrows(IllegalArgumentException.class, () -> RepairOptions.parse("wrap", true, true, "lf"));
+        assertThrows(IllegalArgumentException.class, () -> RepairOptions.parse("clamp", true, true, "cr"));
+    }
+}
@@ -0,0 +1,90 @@
+package mkoutra.subtitleshift.engine;
+
+import mkoutra.subtitleshift.format.SrtFormat;
+import mkoutra.subtitleshift.model.TimeTransform;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubtitleEngineTest {
+
+    private static final String CUE = "1\n00:00:39,398 --> 00:00:40,940\nHello\n\n";
+
+    private final SubtitleEngine engine = SubtitleEngine.defaults();
+
+    @Test
+    void testWriteFailureStopsTheShift() throws IOException {
+        byte[] subtitles = CUE.repeat(100_000).getBytes(StandardCharsets.UTF_8);
+        InputStream input = new ByteArrayInputStream(subtitles);
+        OutputStream disconnected = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Connection reset");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+
+        IOException e = assertThrows(IOException.class, () -> engine.shift(input, disconnected,
+                StandardCharsets.UTF_8, new SrtFormat(), TimeTransform.offset(1000)));
+        assertEquals("Connection reset", e.getMessage());
+        assertTrue(input.available() > subtitles.length / 2);  // Stopped at the first failed write
+    }
+
+    @Test
+    void testCharPathKeepsLineEndings(@TempDir Path root) throws IOException {
+        String subtitles = "1\r\n00:00:01,000 --> 00:00:02,000\r\nΚαλημέρα\r\n\r\n"
+                + "2\n00:00:03,000 --> 00:00:04,000\nκόσμε\n\n"
+                + "3\r00:00:05,000 --> 00:00:06,000\rτέλος";
+        String expected = "1\r\n00:00:01,500 --> 00:00:02,500\r\nΚαλημέρα\r\n\r\n"
+                + "2\n00:00:03,500 --> 00:00:04,500\nκόσμε\n\n"
+                + "3\r00:00:05,500 --> 00:00:06,500\rτέλος";
+
+        // The stream path, as used for responses
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        engine.shift(new ByteArrayInputStream(subtitles.getBytes(StandardCharsets.UTF_8)), out,
+                StandardCharsets.UTF_8, new SrtFormat(), TimeTransform.offset(500));
+        assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+
+        // The char path of files, for encodings the byte path does not support
+        Path input = Files.write(root.resolve("movie.srt"), subtitles.getBytes(StandardCharsets.UTF_16LE));
+        Path output = root.resolve("shifted.srt");
+        SubtitleEngine.Result result = engine.shiftFile(input, output, StandardCharsets.UTF_16LE, new SrtFormat(),
+                TimeTransform.offset(500));
+        assertEquals(SubtitleEngine.PATH_CHAR, result.path());
+        assertEquals(expected, Files.readString(output, StandardCharsets.UTF_16LE));
+    }
+
+    @Test
+    void testLineEndingsSplitAcrossReads() throws IOException {
+        String subtitles = "1\r\n00:00:01,000 --> 00:00:02,000\r\nHello\r\n\r\n2\r00:00:03,000 --> 00:00:04,000\r";
+        Reader oneCharAtATime = new StringReader(subtitles) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 1));
+            }
+        };
+
+        StringWriter out = new StringWriter();
+        ShiftCounts counts = SubtitleEngine.shiftLines(oneCharAtATime, out, new SrtFormat(), TimeTransform.offset(0));
+        assertEquals(subtitles, out.toString());
+        assertEquals(6, counts.lines());
+        assertEquals(2, counts.cues());
+    }
+}
@@ -0,0 +1,40 @@
+package mkoutra.subtitleshift.format;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AssFormatTest {
+
+    private final AssFormat format = new AssFormat();
+
+    @Test
+    void testParse() {
+        long[] times = new long[2];
+        assertTrue(format.parseTimes("Dialogue: 0,0:00:01.50,1:02:03.04,Default,,0,0,0,,Hello, world", times));
+        assertEquals(1500, times[0]);
+        assertEquals(((60 + 2) * 60 + 3) * 1000 + 40, times[1]);
+
+        assertTrue(format.parseTimes("Comment: 0,0:00:01.50,0:00:02.00,Default,,0,0,0,,Note", times));
+        assertFalse(format.parseTimes("Format: Layer, Start, End, Style, Name, MarginL, MarginR, MarginV, Effect, Text", times));
+        assertFalse(format.parseTimes("Style: Default,Arial,20,&H00FFFFFF", times));
+    }
+
+    @Test
+    void testWriteTimeLineKeepsFields() {
+        String line = "Dialogue: 0,0:00:01.50,0:00:04.00,Default,,0,0,0,,Καλημέρα, κόσμε";
+        StringBuilder out = new StringBuilder();
+        format.writeTimeLine(line, new long[] {1500 + 1234, 4000 + 1234}, out);
+        assertEquals("Dialogue: 0,0:00:02.73,0:00:05.23,Default,,0,0,0,,Καλημέρα, κόσμε", out.toString());
+
+        out.setLength(0);
+        format.writeTimeLine(line, new long[] {-100, 11 * TimeFields.HOUR}, out);
+        assertEquals("Dialogue: 0,0:00:00.00,9:59:59.99,Default,,0,0,0,,Καλημέρα, κόσμε", out.toString());
+    }
+
+    @Test
+    void testMatches() {
+        assertTrue(format.matches("[Script Info]\nTitle: Test\n"));
+        assertFalse(format.matches("1\n00:00:01,000 --> 00:00:02,000\n"));
+    }
+}
@@ -0,0 +1,49 @@
+package mkoutra.subtitleshift.format;
+
+import mkoutra.subtitleshift.model.Timestamp;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SrtFormatTest {
+
+    private final SrtFormat format = new SrtFormat();
+
+    @Test
+    void testParse() {
+        long[] times = new long[2];
+        assertTrue(format.parseTimes("01:01:05,123 --> 01:01:07,000", times));
+        assertEquals(60 * 60 * 1000 + 65123, times[0]);
+        assertEquals(60 * 60 * 1000 + 67000, times[1]);
+    }
+
+    @Test
+    void testParseRejectsNonTimeLines() {
+        long[] times = {-1, -1};
+        assertFalse(format.parseTimes("", times));
+        assertFalse(format.parseTimes("12", times));
+        assertFalse(format.parseTimes("01:01:05,123 -> 01:01:07,000", times));
+        assertFalse(format.parseTimes("01:01:05.123 --> 01:01:07,000", times));
+        assertFalse(format.parseTimes("01:01:05,123 --> 01:01:07,00a", times));
+        assertFalse(format.parseTimes("01:01:05,123 --> 01:01:07,000 ", times));
+        assertArrayEquals(new long[] {-1, -1}, times);
+    }
+
+    @Test
+    void testFormat() {
+        char[] out = new char[SrtFormat.LENGTH];
+        SrtFormat.format(60 * 60 * 1000 + 65123, 39398, out);
+        assertEquals("01:01:05,123 --> 00:00:39,398", new String(out));
+
+        SrtFormat.format(-500, Timestamp.MAX_MILLISECONDS + 1, out);
+        assertEquals("00:00:00,000 --> 99:59:59,999", new String(out));
+    }
+
+    @Test
+    void testWriteTimeLine() {
+        StringBuilder out = new StringBuilder();
+        format.writeTimeLine("00:00:01,000 --> 00:00:02,000", new long[] {-500, 60 * 60 * 1000 + 65123}, out);
+        assertEquals("00:00:00,000 --> 01:01:05,123", out.toString());
+    }
+}
@@ -0,0 +1,38 @@
+package mkoutra.subtitleshift.format;
+
+import org.junit.jupiter.api.Test;
+
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubtitleFormatsTest {
+
+    private final SubtitleFormats formats = SubtitleFormats.defaults();
+
+    @Test
+    void testDetectFromContent() {
+        assertInstanceOf(VttFormat.class, formats.detect("WEBVTT\n\n00:01.000 --> 00:02.000\n", "movie.srt"));
+        assertInstanceOf(AssFormat.class, formats.detect("[Script Info]\nScriptType: v4.00+\n", "movie.txt"));
+        assertInstanceOf(SubViewerFormat.class, formats.detect("00:04:35.03,00:04:39.82\nHello\n", "movie.txt"));
+        assertInstanceOf(SrtFormat.class, formats.detect("1\r\n00:00:01,000 --> 00:00:02,000\r\n", "movie.vtt"));
+    }
+
+    @Test
+    void testDetectFallsBackToExtension() {
+        assertInstanceOf(AssFormat.class, formats.detect("", "movie.SSA"));
+        assertInstanceOf(SrtFormat.class, formats.detect("", "movie.txt"));
+        assertInstanceOf(SrtFormat.class, formats.detect("", null));
+    }
+
+    @Test
+    void testSubViewerRoundsToCentiseconds() {
+        SubViewerFormat format = new SubViewerFormat();
+        long[] times = new long[2];
+        assertTrue(format.parseTimes("00:04:35.03,00:04:39.82", times));
+        assertEquals(275030, times[0]);
+
+        StringBuilder out = new StringBuilder();
+        format.writeTimeLine("00:04:35.03,00:04:39.82", new long[] {times[0] + 1234, times[1] + 1234}, out);
+        assertEquals("00:04:36.26,00:04:41.05", out.toString());
+    }
+}
@@ -0,0 +1,45 @@
+package mkoutra.subtitleshift.format;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VttFormatTest {
+
+    private final VttFormat format = new VttFormat();
+
+    private String shift(String line, long shift) {
+        long[] times = new long[2];
+        assertTrue(format.parseTimes(line, times));
+        StringBuilder out = new StringBuilder();
+        format.writeTimeLine(line, new long[] {times[0] + shift, times[1] + shift}, out);
+        return out.toString();
+    }
+
+    @Test
+    void testParse() {
+        long[] times = new long[2];
+        assertTrue(format.parseTimes("01:02.345 --> 01:01:03.000 align:start", times));
+        assertEquals(62345, times[0]);
+        assertEquals(60 * 60 * 1000 + 63000, times[1]);
+
+        assertFalse(format.parseTimes("00:00:01,000 --> 00:00:02,000", times));
+        assertFalse(format.parseTimes("WEBVTT", times));
+        assertFalse(format.parseTimes("NOTE 01:02.345 --> 01:03.000", times));
+    }
+
+    @Test
+    void testShiftKeepsHoursAndSettings() {
+        assertEquals("01:03.345 --> 00:01:04.000 align:start position:10%",
+                shift("01:02.345 --> 00:01:03.000 align:start position:10%", 1000));
+        assertEquals("01:00:00.500 --> 01:00:01.000", shift("59:59.500 --> 01:00:00.000", 1000));
+        assertEquals("00:00.000 --> 00:00.500", shift("00:01.000 --> 00:02.000", -1500));
+    }
+
+    @Test
+    void testMatches() {
+        assertTrue(format.matches("WEBVTT\n\n00:01.000 --> 00:02.000\nHello\n"));
+        assertTrue(format.matches("\uFEFFWEBVTT - Title\n"));
+        assertFalse(format.matches("1\n00:00:01,000 --> 00:00:02,000\n"));
+    }
+}
@@ -0,0 +1,42 @@
+package mkoutra.subtitleshift.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CueIndexTest {
+
+    @Test
+    void testFind() {
+        CueIndex index = CueIndex.builder()
+                .add(1000, 2000)
+                .add(3000, 4000)
+                .add(3500, 5000)    // Overlaps the previous cue
+                .add(500, 900)      // Out of order
+                .build();
+
+        assertEquals(4, index.size());
+        assertEquals(3, index.find(500));
+        assertEquals(-1, index.find(950));
+        assertEquals(0, index.find(1999));
+        assertEquals(-1, index.find(2000));
+        assertEquals(1, index.find(3200));
+        assertEquals(2, index.find(3600));
+        assertEquals(2, index.find(4500));
+        assertEquals(-1, index.find(5000));
+    }
+
+    @Test
+    void testFindWithLongCue() {
+        CueIndex.Builder builder = CueIndex.builder().add(0, 1_000_000);
+        for (int i = 1; i <= 1000; i++) {
+            builder.add(i * 2000L, i * 2000L + 500);
+        }
+        CueIndex index = builder.build();
+
+        assertEquals(1001, index.size());
+        assertEquals(500, index.find(1_000_100));
+        assertEquals(0, index.find(999_100));
+        assertEquals(-1, index.find(1_000_000_000L));
+    }
+}
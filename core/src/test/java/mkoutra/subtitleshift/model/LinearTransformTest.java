@@ -0,0 +1,55 @@
+package mkoutra.subtitleshift.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinearTransformTest {
+
+    @Test
+    void testOffset() {
+        PointTransform transform = TimeTransform.offset(-1500);
+        assertEquals(500, transform.apply(2000));
+        assertEquals(0, transform.apply(1000));
+        assertEquals("-1500", transform.describe());
+        assertEquals("+1234", TimeTransform.offset(1234).describe());
+    }
+
+    @Test
+    void testFramerate() {
+        // One hour of a 25 fps release lasts 25/23.976 hours at 23.976 fps
+        LinearTransform transform = LinearTransform.framerate("25", "23.976", 0);
+        assertEquals(1001, transform.numerator());
+        assertEquals(960, transform.denominator());
+        assertEquals(3_753_750, transform.apply(3_600_000));
+        assertEquals(3_600_000, LinearTransform.framerate("23.976", "25", 0).apply(3_753_750));
+
+        assertEquals(2500, LinearTransform.framerate("25", "25.000", 500).apply(2000));
+        assertEquals("x1001_960+0", transform.describe());
+    }
+
+    @Test
+    void testFramerateRejectsInvalidValues() {
+        assertThrows(IllegalArgumentException.class, () -> LinearTransform.framerate("0", "25", 0));
+        assertThrows(IllegalArgumentException.class, () -> LinearTransform.framerate("abc", "25", 0));
+        assertThrows(IllegalArgumentException.class, () -> LinearTransform.framerate("-25", "25", 0));
+    }
+
+    @Test
+    void testAnchors() {
+        LinearTransform transform = LinearTransform.anchors(10_000, 12_000, 1_000_000, 1_052_000);
+        assertEquals(12_000, transform.apply(10_000));
+        assertEquals(1_052_000, transform.apply(1_000_000));
+        assertEquals(532_000, transform.apply(505_000), 1);
+
+        assertThrows(IllegalArgumentException.class, () -> LinearTransform.anchors(10_000, 12_000, 10_000, 13_000));
+        assertThrows(IllegalArgumentException.class, () -> LinearTransform.anchors(10_000, 12_000, 20_000, 11_000));
+    }
+
+    @Test
+    void testApplyClamps() {
+        LinearTransform transform = LinearTransform.framerate("50", "25", Long.MAX_VALUE);
+        assertEquals(Timestamp.MAX_MILLISECONDS, transform.apply(Timestamp.MAX_MILLISECONDS));
+        assertEquals(0, LinearTransform.anchors(10_000, 0, 20_000, 5_000).apply(1_000));
+    }
+}
@@ -0,0 +1,62 @@
+package mkoutra.subtitleshift.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffsetEstimatorTest {
+
+    /** Cue starts 1 to 6 seconds apart, as in a film. */
+    private static long[] reference(int cues) {
+        Random random = new Random(42);
+        long[] starts = new long[cues];
+        long start = 60_000;
+        for (int i = 0; i < cues; i++) {
+            start += 1000 + random.nextInt(5000);
+            starts[i] = start;
+        }
+        return starts;
+    }
+
+    @Test
+    void testEstimateOffset() {
+        long[] reference = reference(2000);
+        // Every tenth cue missing, as with a translation that merges lines
+        long[] source = LongStream.range(0, reference.length)
+                .filter(i -> i % 10 != 0)
+                .map(i -> reference[(int) i] - 4321)
+                .toArray();
+
+        OffsetEstimator.Estimate estimate = OffsetEstimator.estimate(source, reference, false, OffsetEstimator.DEFAULT_MAX_OFFSET);
+
+        assertEquals(new LinearTransform(1, 1, 4321), estimate.transform());
+        assertEquals(1800, estimate.matchedCues());
+    }
+
+    @Test
+    void testEstimateDrift() {
+        long[] reference = reference(2000);
+        // Timed for 25 fps, played at 24 fps, and 2 seconds early
+        long[] source = Arrays.stream(reference).map(t -> (t - 2000) * 24 / 25).toArray();
+
+        OffsetEstimator.Estimate estimate = OffsetEstimator.estimate(source, reference, true, OffsetEstimator.DEFAULT_MAX_OFFSET);
+
+        assertEquals(2000, estimate.matchedCues());
+        for (int i = 0; i < source.length; i++) {
+            assertTrue(Math.abs(reference[i] - estimate.transform().apply(source[i])) <= 2, "cue " + i);
+        }
+    }
+
+    @Test
+    void testUnrelatedSubtitles() {
+        long[] reference = {1000, 5000, 9000};
+        long[] source = {200_000, 300_000};
+
+        assertThrows(IllegalArgumentException.class,
+                () -> OffsetEstimator.estimate(source, reference, false, OffsetEstimator.DEFAULT_MAX_OFFSET));
+    }
+}
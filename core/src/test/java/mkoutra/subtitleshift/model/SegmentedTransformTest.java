@@ -0,0 +1,45 @@
+package mkoutra.subtitleshift.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedTransformTest {
+
+    private static long[] applyToCue(TimeTransform transform, long cue, long start, long end) {
+        long[] times = {start, end};
+        transform.applyToCue(cue, times);
+        return times;
+    }
+
+    @Test
+    void testByTime() {
+        SegmentedTransform transform = SegmentedTransform.byTime(new long[] {60_000, 10_000}, new long[] {-500, 2000});
+
+        assertArrayEquals(new long[] {5000, 6000}, applyToCue(transform, 0, 5000, 6000));
+        assertArrayEquals(new long[] {12_000, 13_000}, applyToCue(transform, 1, 10_000, 11_000));
+        // The start decides the segment, so a cue crossing 60s keeps the +2000 of its start
+        assertArrayEquals(new long[] {61_500, 63_000}, applyToCue(transform, 2, 59_500, 61_000));
+        assertArrayEquals(new long[] {59_500, 60_500}, applyToCue(transform, 3, 60_000, 61_000));
+        assertTrue(transform.isCueIndependent());
+        assertEquals("s10000+2000" + "60000-500", transform.describe());
+    }
+
+    @Test
+    void testByCue() {
+        SegmentedTransform transform = SegmentedTransform.byCue(new long[] {3}, new long[] {-1000});
+
+        assertArrayEquals(new long[] {5000, 6000}, applyToCue(transform, 1, 5000, 6000));
+        assertArrayEquals(new long[] {4000, 5000}, applyToCue(transform, 2, 5000, 6000));
+        assertArrayEquals(new long[] {0, 0}, applyToCue(transform, 3, 500, 900));
+        assertFalse(transform.isCueIndependent());
+        assertEquals("s#3-1000", transform.describe());
+    }
+
+    @Test
+    void testInvalidSegments() {
+        assertThrows(IllegalArgumentException.class, () -> SegmentedTransform.byCue(new long[] {0}, new long[] {1}));
+        assertThrows(IllegalArgumentException.class, () -> SegmentedTransform.byTime(new long[] {5, 5}, new long[] {1, 2}));
+        assertThrows(IllegalArgumentException.class, () -> SegmentedTransform.byTime(new long[] {5}, new long[] {}));
+    }
+}
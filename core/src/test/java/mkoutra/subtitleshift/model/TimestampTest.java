@@ -0,0 +1,59 @@
+package mkoutra.subtitleshift.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimestampTest {
+
+    @Test
+    void testParse() {
+        Timestamp timestamp = Timestamp.parse("01:01:05,123");
+        assertEquals(1, timestamp.getHh());
+        assertEquals(1, timestamp.getMm());
+        assertEquals(5, timestamp.getSs());
+        assertEquals(123, timestamp.getXxx());
+        assertEquals("01:01:05,123", timestamp.toString());
+    }
+
+    @Test
+    void testParseInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> Timestamp.parse("01:01:05.123"));
+        assertThrows(IllegalArgumentException.class, () -> Timestamp.parse("1:01:05,123"));
+        assertThrows(IllegalArgumentException.class, () -> Timestamp.parse("01:01:05,123 "));
+    }
+
+    @Test
+    void testMillisecondConstructor() {
+        Timestamp timestamp = new Timestamp(60 * 60 * 1000 + 65123);
+        assertEquals("01:01:05,123", timestamp.toString());
+        assertThrows(IllegalArgumentException.class, () -> new Timestamp(-1));
+    }
+
+    @Test
+    void testToMilliseconds() {
+        Timestamp timestamp = Timestamp.parse("01:01:05,123");
+        assertEquals(60 * 60 * 1000 + 65123, timestamp.toMilliseconds());
+
+        Timestamp timestamp2 = Timestamp.parse("00:00:00,000");
+        assertEquals(0, timestamp2.toMilliseconds());
+    }
+
+    @Test
+    void testShift() {
+        Timestamp timestamp = Timestamp.parse("01:01:05,123");
+        Timestamp shifted = timestamp.shift(500);
+        assertEquals("01:01:05,623", shifted.toString());
+        assertEquals("01:01:05,123", timestamp.toString());
+
+        assertEquals("01:01:07,623", shifted.shift(Timestamp.parseShift("2000")).toString());
+    }
+
+    @Test
+    void testShiftClamps() {
+        Timestamp timestamp = Timestamp.parse("00:00:01,000");
+        assertEquals("00:00:00,000", timestamp.shift(-1001).toString());
+        assertEquals("99:59:59,999", timestamp.shift(Long.MAX_VALUE).toString());
+        assertEquals("00:00:00,000", timestamp.shift(Long.MIN_VALUE).toString());
+    }
+}
@@ -0,0 +1,85 @@
+package mkoutra.subtitleshift.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mkoutra.subtitleshift.config.StorageProperties;
+import mkoutra.subtitleshift.engine.CharsetResolver;
+import mkoutra.subtitleshift.engine.SubtitleEngine;
+import mkoutra.subtitleshift.format.SubtitleFormats;
+import mkoutra.subtitleshift.model.Attachment;
+import mkoutra.subtitleshift.store.AsyncStoreWriter;
+import mkoutra.subtitleshift.store.MemorySubtitleStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the whole file-to-file {@link SubtitleShifter#applyShift} path
+ * (charset detection, byte or char path, output file) over generated corpora.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ApplyShiftBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int cues;
+
+    @Param({"UTF-8", "windows-1253", "UTF-16LE"})
+    public String encoding;
+
+    private Path dir;
+    private AsyncStoreWriter storeWriter;
+    private SubtitleShifter subtitleShifter;
+    private Attachment attachment;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("shift-benchmark");
+        StorageProperties storageProperties = new StorageProperties();
+        storageProperties.setUploadDir(dir.resolve("uploads").toString());
+        storageProperties.setShiftedDir(dir.resolve("shifted").toString());
+
+        ShiftMetrics metrics = new ShiftMetrics(new SimpleMeterRegistry());
+        SubtitleEngine subtitleEngine = new SubtitleEngine(
+                new CharsetResolver(storageProperties.getCharsetSampleSize(), storageProperties.getCharsetCacheSize()),
+                SubtitleFormats.defaults(), storageProperties.getParallelThreshold(), storageProperties.getParallelChunkSize());
+        storeWriter = new AsyncStoreWriter(new MemorySubtitleStore(0, false), dir.resolve("spool"), 1, 1, Duration.ZERO);
+        subtitleShifter = new SubtitleShifter(new StorageService(storageProperties, metrics, storeWriter), subtitleEngine, metrics);
+
+        Path file = SubtitleCorpus.generate(Files.createDirectories(dir.resolve("uploads")), cues, Charset.forName(encoding));
+        attachment = new Attachment("corpus.srt", UUID.randomUUID(), file.getFileName().toString(), ".srt", file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        storeWriter.close();
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public Attachment applyShift() throws IOException {
+        return subtitleShifter.applyShift(attachment, "1234");
+    }
+}
@@ -0,0 +1,65 @@
+package mkoutra.subtitleshift.service;
+
+import mkoutra.subtitleshift.config.StorageProperties;
+import mkoutra.subtitleshift.engine.CharsetResolver;
+import org.apache.tika.parser.txt.CharsetDetector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link CharsetResolver} (fast paths and cache) with a plain Tika detection of the same sample.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CharsetBenchmark {
+
+    @Param({"UTF-8", "windows-1253", "UTF-16LE"})
+    public String encoding;
+
+    private CharsetResolver charsetResolver;
+    private byte[] sample;
+
+    @Setup
+    public void setup() throws IOException {
+        StorageProperties storageProperties = new StorageProperties();
+        charsetResolver = new CharsetResolver(storageProperties.getCharsetSampleSize(), storageProperties.getCharsetCacheSize());
+
+        Path dir = Files.createTempDirectory("charset-benchmark");
+        Path file = SubtitleCorpus.generate(dir, 1000, Charset.forName(encoding));
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            sample = inputStream.readNBytes(storageProperties.getCharsetSampleSize());
+        }
+    }
+
+    @Benchmark
+    public Charset resolver() {
+        return charsetResolver.detect(sample, false);
+    }
+
+    @Benchmark
+    public String tika() {
+        CharsetDetector charsetDetector = new CharsetDetector();
+        charsetDetector.setText(sample);
+        return charsetDetector.detect().getNormalizedName();
+    }
+}
@@ -0,0 +1,45 @@
+package mkoutra.subtitleshift.service;
+
+import mkoutra.subtitleshift.format.SrtFormat;
+import mkoutra.subtitleshift.model.Timestamp;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generates SRT files of a given number of cues for the benchmarks.
+ */
+final class SubtitleCorpus {
+
+    private static final String[] TEXTS = {
+            "Where have you been all this time?",
+            "Πού ήσουν τόσο καιρό;",
+            "I was looking for you.\nEverywhere.",
+            "Σε έψαχνα παντού."
+    };
+
+    private SubtitleCorpus() {
+    }
+
+    static Path generate(Path dir, int cues, Charset charset) throws IOException {
+        Path file = dir.resolve(cues + "_" + charset.name() + ".srt");
+        char[] timeLine = new char[SrtFormat.LENGTH];
+        try (BufferedWriter writer = Files.newBufferedWriter(file, charset)) {
+            long start = 1000;
+            for (int i = 1; i <= cues; i++) {
+                SrtFormat.format(start, start + 250, timeLine);
+                writer.write(Integer.toString(i));
+                writer.write("\r\n");
+                writer.write(timeLine);
+                writer.write("\r\n");
+                writer.write(TEXTS[i % TEXTS.length].replace("\n", "\r\n"));
+                writer.write("\r\n\r\n");
+                start = Math.min(start + 300, Timestamp.MAX_MILLISECONDS - 300);  // 1M cues fit in 99:59:59
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,68 @@
+package mkoutra.subtitleshift.service;
+
+import mkoutra.subtitleshift.format.SrtFormat;
+import mkoutra.subtitleshift.model.Timestamp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmarks of the per-line hot path: timestamp parsing/formatting,
+ * time line detection and shifting a whole time line.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimeLineBenchmark {
+
+    private final String timestamp = "01:01:05,123";
+    private final String timeLine = "00:00:39,398 --> 00:00:43,798";
+    private final String textLine = "Where have you been all this time?";
+
+    private final SrtFormat format = new SrtFormat();
+    private final long[] times = new long[2];
+    private final char[] timestampOut = new char[Timestamp.LENGTH];
+    private final StringBuilder timeLineOut = new StringBuilder(SrtFormat.LENGTH);
+
+    @Benchmark
+    public long parseTimestamp() {
+        return Timestamp.parse(timestamp, 0);
+    }
+
+    @Benchmark
+    public char[] formatTimestamp() {
+        Timestamp.format(3_665_123, timestampOut, 0);
+        return timestampOut;
+    }
+
+    @Benchmark
+    public boolean detectTimeLine() {
+        return format.parseTimes(timeLine, times);
+    }
+
+    @Benchmark
+    public boolean detectTextLine() {
+        return format.parseTimes(textLine, times);
+    }
+
+    @Benchmark
+    public StringBuilder shiftTimeLine() {
+        format.parseTimes(timeLine, times);
+        times[0] = Timestamp.shift(times[0], 1234);
+        times[1] = Timestamp.shift(times[1], 1234);
+        timeLineOut.setLength(0);
+        format.writeTimeLine(timeLine, times, timeLineOut);
+        return timeLineOut;
+    }
+}
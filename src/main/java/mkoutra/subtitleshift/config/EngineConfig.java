@@ -0,0 +1,32 @@
+package mkoutra.subtitleshift.config;
+
+import mkoutra.subtitleshift.engine.CharsetResolver;
+import mkoutra.subtitleshift.engine.SubtitleEngine;
+import mkoutra.subtitleshift.format.SubtitleFormats;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Exposes the Spring-free parsing and shifting code of the core module as beans,
+ * configured from the "storage" properties.
+ */
+@Configuration
+public class EngineConfig {
+
+    @Bean
+    public CharsetResolver charsetResolver(StorageProperties storageProperties) {
+        return new CharsetResolver(storageProperties.getCharsetSampleSize(), storageProperties.getCharsetCacheSize());
+    }
+
+    @Bean
+    public SubtitleFormats subtitleFormats() {
+        return SubtitleFormats.defaults();
+    }
+
+    @Bean
+    public SubtitleEngine subtitleEngine(CharsetResolver charsetResolver, SubtitleFormats subtitleFormats,
+                                         StorageProperties storageProperties) {
+        return new SubtitleEngine(charsetResolver, subtitleFormats,
+                storageProperties.getParallelThreshold(), storageProperties.getParallelChunkSize());
+    }
+}
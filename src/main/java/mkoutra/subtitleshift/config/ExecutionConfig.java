@@ -0,0 +1,102 @@
+package mkoutra.subtitleshift.config;
+
+import mkoutra.subtitleshift.controller.AdmissionFilter;
+import mkoutra.subtitleshift.service.AdmissionControl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ExecutionConfig {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExecutionConfig.class);
+
+    /**
+     * Creates an ExecutionProperties bean and binds properties
+     * with the "execution" prefix from application.properties.
+     *
+     * @return A configured ExecutionProperties instance.
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "execution")
+    public ExecutionProperties executionProperties() {
+        return new ExecutionProperties();
+    }
+
+    /**
+     * The executor running the shift work of the controllers and the streamed response bodies.
+     * <p>
+     * Named after Spring Boot's default task executor, which it replaces, so that Spring MVC
+     * also uses it for async requests. With spring.threads.virtual.enabled=true on Java 21+,
+     * every task gets its own virtual thread and concurrencyLimit caps how many run at once.
+     * Otherwise, a pool of concurrencyLimit platform threads with a bounded queue is used.
+     */
+    @Bean(name = "applicationTaskExecutor")
+    public AsyncTaskExecutor applicationTaskExecutor(ExecutionProperties executionProperties,
+                                                     @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (virtualThreads && Runtime.version().feature() >= 21) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("shift-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(executionProperties.getConcurrencyLimit());
+            return executor;
+        }
+        if (virtualThreads) {
+            LOGGER.warn("Virtual threads require Java 21+, falling back to platform threads.");
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("shift-");
+        executor.setCorePoolSize(executionProperties.getConcurrencyLimit());
+        executor.setMaxPoolSize(executionProperties.getConcurrencyLimit());
+        executor.setQueueCapacity(executionProperties.getQueueCapacity());
+        return executor;
+    }
+
+    /**
+     * The executor shifting the files of batch requests, built like {@link #applicationTaskExecutor}
+     * with execution.batchThreads as its limit: a virtual thread per file when virtual threads are enabled,
+     * otherwise a pool of batchThreads platform threads. It is separate because the response body streaming
+     * a batch runs on the application task executor and waits for these tasks.
+     */
+    @Bean(name = "batchTaskExecutor")
+    public AsyncTaskExecutor batchTaskExecutor(ExecutionProperties executionProperties,
+                                               @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (virtualThreads && Runtime.version().feature() >= 21) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("batch-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(executionProperties.getBatchThreads());
+            return executor;
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("batch-");
+        executor.setCorePoolSize(executionProperties.getBatchThreads());
+        executor.setMaxPoolSize(executionProperties.getBatchThreads());
+        return executor;
+    }
+
+    /**
+     * Registers the {@link AdmissionFilter} for the upload endpoints of execution.admission.urlPatterns.
+     * It runs right after the character encoding filter, before anything reads the request body.
+     */
+    @Bean
+    public FilterRegistrationBean<AdmissionFilter> admissionFilter(AdmissionControl admissionControl,
+                                                                   ExecutionProperties executionProperties) {
+        ExecutionProperties.Admission admission = executionProperties.getAdmission();
+        FilterRegistrationBean<AdmissionFilter> registration =
+                new FilterRegistrationBean<>(new AdmissionFilter(admissionControl, admission.getRetryAfter()));
+        registration.setUrlPatterns(admission.getUrlPatterns());
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        registration.setAsyncSupported(true);
+        registration.setEnabled(admission.isEnabled());
+        return registration;
+    }
+}
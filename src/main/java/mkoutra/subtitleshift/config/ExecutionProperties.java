@@ -0,0 +1,77 @@
+package mkoutra.subtitleshift.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+import java.util.List;
+
+@Getter
+@Setter
+public class ExecutionProperties {
+
+    /** Number of files of a batch request that are shifted concurrently. */
+    private int batchThreads = Runtime.getRuntime().availableProcessors();
+
+    /** Maximum number of shift tasks (requests and response streams) running at once. */
+    private int concurrencyLimit = 64;
+
+    /** Number of shift tasks waiting for a free slot. Only used with platform threads. */
+    private int queueCapacity = 256;
+
+    private Admission admission = new Admission();
+
+    private Jobs jobs = new Jobs();
+
+    /**
+     * Settings of the admission control in front of the upload endpoints, bound from "execution.admission.*".
+     * Requests over the limits are rejected before their body is read.
+     */
+    @Getter
+    @Setter
+    public static class Admission {
+        private boolean enabled = true;
+
+        /** Maximum number of requests being handled at once, from the upload to the end of the response. */
+        private int maxConcurrent = 64;
+
+        /** Maximum number of requests waiting for a free slot. Further requests get 503. */
+        private int maxQueued = 128;
+
+        /** How long a request waits for a free slot before it gets 503. */
+        private Duration queueTimeout = Duration.ofSeconds(10);
+
+        /** Maximum number of requests of one client (remote address) handled or waiting at once. Further requests get 429. 0 for no limit. */
+        private int maxPerClient = 8;
+
+        /** The Retry-After of 429 and 503 responses. */
+        private Duration retryAfter = Duration.ofSeconds(5);
+
+        /** The endpoints under admission control. */
+        private List<String> urlPatterns = List.of("/uploadAndShift", "/uploadAndTransform", "/uploadAndShiftSegments",
+                "/uploadAndAlign", "/uploadAndRepair", "/validate", "/batchShift", "/cues/*", "/uploads/*", "/jobs");
+    }
+
+    /**
+     * Settings of the shift jobs submitted through /jobs, bound from "execution.jobs.*".
+     * Finished jobs are forgotten after storage.retention.maxAge, along with their files.
+     */
+    @Getter
+    @Setter
+    public static class Jobs {
+        /** Number of jobs shifted at once, apart from the threads handling requests. */
+        private int threads = 2;
+
+        /** Maximum number of jobs waiting for a worker. Further submissions get 503. */
+        private int maxQueued = 1000;
+
+        /** How long a callback may take before it is given up. */
+        private Duration callbackTimeout = Duration.ofSeconds(10);
+
+        /**
+         * The only hosts callbacks may be posted to. If empty, any host resolving to public addresses only
+         * (no loopback, link-local or private network address) is accepted.
+         */
+        private List<String> callbackHosts = List.of();
+    }
+}
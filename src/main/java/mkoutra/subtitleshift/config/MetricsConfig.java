@@ -0,0 +1,30 @@
+package mkoutra.subtitleshift.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import mkoutra.subtitleshift.service.RetentionService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Exposes the totals reclaimed by the retention sweeps and by deleteAfterResponse.
+     *
+     * @param retentionService The service deleting stored files.
+     * @return A binder registering the reclaimed bytes and files counters.
+     */
+    @Bean
+    public MeterBinder retentionMetrics(RetentionService retentionService) {
+        return registry -> {
+            FunctionCounter.builder("subtitle.retention.reclaimed", retentionService, RetentionService::getReclaimedBytes)
+                    .description("Bytes deleted by the retention policy")
+                    .baseUnit("bytes")
+                    .register(registry);
+            FunctionCounter.builder("subtitle.retention.reclaimed.files", retentionService, RetentionService::getReclaimedFiles)
+                    .description("Files deleted by the retention policy")
+                    .register(registry);
+        };
+    }
+}
@@ -1,10 +1,23 @@
 package mkoutra.subtitleshift.config;
 
+import mkoutra.subtitleshift.service.StorageService;
+import mkoutra.subtitleshift.store.AsyncStoreWriter;
+import mkoutra.subtitleshift.store.LocalSubtitleStore;
+import mkoutra.subtitleshift.store.MemorySubtitleStore;
+import mkoutra.subtitleshift.store.S3SubtitleStore;
+import mkoutra.subtitleshift.store.SubtitleStore;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.Locale;
 
 @Configuration
+@EnableScheduling   // Runs the retention sweep of RetentionService
 public class StorageConfig {
 
     /**
@@ -18,4 +31,31 @@ public class StorageConfig {
     public StorageProperties storageProperties() {
         return new StorageProperties();
     }
+
+    /**
+     * The store keeping the durable copy of persisted uploads, chosen by storage.store.type.
+     */
+    @Bean
+    public SubtitleStore subtitleStore(StorageProperties storageProperties) throws IOException {
+        StorageProperties.Store store = storageProperties.getStore();
+        return switch (store.getType().toLowerCase(Locale.ROOT)) {
+            case "local" -> new LocalSubtitleStore(Paths.get(store.getDir()));
+            case "memory" -> new MemorySubtitleStore(store.getMemoryMaxBytes(), store.isMemoryOffHeap());
+            case "s3" -> new S3SubtitleStore(URI.create(store.getS3Endpoint()), store.getS3Region(),
+                    store.getS3Bucket(), store.getS3AccessKey(), store.getS3SecretKey());
+            default -> throw new IllegalArgumentException("Unknown storage.store.type: " + store.getType());
+        };
+    }
+
+    /**
+     * Writes to the store in the background. Its spool lives in uploadDir, so that uploads are
+     * linked into it instead of copied; files still spooled at shutdown are written after the restart.
+     */
+    @Bean
+    public AsyncStoreWriter storeWriter(SubtitleStore subtitleStore, StorageProperties storageProperties) throws IOException {
+        StorageProperties.Store store = storageProperties.getStore();
+        return new AsyncStoreWriter(subtitleStore,
+                Paths.get(storageProperties.getUploadDir(), StorageService.SPOOL_DIR),
+                store.getQueueCapacity(), store.getBatchSize(), store.getBatchDelay());
+    }
 }
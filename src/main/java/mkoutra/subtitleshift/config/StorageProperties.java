@@ -3,10 +3,111 @@ package mkoutra.subtitleshift.config;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.time.Duration;
+import java.util.List;
+
 @Getter
 @Setter
 public class StorageProperties {
     private String uploadDir;
     private String shiftedDir;
-    private String validExtension;
+
+    /** Accepted file extensions, including the dot, e.g. ".srt". */
+    private List<String> validExtensions = List.of(".srt", ".vtt", ".ass", ".ssa", ".sub");
+
+    /**
+     * When true, the original and the shifted file are written to uploadDir and shiftedDir.
+     * Otherwise, the upload is shifted and streamed straight back to the client.
+     */
+    private boolean persist;
+
+    /** Number of leading bytes sampled to detect the charset of a file. */
+    private int charsetSampleSize = 8192;
+
+    /** Maximum number of cached charset detection results. */
+    private int charsetCacheSize = 1024;
+
+    /**
+     * Number of two-character subdirectory levels files are spread over, e.g. uploads/3f/file
+     * with one level. 0 stores every file directly in uploadDir/shiftedDir.
+     */
+    private int shardLevels;
+
+    /**
+     * Files of at least this many bytes are shifted in parallel chunks of parallelChunkSize bytes.
+     * Only applies to files in ASCII-compatible encodings, which are shifted at byte level.
+     */
+    private long parallelThreshold = 8L * 1024 * 1024;
+
+    private int parallelChunkSize = 1024 * 1024;
+
+    /** Largest file accepted through the chunked upload protocol (/uploads), in bytes. */
+    private long maxUploadSize = 1024L * 1024 * 1024;
+
+    /** How often the disk usage gauges of uploadDir and shiftedDir are recomputed. */
+    private Duration diskUsageInterval = Duration.ofMinutes(1);
+
+    private Cache cache = new Cache();
+
+    private Retention retention = new Retention();
+
+    private Store store = new Store();
+
+    /**
+     * Settings of the shifted result cache, bound from "storage.cache.*".
+     */
+    @Getter
+    @Setter
+    public static class Cache {
+        private boolean enabled = true;
+        private Duration ttl = Duration.ofHours(1);
+        private long maxEntryBytes = 1024 * 1024;
+        private long memoryMaxBytes = 64L * 1024 * 1024;
+        private long diskMaxBytes = 1024L * 1024 * 1024;
+    }
+
+    /**
+     * Settings of the cleanup of uploadDir and shiftedDir, bound from "storage.retention.*".
+     * The result cache under shiftedDir/cache is evicted separately.
+     */
+    @Getter
+    @Setter
+    public static class Retention {
+        private boolean enabled = true;
+        private Duration interval = Duration.ofMinutes(10);
+        private Duration maxAge = Duration.ofHours(24);
+        private long maxTotalBytes = 1024L * 1024 * 1024;
+
+        /** Delete the stored upload and the shifted file as soon as the response has been streamed. */
+        private boolean deleteAfterResponse;
+    }
+
+    /**
+     * Settings of the store that keeps the durable copy of persisted uploads, bound from "storage.store.*".
+     * uploadDir stays the working copy; the store is written in the background, in batches.
+     */
+    @Getter
+    @Setter
+    public static class Store {
+        /** One of "local", "memory" or "s3". */
+        private String type = "local";
+
+        /** Root directory of the local store. */
+        private String dir = "store";
+
+        private long memoryMaxBytes = 64L * 1024 * 1024;
+
+        /** Keep the memory store in direct buffers, outside the Java heap. */
+        private boolean memoryOffHeap = true;
+
+        private String s3Endpoint;
+        private String s3Region = "us-east-1";
+        private String s3Bucket;
+        private String s3AccessKey;
+        private String s3SecretKey;
+
+        private int queueCapacity = 1024;
+        private int batchSize = 32;
+        private Duration batchDelay = Duration.ofMillis(50);
+    }
 }
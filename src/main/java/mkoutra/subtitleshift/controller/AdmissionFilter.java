@@ -0,0 +1,105 @@
+package mkoutra.subtitleshift.controller;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import mkoutra.subtitleshift.exceptions.AdmissionRejectedException;
+import mkoutra.subtitleshift.service.AdmissionControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Puts the upload endpoints under {@link AdmissionControl}. Runs before the multipart body is parsed,
+ * so a rejected request costs no disk or heap: it gets 429 (client at its limit) or 503 (service
+ * overloaded) with a Retry-After header.
+ * <p>
+ * The slot of an admitted request is held until its response is complete, including the work done
+ * on the task executor and the streamed body, not only while the servlet thread is busy.
+ * Clients are told apart by their remote address; behind a proxy, set server.forward-headers-strategy.
+ */
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    private final AdmissionControl admissionControl;
+    private final Duration retryAfter;
+
+    public AdmissionFilter(AdmissionControl admissionControl, Duration retryAfter) {
+        this.admissionControl = admissionControl;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Only uploads do work worth limiting. HEAD /uploads/{id}, for one, is always answered.
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod()) && !"PATCH".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        AdmissionControl.Permit permit;
+        try {
+            permit = admissionControl.acquire(request.getRemoteAddr());
+        } catch (AdmissionRejectedException e) {
+            reject(response, e.isClientLimit() ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting");
+            return;
+        }
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseListener(permit));
+            } else {
+                permit.close();
+            }
+        }
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfter.toSeconds())));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write(message);
+    }
+
+    /**
+     * Releases the slot when the async request completes. Spring MVC starts async processing again
+     * to stream a {@code StreamingResponseBody}, so the listener registers itself on every new start.
+     */
+    private record ReleaseListener(AdmissionControl.Permit permit) implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
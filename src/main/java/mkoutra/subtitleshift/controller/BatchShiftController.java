@@ -0,0 +1,59 @@
+package mkoutra.subtitleshift.controller;
+
+import lombok.RequiredArgsConstructor;
+import mkoutra.subtitleshift.service.BatchShifter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Collections;
+import java.util.List;
+
+@Controller
+@RequiredArgsConstructor
+public class BatchShiftController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchShiftController.class);
+
+    private final BatchShifter batchShifter;
+
+    /**
+     * Shifts many subtitle files and returns them as a ZIP with a manifest of the outcomes.
+     * Each file uses its own entry of "timeshifts" when given, otherwise the shared "timeshift".
+     */
+    @PostMapping(value = "/batchShift", produces = "application/zip")
+    public ResponseEntity<StreamingResponseBody> batchShift(@RequestParam("subtitleFiles") List<MultipartFile> files,
+                                                            @RequestParam(value = "timeshift", required = false) String timeshift,
+                                                            @RequestParam(value = "timeshifts", required = false) List<String> timeshifts) {
+
+        if (files.isEmpty()) {
+            LOGGER.error("Batch request without files received.");
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<String> shifts;
+        if (timeshifts != null && !timeshifts.isEmpty()) {
+            if (timeshifts.size() != files.size()) {
+                LOGGER.error("Batch request with {} files but {} timeshifts received.", files.size(), timeshifts.size());
+                return ResponseEntity.badRequest().build();
+            }
+            shifts = timeshifts;
+        } else if (timeshift != null) {
+            shifts = Collections.nCopies(files.size(), timeshift);
+        } else {
+            LOGGER.error("Batch request without timeshift received.");
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity
+                .ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=shifted.zip")
+                .body(outputStream -> batchShifter.shiftAll(files, shifts, outputStream));
+    }
+}
@@ -0,0 +1,141 @@
+package mkoutra.subtitleshift.controller;
+
+import lombok.RequiredArgsConstructor;
+import mkoutra.subtitleshift.exceptions.StorageException;
+import mkoutra.subtitleshift.model.Attachment;
+import mkoutra.subtitleshift.model.ChunkedUpload;
+import mkoutra.subtitleshift.service.ChunkedUploadService;
+import mkoutra.subtitleshift.service.RetentionService;
+import mkoutra.subtitleshift.service.SubtitleShifter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Resumable uploads for files above the multipart limit:
+ * <ol>
+ *     <li>POST /uploads?filename=&amp;length=&amp;timeshift.msg= creates an upload at the returned Location.</li>
+ *     <li>PATCH /uploads/{id} with an Upload-Offset header and the raw bytes of a chunk appends it.</li>
+ *     <li>HEAD /uploads/{id} returns the Upload-Offset to resume from after an interruption.</li>
+ * </ol>
+ * Chunks may be sent gzip-compressed with "Content-Encoding: gzip". The response to the last chunk is the shifted file.
+ */
+@Controller
+@RequiredArgsConstructor
+public class ChunkedUploadController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedUploadController.class);
+
+    static final String UPLOAD_OFFSET = "Upload-Offset";
+    static final String UPLOAD_LENGTH = "Upload-Length";
+
+    private final ChunkedUploadService uploadService;
+    private final SubtitleShifter subtitleShifter;
+    private final RetentionService retentionService;
+
+    @PostMapping("/uploads")
+    public ResponseEntity<Void> start(@RequestParam("filename") String filename,
+                                      @RequestParam("length") long length,
+                                      @RequestParam(value = "timeshift.msg", defaultValue = "0") String timeshift)
+            throws IOException {
+        try {
+            ChunkedUpload upload = uploadService.start(filename, length, timeshift);
+            return ResponseEntity
+                    .created(URI.create("/uploads/" + upload.id()))
+                    .header(UPLOAD_OFFSET, "0")
+                    .header(UPLOAD_LENGTH, String.valueOf(length))
+                    .build();
+        } catch (StorageException | IllegalArgumentException e) {
+            LOGGER.error("Invalid upload of {} ({} bytes): {}", filename, length, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @RequestMapping(value = "/uploads/{id}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> offset(@PathVariable("id") UUID id) throws IOException {
+        Optional<ChunkedUpload> upload = uploadService.find(id);
+        if (upload.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity
+                .ok()
+                .header(UPLOAD_OFFSET, String.valueOf(uploadService.offset(upload.get())))
+                .header(UPLOAD_LENGTH, String.valueOf(upload.get().length()))
+                .build();
+    }
+
+    /**
+     * Appends a chunk. Until the upload is complete the response is 204 with the new Upload-Offset;
+     * the last chunk is answered with the shifted file, which is shifted as soon as that chunk is written.
+     */
+    @PatchMapping(value = "/uploads/{id}", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> append(@PathVariable("id") UUID id,
+                                                        @RequestHeader(UPLOAD_OFFSET) long offset,
+                                                        @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+                                                        InputStream body) throws IOException {
+        Optional<ChunkedUpload> found = uploadService.find(id);
+        if (found.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        ChunkedUpload upload = found.get();
+
+        long received;
+        try {
+            // Offsets count the decompressed bytes, so a resumed upload may switch encoding
+            InputStream chunk = "gzip".equalsIgnoreCase(contentEncoding) ? new GZIPInputStream(body) : body;
+            received = uploadService.append(upload, offset, chunk);
+        } catch (IllegalStateException e) {
+            LOGGER.warn(e.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.CONFLICT)
+                    .header(UPLOAD_OFFSET, String.valueOf(uploadService.offset(upload)))
+                    .build();
+        } catch (IllegalArgumentException | ZipException e) {
+            LOGGER.error(e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (received < upload.length()) {
+            return ResponseEntity
+                    .noContent()
+                    .header(UPLOAD_OFFSET, String.valueOf(received))
+                    .build();
+        }
+
+        Attachment stored = uploadService.complete(upload);
+        return ResponseEntity
+                .ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + upload.filename())
+                .header(UPLOAD_OFFSET, String.valueOf(received))
+                .body(outputStream -> {
+                    Path shiftedPath = subtitleShifter.applyShift(stored, upload.timeshift()).getFilepath();
+                    try {
+                        Files.copy(shiftedPath, outputStream);
+                    } finally {
+                        retentionService.afterResponse(stored.getFilepath(), shiftedPath);
+                    }
+                });
+    }
+}
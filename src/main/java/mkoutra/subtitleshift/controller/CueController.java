@@ -0,0 +1,105 @@
+package mkoutra.subtitleshift.controller;
+
+import lombok.RequiredArgsConstructor;
+import mkoutra.subtitleshift.engine.RepairOptions;
+import mkoutra.subtitleshift.engine.RepairReport;
+import mkoutra.subtitleshift.exceptions.StorageException;
+import mkoutra.subtitleshift.model.CueIndex;
+import mkoutra.subtitleshift.model.CueLookup;
+import mkoutra.subtitleshift.model.CuePreview;
+import mkoutra.subtitleshift.model.TimeTransform;
+import mkoutra.subtitleshift.model.Timestamp;
+import mkoutra.subtitleshift.service.CompressedUploads;
+import mkoutra.subtitleshift.service.SubtitleShifter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+@Controller
+@RequiredArgsConstructor
+public class CueController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CueController.class);
+
+    static final int MAX_PREVIEW_CUES = 500;
+
+    private final SubtitleShifter subtitleShifter;
+    private final CompressedUploads compressedUploads;
+
+    /**
+     * Returns the cue of the uploaded file shown at the given time ("hh:mm:ss,mmm" or milliseconds),
+     * or 404 if no cue is shown then.
+     */
+    @PostMapping(value = "/cues/at", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CueLookup> cueAt(@RequestParam("subtitleFile") MultipartFile file,
+                                           @RequestParam("time") String time) throws StorageException, IOException {
+        long milliseconds;
+        try {
+            milliseconds = time.matches("^\\d+$") ? Long.parseLong(time) : Timestamp.parse(time).toMilliseconds();
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid time received: {}", time);
+            return ResponseEntity.badRequest().build();
+        }
+
+        MultipartFile subtitleFile = compressedUploads.unwrap(file);
+        subtitleShifter.validate(subtitleFile);
+        CueIndex index = subtitleShifter.buildIndex(subtitleFile);
+        int cue = index.find(milliseconds);
+        return cue < 0 ? ResponseEntity.notFound().build() : ResponseEntity.ok(CueLookup.of(index, cue));
+    }
+
+    /**
+     * Returns a page of cues of the uploaded file with their times before and after the shift,
+     * to check the sync without downloading the whole file. Only the file up to the page is read.
+     */
+    @PostMapping(value = "/cues/preview", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CuePreview> preview(@RequestParam("subtitleFile") MultipartFile file,
+                                              @RequestParam(value = "timeshift.msg", defaultValue = "0") String timeshift,
+                                              @RequestParam(value = "offset", defaultValue = "0") long offset,
+                                              @RequestParam(value = "limit", defaultValue = "50") int limit)
+            throws StorageException, IOException {
+        if (!timeshift.matches("^-?\\d+$") || offset < 0 || limit < 1 || limit > MAX_PREVIEW_CUES) {
+            LOGGER.error("Invalid preview request: timeshift {}, {} cues from {}", timeshift, limit, offset);
+            return ResponseEntity.badRequest().build();
+        }
+
+        MultipartFile subtitleFile = compressedUploads.unwrap(file);
+        subtitleShifter.validate(subtitleFile);
+        TimeTransform transform = TimeTransform.offset(Timestamp.parseShift(timeshift));
+        return ResponseEntity.ok(CuePreview.of(subtitleShifter.readCues(subtitleFile, transform, offset, limit), limit));
+    }
+
+    /**
+     * Runs the repair stage of POST /uploadAndRepair without writing the file and returns its full report,
+     * including the list of issues with their line numbers.
+     */
+    @PostMapping(value = "/validate", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<RepairReport> validate(@RequestParam("subtitleFile") MultipartFile file,
+                                                 @RequestParam(value = "timeshift.msg", defaultValue = "0") String timeshift,
+                                                 @RequestParam(value = "negativeCues", defaultValue = "clamp") String negativeCues,
+                                                 @RequestParam(value = "renumber", defaultValue = "true") boolean renumber,
+                                                 @RequestParam(value = "fixOverlaps", defaultValue = "true") boolean fixOverlaps)
+            throws StorageException, IOException {
+        TimeTransform transform;
+        RepairOptions options;
+        try {
+            transform = TimeTransform.offset(Timestamp.parseShift(timeshift));
+            options = RepairOptions.parse(negativeCues, renumber, fixOverlaps, "lf");
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid validation request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        MultipartFile subtitleFile = compressedUploads.unwrap(file);
+        subtitleShifter.validate(subtitleFile);
+        return ResponseEntity.ok(subtitleShifter.repairToStream(subtitleFile, transform, options, OutputStream.nullOutputStream()));
+    }
+}
@@ -1,24 +1,47 @@
 package mkoutra.subtitleshift.controller;
 
 import lombok.RequiredArgsConstructor;
+import mkoutra.subtitleshift.config.StorageProperties;
+import mkoutra.subtitleshift.engine.RepairOptions;
+import mkoutra.subtitleshift.engine.RepairReport;
 import mkoutra.subtitleshift.exceptions.StorageException;
 import mkoutra.subtitleshift.model.Attachment;
+import mkoutra.subtitleshift.model.LinearTransform;
+import mkoutra.subtitleshift.model.OffsetEstimator;
+import mkoutra.subtitleshift.model.SegmentedTransform;
+import mkoutra.subtitleshift.model.TimeTransform;
+import mkoutra.subtitleshift.model.Timestamp;
+import mkoutra.subtitleshift.service.CompressedUploads;
+import mkoutra.subtitleshift.service.RetentionService;
+import mkoutra.subtitleshift.service.ShiftMetrics;
+import mkoutra.subtitleshift.service.ShiftResultCache;
+import mkoutra.subtitleshift.service.StorageService;
 import mkoutra.subtitleshift.service.SubtitleShifter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 @Controller
 @RequiredArgsConstructor
@@ -26,36 +49,311 @@ public class FileUploadController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FileUploadController.class);
 
+    static final String ESTIMATED_TRANSFORM_HEADER = "X-Estimated-Transform";
+    static final String MATCHED_CUES_HEADER = "X-Matched-Cues";
+    static final String REPAIR_REPORT_HEADER = "X-Repair-Report";
+
     private final SubtitleShifter subtitleShifter;
+    private final StorageProperties storageProperties;
+    private final ShiftResultCache resultCache;
+    private final StorageService storageService;
+    private final RetentionService retentionService;
+    private final ShiftMetrics metrics;
+    private final CompressedUploads compressedUploads;
+
+    @Qualifier("applicationTaskExecutor")
+    private final AsyncTaskExecutor taskExecutor;
 
+    /**
+     * Shifts the uploaded file. The work runs on the bounded application task executor,
+     * so the servlet thread is released as soon as the request is accepted.
+     */
     @PostMapping(value = "/uploadAndShift", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
-    public ResponseEntity<Resource> uploadAndShiftSubtitle(@RequestParam("subtitleFile") MultipartFile originalFile,
-                                                     @RequestParam("timeshift.msg") String timeshift)
-            throws StorageException, IOException {
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> uploadAndShiftSubtitle(@RequestParam("subtitleFile") MultipartFile originalFile,
+                                                                                           @RequestParam("timeshift.msg") String timeshift) {
 
         // Validate timeshift
         if (!timeshift.matches("^-?\\d+$")) {
+            metrics.rejected(ShiftMetrics.REJECTED_TIMESHIFT);
             LOGGER.error("Invalid timeshift received: {}", timeshift);
-            return ResponseEntity.badRequest().body(null);
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(null));
+        }
+
+        return submit(acceptsGzip -> shift(compressedUploads.unwrap(originalFile),
+                TimeTransform.offset(Timestamp.parseShift(timeshift)), acceptsGzip));
+    }
+
+    /**
+     * Applies t' = a·t + b to the uploaded file in a single pass. The scale comes either from a
+     * framerate pair (sourceFps, targetFps) followed by the optional timeshift, or from two anchors:
+     * cue anchorCues[i] (1-based) should start at anchorTimes[i] ("hh:mm:ss,mmm").
+     */
+    @PostMapping(value = "/uploadAndTransform", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> uploadAndTransformSubtitle(@RequestParam("subtitleFile") MultipartFile originalFile,
+                                                                                               @RequestParam(value = "timeshift.msg", defaultValue = "0") String timeshift,
+                                                                                               @RequestParam(value = "sourceFps", required = false) String sourceFps,
+                                                                                               @RequestParam(value = "targetFps", required = false) String targetFps,
+                                                                                               @RequestParam(value = "anchorCues", required = false) List<Long> anchorCues,
+                                                                                               @RequestParam(value = "anchorTimes", required = false) List<String> anchorTimes) {
+
+        boolean framerate = sourceFps != null && targetFps != null;
+        boolean anchors = anchorCues != null && anchorTimes != null && anchorCues.size() == 2 && anchorTimes.size() == 2;
+        if (framerate == anchors || !timeshift.matches("^-?\\d+$")) {
+            LOGGER.error("Invalid transform received: fps {}/{}, anchors {} at {}, timeshift {}",
+                    sourceFps, targetFps, anchorCues, anchorTimes, timeshift);
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(null));
+        }
+
+        return submit(acceptsGzip -> {
+            MultipartFile file = compressedUploads.unwrap(originalFile);
+            TimeTransform transform;
+            if (framerate) {
+                transform = LinearTransform.framerate(sourceFps, targetFps, Timestamp.parseShift(timeshift));
+            } else {
+                long[] starts = subtitleShifter.findCueStarts(file, anchorCues.get(0), anchorCues.get(1));
+                transform = LinearTransform.anchors(
+                        starts[0], Timestamp.parse(anchorTimes.get(0)).toMilliseconds(),
+                        starts[1], Timestamp.parse(anchorTimes.get(1)).toMilliseconds());
+            }
+            LOGGER.debug("Transforming {} with {}", file.getOriginalFilename(), transform);
+            return shift(file, transform, acceptsGzip);
+        });
+    }
+
+    /**
+     * Shifts each part of the uploaded file by its own offset. Segment i starts at segmentStarts[i],
+     * either a cue number ("#12") or a time ("00:41:05,000"), and shifts by segmentShifts[i] ms;
+     * cues before the first segment are left unchanged.
+     */
+    @PostMapping(value = "/uploadAndShiftSegments", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> uploadAndShiftSegments(@RequestParam("subtitleFile") MultipartFile originalFile,
+                                                                                           @RequestParam("segmentStarts") List<String> segmentStarts,
+                                                                                           @RequestParam("segmentShifts") List<String> segmentShifts) {
+        TimeTransform transform;
+        try {
+            transform = segments(segmentStarts, segmentShifts);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid segments received: {} with {}: {}", segmentStarts, segmentShifts, e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(null));
         }
+        return submit(acceptsGzip -> shift(compressedUploads.unwrap(originalFile), transform, acceptsGzip));
+    }
 
-        Attachment shiftedFile = subtitleShifter.getShiftedFile(originalFile, timeshift);
+    private static SegmentedTransform segments(List<String> segmentStarts, List<String> segmentShifts) {
+        if (segmentStarts.size() != segmentShifts.size()) {
+            throw new IllegalArgumentException("Every segment needs a start and a shift");
+        }
+        boolean byCue = segmentStarts.stream().allMatch(start -> start.startsWith("#"));
+        long[] starts = new long[segmentStarts.size()];
+        long[] shifts = new long[segmentShifts.size()];
+        for (int i = 0; i < starts.length; i++) {
+            String start = segmentStarts.get(i);
+            starts[i] = byCue ? Timestamp.parseShift(start.substring(1)) : Timestamp.parse(start).toMilliseconds();
+            shifts[i] = Timestamp.parseShift(segmentShifts.get(i));
+        }
+        return byCue ? SegmentedTransform.byCue(starts, shifts) : SegmentedTransform.byTime(starts, shifts);
+    }
+
+    /**
+     * Aligns the uploaded file with a reference subtitle file with correct timing and shifts it in one go.
+     * The estimated transform and the number of matched cues are returned in response headers.
+     */
+    @PostMapping(value = "/uploadAndAlign", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> uploadAndAlign(@RequestParam("subtitleFile") MultipartFile originalFile,
+                                                                                   @RequestParam("referenceFile") MultipartFile referenceFile,
+                                                                                   @RequestParam(value = "drift", defaultValue = "false") boolean drift) {
+        return submit(acceptsGzip -> {
+            MultipartFile file = compressedUploads.unwrap(originalFile);
+            MultipartFile reference = compressedUploads.unwrap(referenceFile);
+            subtitleShifter.validate(file);         // Both are checked before either is parsed
+            subtitleShifter.validate(reference);
+            OffsetEstimator.Estimate estimate = OffsetEstimator.estimate(
+                    subtitleShifter.buildIndex(file).sortedStarts(),
+                    subtitleShifter.buildIndex(reference).sortedStarts(),
+                    drift, OffsetEstimator.DEFAULT_MAX_OFFSET);
+            LOGGER.info("Aligned {} to {}: {} ({} cues matched)", file.getOriginalFilename(),
+                    reference.getOriginalFilename(), estimate.transform().describe(), estimate.matchedCues());
+
+            ResponseEntity<StreamingResponseBody> response = shift(file, estimate.transform(), acceptsGzip);
+            return ResponseEntity
+                    .status(response.getStatusCode())
+                    .headers(response.getHeaders())
+                    .header(ESTIMATED_TRANSFORM_HEADER, estimate.transform().describe())
+                    .header(MATCHED_CUES_HEADER, String.valueOf(estimate.matchedCues()))
+                    .body(response.getBody());
+        });
+    }
 
+    /**
+     * Shifts the uploaded file and repairs its structure in the same pass: cues shifted before zero are
+     * clamped or dropped (negativeCues), SRT cues renumbered, overlaps trimmed and line endings unified.
+     * The counts of the report are returned in a response header; POST /validate returns the whole report.
+     */
+    @PostMapping(value = "/uploadAndRepair", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> uploadAndRepair(@RequestParam("subtitleFile") MultipartFile originalFile,
+                                                                                    @RequestParam(value = "timeshift.msg", defaultValue = "0") String timeshift,
+                                                                                    @RequestParam(value = "negativeCues", defaultValue = "clamp") String negativeCues,
+                                                                                    @RequestParam(value = "renumber", defaultValue = "true") boolean renumber,
+                                                                                    @RequestParam(value = "fixOverlaps", defaultValue = "true") boolean fixOverlaps,
+                                                                                    @RequestParam(value = "lineEnding", defaultValue = "crlf") String lineEnding) {
+        RepairOptions options;
         try {
+            options = RepairOptions.parse(negativeCues, renumber, fixOverlaps, lineEnding);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid repair options received: {}", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(null));
+        }
+        if (!timeshift.matches("^-?\\d+$")) {
+            metrics.rejected(ShiftMetrics.REJECTED_TIMESHIFT);
+            LOGGER.error("Invalid timeshift received: {}", timeshift);
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(null));
+        }
+
+        return submit(acceptsGzip -> {
+            MultipartFile file = compressedUploads.unwrap(originalFile);
+            subtitleShifter.validate(file);
+            TimeTransform transform = TimeTransform.offset(Timestamp.parseShift(timeshift));
+
+            // The report is only complete after the last line, so the file is repaired before the response starts
+            String savedName = UUID.randomUUID().toString().substring(0, 10) + file.getOriginalFilename();
+            Path outputPath = storageService.getOutputPath(savedName, transform.describe() + "_repaired");
+            RepairReport report;
+            try (OutputStream outputStream = Files.newOutputStream(outputPath)) {
+                report = subtitleShifter.repairToStream(file, transform, options, outputStream);
+            } catch (IOException e) {
+                Files.deleteIfExists(outputPath);
+                throw e;
+            }
+            LOGGER.debug("Repaired {}: {}", file.getOriginalFilename(), report.toJson(false));
+
+            return ResponseEntity
+                    .ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + file.getOriginalFilename())
+                    .header(REPAIR_REPORT_HEADER, report.toJson(false))
+                    .contentLength(Files.size(outputPath))
+                    .body(timed(outputStream -> {
+                        try {
+                            Files.copy(outputPath, outputStream);
+                        } finally {
+                            retentionService.afterResponse(outputPath);
+                        }
+                    }));
+        });
+    }
+
+    private interface ShiftTask {
+        ResponseEntity<StreamingResponseBody> run(boolean acceptsGzip) throws StorageException, IOException;
+    }
+
+    /**
+     * Runs a shift on the application task executor. Invalid transform parameters become a 400 response.
+     * The request headers are read here, as the request is not bound to the executor threads.
+     */
+    private CompletableFuture<ResponseEntity<StreamingResponseBody>> submit(ShiftTask task) {
+        String acceptEncoding = RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+                ? attributes.getRequest().getHeader(HttpHeaders.ACCEPT_ENCODING)
+                : null;
+        boolean acceptsGzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.run(acceptsGzip);
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("Invalid shift request: {}", e.getMessage());
+                return ResponseEntity.badRequest().body(null);
+            } catch (StorageException | IOException e) {
+                throw new CompletionException(e);   // Unwrapped by Spring MVC
+            }
+        }, taskExecutor);
+    }
+
+    /**
+     * @param acceptsGzip Whether a cached result may be sent gzip-compressed as stored.
+     *                    Other responses are compressed by the server (server.compression.*).
+     */
+    private ResponseEntity<StreamingResponseBody> shift(MultipartFile originalFile, TimeTransform transform,
+                                                        boolean acceptsGzip)
+            throws StorageException, IOException {
+
+        subtitleShifter.validate(originalFile);
+        String contentDisposition = "attachment; filename=" + originalFile.getOriginalFilename();
+
+        // Serve repeated (file, transform) requests without shifting again.
+        String cacheKey = resultCache.isEnabled() ? resultCache.key(originalFile, transform) : null;
+        Optional<Path> compressedResult = cacheKey != null && acceptsGzip ? resultCache.getCompressed(cacheKey) : Optional.empty();
+        if (compressedResult.isPresent()) {
+            metrics.cacheLookup(true);
+            Path resultPath = compressedResult.get();
+            return ResponseEntity
+                    .ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .contentLength(Files.size(resultPath))
+                    .body(timed(outputStream -> Files.copy(resultPath, outputStream)));
+        }
+        Optional<byte[]> cachedResult = cacheKey != null ? resultCache.get(cacheKey) : Optional.empty();
+        if (cacheKey != null) {
+            metrics.cacheLookup(cachedResult.isPresent());
+        }
+        if (cachedResult.isPresent()) {
+            byte[] result = cachedResult.get();
+            return ResponseEntity
+                    .ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
+                    .contentLength(result.length)
+                    .body(timed(outputStream -> outputStream.write(result)));
+        }
+
+        if (storageProperties.isPersist()) {
+            Attachment upload = storageService.store(originalFile);
+            Attachment shiftedFile = subtitleShifter.applyShift(upload, transform);
             Path filePath = shiftedFile.getFilepath();
-            Resource resource = new UrlResource(filePath.toUri());
 
-            if (!resource.exists()) {
+            if (Files.notExists(filePath)) {
                 return ResponseEntity.notFound().build();
             }
+            if (cacheKey != null) {
+                resultCache.put(cacheKey, filePath);
+            }
 
             return ResponseEntity
                     .ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + originalFile.getOriginalFilename())
-                    .body(resource);
-        } catch (MalformedURLException ex) {
-            LOGGER.error("Invalid file URL: {}", ex.getMessage());
-            return ResponseEntity.badRequest().build();
+                    .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
+                    .body(timed(outputStream -> {
+                        try {
+                            Files.copy(filePath, outputStream);
+                        } finally {
+                            retentionService.afterResponse(upload.getFilepath(), filePath);
+                        }
+                    }));
         }
+
+        // Streaming mode: the shifted lines go straight to the response (and to the cache, if enabled).
+        return ResponseEntity
+                .ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
+                .body(timed(outputStream -> {
+                    if (cacheKey == null) {
+                        subtitleShifter.shiftToStream(originalFile, transform, outputStream);
+                        return;
+                    }
+                    OutputStream captureStream = resultCache.capture(cacheKey, outputStream);
+                    subtitleShifter.shiftToStream(originalFile, transform, captureStream);
+                    captureStream.close();  // Only reached if the shift succeeded
+                }));
+    }
+
+    /**
+     * Records the time spent writing the response body in the subtitle.response.stream timer.
+     */
+    private StreamingResponseBody timed(StreamingResponseBody body) {
+        return outputStream -> {
+            long start = System.nanoTime();
+            try {
+                body.writeTo(outputStream);
+            } finally {
+                metrics.responseTimer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
     }
 }
@@ -0,0 +1,189 @@
+package mkoutra.subtitleshift.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import mkoutra.subtitleshift.exceptions.StorageException;
+import mkoutra.subtitleshift.model.JobStatus;
+import mkoutra.subtitleshift.service.CompressedUploads;
+import mkoutra.subtitleshift.service.JobService;
+import mkoutra.subtitleshift.service.RetentionService;
+import mkoutra.subtitleshift.service.ShiftMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Shift jobs, for files too large (or too many) to wait for in a single request:
+ * <ol>
+ *     <li>POST /jobs with one or more subtitleFile parts queues a job per file and answers 202 right away.</li>
+ *     <li>GET /jobs/{id} returns the status of a job, with the number of cues shifted so far.
+ *         With callbackUrl, the status is also posted there once the job finishes.</li>
+ *     <li>GET /jobs/{id}/result downloads the shifted file once the job is done, with ETag and Range support.</li>
+ * </ol>
+ */
+@Controller
+@RequiredArgsConstructor
+public class JobController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobController.class);
+
+    // Request attributes of Tomcat's sendfile support, offered by the NIO connector unless useSendfile is off
+    static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final JobService jobService;
+    private final CompressedUploads compressedUploads;
+    private final RetentionService retentionService;
+    private final ShiftMetrics metrics;
+
+    @PostMapping(value = "/jobs", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<JobStatus>> submit(@RequestParam("subtitleFile") List<MultipartFile> files,
+                                                  @RequestParam(value = "timeshift.msg", defaultValue = "0") String timeshift,
+                                                  @RequestParam(value = "callbackUrl", required = false) String callbackUrl)
+            throws IOException {
+        if (!timeshift.matches("^-?\\d+$")) {
+            metrics.rejected(ShiftMetrics.REJECTED_TIMESHIFT);
+            LOGGER.error("Invalid timeshift received: {}", timeshift);
+            return ResponseEntity.badRequest().build();
+        }
+
+        // Every file is checked before the first job is queued, so a 400 never leaves jobs behind
+        List<MultipartFile> subtitleFiles = new ArrayList<>(files.size());
+        try {
+            for (MultipartFile file : files) {
+                MultipartFile subtitleFile = compressedUploads.unwrap(file);
+                jobService.validate(subtitleFile, timeshift, callbackUrl);
+                subtitleFiles.add(subtitleFile);
+            }
+        } catch (StorageException | IllegalArgumentException e) {
+            LOGGER.error("Invalid job submitted: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<JobStatus> jobs = new ArrayList<>(files.size());
+        try {
+            for (MultipartFile subtitleFile : subtitleFiles) {
+                jobs.add(jobService.submit(subtitleFile, timeshift, callbackUrl));
+            }
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Job rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(jobs);  // The jobs queued so far still run
+        } catch (StorageException | IOException e) {
+            LOGGER.error("Failed to store job: {}", e.getMessage());
+            return ResponseEntity.internalServerError().body(jobs);                   // Likewise
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.accepted();
+        if (jobs.size() == 1) {
+            response.location(URI.create("/jobs/" + jobs.get(0).id()));
+        }
+        return response.body(jobs);
+    }
+
+    @GetMapping(value = "/jobs/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<JobStatus> status(@PathVariable("id") UUID id) {
+        return ResponseEntity.of(jobService.find(id));
+    }
+
+    /**
+     * Downloads the shifted file of a job: 404 for an unknown job or a deleted file, 409 while it is not done.
+     * <p>
+     * The ETag is the SHA-256 of the file, so If-None-Match gets 304 and Range requests get 206 with the
+     * requested bytes. When the connector supports sendfile, whole files are sent from the file by the kernel
+     * instead of being copied through the JVM.
+     */
+    @GetMapping(value = "/jobs/{id}/result", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Resource> result(@PathVariable("id") UUID id, ServletWebRequest webRequest) throws IOException {
+        Optional<JobStatus> job = jobService.find(id);
+        if (job.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (job.get().state() != JobStatus.State.DONE) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        Optional<Path> result = jobService.result(id);
+        if (result.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        // Sets ETag and Last-Modified, and answers 304 if the client has the file already
+        Path resultPath = result.get();
+        long lastModified = Files.getLastModifiedTime(resultPath).toMillis();
+        Optional<String> hash = jobService.resultHash(id);
+        if (hash.isPresent() ? webRequest.checkNotModified(hash.get(), lastModified) : webRequest.checkNotModified(lastModified)) {
+            return null;
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity
+                .ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .cacheControl(CacheControl.noCache())   // Revalidated, the file may have been deleted meanwhile
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + job.get().filename())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes");
+        HttpServletRequest request = webRequest.getRequest();
+        boolean wholeFile = request.getHeader(HttpHeaders.RANGE) == null;
+
+        if (wholeFile && retentionService.isDeleteAfterResponse()) {
+            return response.body(deletedAfterResponse(resultPath, id));
+        }
+        if (wholeFile && HttpMethod.GET.matches(request.getMethod())
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            long size = Files.size(resultPath);
+            request.setAttribute(SENDFILE_FILENAME, resultPath.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, size);
+            return response.contentLength(size).build();
+        }
+        return response.body(new FileSystemResource(resultPath));     // Ranges are served by Spring MVC
+    }
+
+    /**
+     * The shifted file, deleted along with the upload once fully read (storage.retention.deleteAfterResponse).
+     */
+    private Resource deletedAfterResponse(Path resultPath, UUID id) {
+        return new FileSystemResource(resultPath) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return new FilterInputStream(super.getInputStream()) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            jobService.input(id).ifPresent(retentionService::afterResponse);
+                            retentionService.afterResponse(resultPath);
+                        }
+                    }
+                };
+            }
+        };
+    }
+}
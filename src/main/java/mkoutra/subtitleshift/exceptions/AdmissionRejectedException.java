@@ -0,0 +1,21 @@
+package mkoutra.subtitleshift.exceptions;
+
+/**
+ * Thrown when a request is not admitted, because its client or the whole service is at its limit.
+ */
+public class AdmissionRejectedException extends Exception {
+
+    private final boolean clientLimit;
+
+    public AdmissionRejectedException(String message, boolean clientLimit) {
+        super(message);
+        this.clientLimit = clientLimit;
+    }
+
+    /**
+     * @return True if the client has too many requests (429), false if the service is overloaded (503).
+     */
+    public boolean isClientLimit() {
+        return clientLimit;
+    }
+}
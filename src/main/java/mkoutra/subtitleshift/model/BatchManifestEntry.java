@@ -0,0 +1,20 @@
+package mkoutra.subtitleshift.model;
+
+/**
+ * The outcome of one file of a batch request, as listed in the manifest of the returned ZIP.
+ *
+ * @param file      The original filename.
+ * @param timeshift The time shift applied to the file.
+ * @param entry     The name of the shifted file inside the ZIP, or null if shifting failed.
+ * @param error     The reason of the failure, or null if shifting succeeded.
+ */
+public record BatchManifestEntry(String file, String timeshift, String entry, String error) {
+
+    public static BatchManifestEntry success(String file, String timeshift, String entry) {
+        return new BatchManifestEntry(file, timeshift, entry, null);
+    }
+
+    public static BatchManifestEntry failure(String file, String timeshift, String error) {
+        return new BatchManifestEntry(file, timeshift, null, error);
+    }
+}
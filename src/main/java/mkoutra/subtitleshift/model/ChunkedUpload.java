@@ -0,0 +1,14 @@
+package mkoutra.subtitleshift.model;
+
+import java.util.UUID;
+
+/**
+ * An upload sent in chunks through /uploads.
+ *
+ * @param id        The id of the upload, also used as the UUID of the stored file.
+ * @param filename  The original name of the file.
+ * @param length    The length of the whole file in bytes.
+ * @param timeshift The time shift applied once the last chunk arrives.
+ */
+public record ChunkedUpload(UUID id, String filename, long length, String timeshift) {
+}
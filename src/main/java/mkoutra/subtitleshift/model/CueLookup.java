@@ -0,0 +1,17 @@
+package mkoutra.subtitleshift.model;
+
+/**
+ * The cue shown at a requested time.
+ *
+ * @param cue   The 1-based number of the cue, counting the time lines of the file.
+ * @param start The start of the cue, e.g. "00:00:39,398".
+ * @param end   The end of the cue.
+ */
+public record CueLookup(int cue, String start, String end) {
+
+    public static CueLookup of(CueIndex index, int cue) {
+        return new CueLookup(cue + 1,
+                new Timestamp(index.start(cue)).toString(),
+                new Timestamp(index.end(cue)).toString());
+    }
+}
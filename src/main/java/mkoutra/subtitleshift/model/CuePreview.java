@@ -0,0 +1,39 @@
+package mkoutra.subtitleshift.model;
+
+import mkoutra.subtitleshift.engine.CueWindow;
+
+import java.util.List;
+
+/**
+ * A page of cues before and after a shift.
+ *
+ * @param offset The 0-based index of the first cue of the page.
+ * @param limit  The requested number of cues per page.
+ * @param cues   The cues of the page, in file order.
+ * @param next   The offset of the next page, or null on the last page.
+ */
+public record CuePreview(long offset, int limit, List<Cue> cues, Long next) {
+
+    /**
+     * @param cue          The 1-based number of the cue, counting the time lines of the file.
+     * @param start        The start of the cue in the file, e.g. "00:00:39,398".
+     * @param end          The end of the cue in the file.
+     * @param shiftedStart The start of the cue after the shift.
+     * @param shiftedEnd   The end of the cue after the shift.
+     * @param text         The text of the cue.
+     */
+    public record Cue(long cue, String start, String end, String shiftedStart, String shiftedEnd, String text) {
+    }
+
+    public static CuePreview of(CueWindow window, int limit) {
+        List<Cue> cues = window.cues().stream()
+                .map(cue -> new Cue(cue.cue(),
+                        new Timestamp(cue.start()).toString(),
+                        new Timestamp(cue.end()).toString(),
+                        new Timestamp(cue.shiftedStart()).toString(),
+                        new Timestamp(cue.shiftedEnd()).toString(),
+                        cue.text()))
+                .toList();
+        return new CuePreview(window.offset(), limit, cues, window.hasMore() ? window.offset() + cues.size() : null);
+    }
+}
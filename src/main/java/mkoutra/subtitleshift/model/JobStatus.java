@@ -0,0 +1,30 @@
+package mkoutra.subtitleshift.model;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * The state of a shift job submitted through /jobs, as returned to the client and posted to its callback.
+ *
+ * @param id        The id of the job.
+ * @param state     Where the job stands.
+ * @param filename  The original name of the file.
+ * @param timeshift The time shift applied to the file.
+ * @param cues      The number of cues shifted so far.
+ * @param submitted When the job was submitted.
+ * @param started   When a worker started the job, or null if it is still queued.
+ * @param finished  When the job finished, or null if it has not.
+ * @param error     The reason of the failure, or null.
+ * @param result    The URL of the shifted file once the job is done, or null.
+ */
+public record JobStatus(UUID id, State state, String filename, String timeshift, long cues,
+                        Instant submitted, Instant started, Instant finished, String error, String result) {
+
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED;
+
+        public boolean isFinished() {
+            return this == DONE || this == FAILED;
+        }
+    }
+}
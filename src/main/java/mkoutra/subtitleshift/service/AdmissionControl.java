@@ -0,0 +1,182 @@
+package mkoutra.subtitleshift.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import mkoutra.subtitleshift.config.ExecutionProperties;
+import mkoutra.subtitleshift.exceptions.AdmissionRejectedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of requests handled at once, so that a burst of uploads is shed quickly
+ * instead of piling up on disk, on the heap and in the executor queue.
+ * <p>
+ * A request takes one of maxConcurrent slots for as long as it is handled. If none is free, it waits
+ * up to queueTimeout in a bounded queue of maxQueued requests, in arrival order. A client
+ * (remote address) may hold at most maxPerClient slots and queue places together, so that a single
+ * client cannot take the whole service.
+ * <p>
+ * The state is published as the subtitle.admission.active, .queued and .clients gauges,
+ * and rejections as subtitle.admission.rejected, tagged with their reason.
+ *
+ * @author Michalis Koutrakis
+ */
+@Service
+public class AdmissionControl implements MeterBinder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionControl.class);
+
+    public static final String REJECTED_CLIENT = "client";
+    public static final String REJECTED_QUEUE_FULL = "queue";
+    public static final String REJECTED_TIMEOUT = "timeout";
+
+    private final ExecutionProperties.Admission properties;
+    private final Semaphore slots;
+    private final AtomicInteger queued = new AtomicInteger();
+    /** Requests handled or waiting per client. Clients without any are removed. */
+    private final Map<String, Integer> clients = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> rejected = Map.of(
+            REJECTED_CLIENT, new LongAdder(),
+            REJECTED_QUEUE_FULL, new LongAdder(),
+            REJECTED_TIMEOUT, new LongAdder());
+
+    public AdmissionControl(ExecutionProperties executionProperties) {
+        this.properties = executionProperties.getAdmission();
+        this.slots = new Semaphore(properties.getMaxConcurrent(), true);
+    }
+
+    /**
+     * A slot held by an admitted request, released once by {@link #close()}.
+     */
+    public final class Permit implements AutoCloseable {
+        private final String client;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(String client) {
+            this.client = client;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                slots.release();
+                leave(client);
+            }
+        }
+    }
+
+    /**
+     * Admits a request, waiting for a free slot if needed.
+     *
+     * @param client                       Identifies the client, e.g. its remote address.
+     * @return                             The slot of the request, to be closed once the response is complete.
+     * @throws AdmissionRejectedException  If the client has too many requests, the queue is full,
+     *                                     or no slot became free in time.
+     * @throws InterruptedException        If the thread is interrupted while waiting.
+     */
+    public Permit acquire(String client) throws AdmissionRejectedException, InterruptedException {
+        if (!enter(client)) {
+            throw reject(REJECTED_CLIENT, client, "Too many requests from " + client, true);
+        }
+
+        boolean admitted = false;
+        try {
+            admitted = slots.tryAcquire(0, TimeUnit.NANOSECONDS);   // Unlike tryAcquire(), does not overtake the queue
+            if (!admitted) {
+                if (queued.incrementAndGet() > properties.getMaxQueued()) {
+                    queued.decrementAndGet();
+                    throw reject(REJECTED_QUEUE_FULL, client, "Too many requests waiting", false);
+                }
+                try {
+                    admitted = slots.tryAcquire(properties.getQueueTimeout().toNanos(), TimeUnit.NANOSECONDS);
+                } finally {
+                    queued.decrementAndGet();
+                }
+                if (!admitted) {
+                    throw reject(REJECTED_TIMEOUT, client, "No free slot within " + properties.getQueueTimeout(), false);
+                }
+            }
+            return new Permit(client);
+        } finally {
+            if (!admitted) {
+                leave(client);
+            }
+        }
+    }
+
+    /**
+     * @return The number of requests being handled.
+     */
+    public int getActive() {
+        return properties.getMaxConcurrent() - slots.availablePermits();
+    }
+
+    /**
+     * @return The number of requests waiting for a slot.
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * @param reason One of REJECTED_CLIENT, REJECTED_QUEUE_FULL or REJECTED_TIMEOUT.
+     * @return       The number of requests rejected for that reason.
+     */
+    public long getRejected(String reason) {
+        return rejected.get(reason).sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("subtitle.admission.active", this, AdmissionControl::getActive)
+                .description("Requests being handled")
+                .register(registry);
+        Gauge.builder("subtitle.admission.queued", this, AdmissionControl::getQueued)
+                .description("Requests waiting for a free slot")
+                .register(registry);
+        Gauge.builder("subtitle.admission.clients", clients, Map::size)
+                .description("Clients with requests being handled or waiting")
+                .register(registry);
+        rejected.forEach((reason, count) ->
+                FunctionCounter.builder("subtitle.admission.rejected", count, LongAdder::sum)
+                        .description("Requests rejected by the admission control")
+                        .tag("reason", reason)
+                        .register(registry));
+    }
+
+    /**
+     * Counts a request of the client, unless the client is at its limit.
+     */
+    private boolean enter(String client) {
+        if (properties.getMaxPerClient() <= 0) {
+            return true;
+        }
+        if (clients.merge(client, 1, Integer::sum) > properties.getMaxPerClient()) {
+            leave(client);
+            return false;
+        }
+        return true;
+    }
+
+    private void leave(String client) {
+        if (properties.getMaxPerClient() > 0) {
+            clients.computeIfPresent(client, (key, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    private AdmissionRejectedException reject(String reason, String client, String message, boolean clientLimit) {
+        rejected.get(reason).increment();
+        LOGGER.debug("Request from {} rejected: {}", client, message);
+        return new AdmissionRejectedException(message, clientLimit);
+    }
+}
@@ -0,0 +1,130 @@
+package mkoutra.subtitleshift.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import mkoutra.subtitleshift.exceptions.StorageException;
+import mkoutra.subtitleshift.model.BatchManifestEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Service for shifting many subtitle files at once.
+ * <p>
+ * Files are shifted concurrently on the batch task executor, at most batchThreads at once, and written
+ * to a ZIP stream in completion order. A failing file does not abort the batch; every outcome is listed
+ * in a {@value #MANIFEST_NAME} entry written last.
+ *
+ * @author Michalis Koutrakis
+ */
+@Service
+@RequiredArgsConstructor
+public class BatchShifter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchShifter.class);
+
+    public static final String MANIFEST_NAME = "manifest.json";
+
+    private final SubtitleShifter subtitleShifter;
+    private final ObjectMapper objectMapper;
+
+    @Qualifier("batchTaskExecutor")
+    private final AsyncTaskExecutor batchExecutor;
+
+    private record Result(int index, byte[] content, BatchManifestEntry manifestEntry) {
+    }
+
+    /**
+     * Shifts every file by its timeshift and writes the results as a ZIP to the given stream.
+     *
+     * @param files        The uploaded subtitle files.
+     * @param timeshifts   The time shift of each file, in the same order as the files.
+     * @param outputStream The stream receiving the ZIP, e.g. the response body.
+     * @throws IOException If writing the ZIP fails.
+     */
+    public void shiftAll(List<MultipartFile> files, List<String> timeshifts, OutputStream outputStream) throws IOException {
+        CompletionService<Result> completionService = new ExecutorCompletionService<>(batchExecutor);
+        List<Future<Result>> futures = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            int index = i;
+            futures.add(completionService.submit(() -> shift(index, files.get(index), timeshifts.get(index))));
+        }
+
+        BatchManifestEntry[] manifest = new BatchManifestEntry[files.size()];
+        Set<String> entryNames = new HashSet<>();
+        ZipOutputStream zip = new ZipOutputStream(outputStream);
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                Result result = completionService.take().get();
+                BatchManifestEntry manifestEntry = result.manifestEntry();
+
+                if (result.content() != null) {
+                    String entryName = uniqueEntryName(manifestEntry.entry(), entryNames);
+                    manifestEntry = BatchManifestEntry.success(manifestEntry.file(), manifestEntry.timeshift(), entryName);
+                    zip.putNextEntry(new ZipEntry(entryName));
+                    zip.write(result.content());
+                    zip.closeEntry();
+                    zip.flush();    // Hand each finished file to the client right away
+                }
+                manifest[result.index()] = manifestEntry;
+            }
+
+            zip.putNextEntry(new ZipEntry(MANIFEST_NAME));
+            zip.write(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest));
+            zip.closeEntry();
+            zip.finish();   // Completes the ZIP without closing the response stream
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch shift interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Batch shift failed", e.getCause());  // shift() reports its own failures
+        } finally {
+            futures.forEach(future -> future.cancel(true));             // No-op for finished tasks
+        }
+    }
+
+    /**
+     * Shifts a single file of the batch in memory. Never throws: failures are reported in the result.
+     */
+    private Result shift(int index, MultipartFile file, String timeshift) {
+        String filename = file.getOriginalFilename();
+        try {
+            subtitleShifter.validate(file, timeshift);
+            ByteArrayOutputStream content = new ByteArrayOutputStream((int) file.getSize());
+            subtitleShifter.shiftToStream(file, timeshift, content);
+            String entryName = StorageService.createOutputFilename(filename, timeshift);
+            return new Result(index, content.toByteArray(), BatchManifestEntry.success(filename, timeshift, entryName));
+        } catch (StorageException | IOException | RuntimeException e) {
+            LOGGER.error("Failed to shift {} of batch: {}", filename, e.getMessage());
+            return new Result(index, null, BatchManifestEntry.failure(filename, timeshift, e.getMessage()));
+        }
+    }
+
+    /**
+     * Appends a counter to names already used in the ZIP, e.g. when a file is uploaded twice.
+     */
+    private static String uniqueEntryName(String name, Set<String> used) {
+        String candidate = name;
+        for (int n = 2; !used.add(candidate); n++) {
+            int dot = name.lastIndexOf('.');
+            candidate = name.substring(0, dot) + "(" + n + ")" + name.substring(dot);
+        }
+        return candidate;
+    }
+}
@@ -0,0 +1,201 @@
+package mkoutra.subtitleshift.service;
+
+import lombok.RequiredArgsConstructor;
+import mkoutra.subtitleshift.config.StorageProperties;
+import mkoutra.subtitleshift.exceptions.StorageException;
+import mkoutra.subtitleshift.model.Attachment;
+import mkoutra.subtitleshift.model.ChunkedUpload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service for resumable uploads sent in chunks.
+ * <p>
+ * Each upload is a "uploadDir/partial/&lt;id&gt;.part" file that chunks are appended to, streamed from
+ * the request straight to the file channel, plus a small properties file with its name, length and
+ * timeshift. The received length is the size of the part file, so an interrupted upload resumes from
+ * there, even after a restart. Once complete, the file is moved next to the other uploads.
+ * Abandoned uploads are removed by the {@link RetentionService} sweep once they have not changed for
+ * storage.retention.maxAge; uploads in progress are never evicted for size.
+ *
+ * @author Michalis Koutrakis
+ */
+@Service
+@RequiredArgsConstructor
+public class ChunkedUploadService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedUploadService.class);
+
+    static final String PARTIAL_DIR = "partial";
+
+    private final StorageProperties storageProperties;
+    private final StorageService storageService;
+    private final ShiftMetrics metrics;
+
+    /** Uploads with a chunk being written. A second chunk for the same upload is rejected meanwhile. */
+    private final Set<UUID> writing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Starts an upload.
+     *
+     * @param filename                  The name of the subtitle file. Only its last path element is kept.
+     * @param length                    The length of the file in bytes.
+     * @param timeshift                 The time shift to apply once the upload is complete.
+     * @return                          The new upload.
+     * @throws StorageException         If the extension is not accepted or the file is too large.
+     * @throws IllegalArgumentException If the timeshift is invalid.
+     * @throws IOException              If the upload cannot be created.
+     */
+    public ChunkedUpload start(String filename, long length, String timeshift) throws StorageException, IOException {
+        if (!timeshift.matches("^-?\\d+$")) {
+            metrics.rejected(ShiftMetrics.REJECTED_TIMESHIFT);
+            throw new IllegalArgumentException("Invalid timeshift: " + timeshift);
+        }
+        String name = filename == null ? null : Paths.get(filename).getFileName().toString();
+        storageService.validateFilename(name);
+        if (length <= 0 || length > storageProperties.getMaxUploadSize()) {
+            throw new StorageException("Invalid upload length: " + length +
+                    ". Accepted lengths: 1 to " + storageProperties.getMaxUploadSize() + " bytes");
+        }
+
+        ChunkedUpload upload = new ChunkedUpload(UUID.randomUUID(), name, length, timeshift);
+        Files.createDirectories(partialDir());
+        Files.createFile(partPath(upload.id()));
+
+        Properties properties = new Properties();
+        properties.setProperty("filename", upload.filename());
+        properties.setProperty("length", String.valueOf(upload.length()));
+        properties.setProperty("timeshift", upload.timeshift());
+        try (Writer writer = Files.newBufferedWriter(metadataPath(upload.id()), StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        LOGGER.debug("Upload {} of {} ({} bytes) started.", upload.id(), name, length);
+        return upload;
+    }
+
+    /**
+     * @param id The id of the upload.
+     * @return   The upload, or empty if it does not exist (anymore).
+     */
+    public Optional<ChunkedUpload> find(UUID id) throws IOException {
+        Path metadataPath = metadataPath(id);
+        if (Files.notExists(metadataPath)) {
+            return Optional.empty();
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(metadataPath, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return Optional.of(new ChunkedUpload(id, properties.getProperty("filename"),
+                Long.parseLong(properties.getProperty("length")), properties.getProperty("timeshift")));
+    }
+
+    /**
+     * @return The number of bytes received so far, i.e. the offset of the next chunk.
+     */
+    public long offset(ChunkedUpload upload) throws IOException {
+        return Files.size(partPath(upload.id()));
+    }
+
+    /**
+     * Appends a chunk, streaming it from the request body to the end of the part file.
+     *
+     * @param upload                    The upload.
+     * @param offset                    The offset of the chunk, which must equal the bytes received so far.
+     * @param body                      The chunk.
+     * @return                          The number of bytes received after this chunk.
+     * @throws IllegalStateException    If the offset does not match, or another chunk of the upload is being written.
+     * @throws IllegalArgumentException If the chunk goes past the length of the upload.
+     * @throws IOException              If the chunk cannot be read or written.
+     */
+    public long append(ChunkedUpload upload, long offset, InputStream body) throws IOException {
+        if (!writing.add(upload.id())) {
+            throw new IllegalStateException("Another chunk of upload " + upload.id() + " is being written");
+        }
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(partPath(upload.id()), StandardOpenOption.WRITE)) {
+            long received = channel.size();
+            if (offset != received) {
+                throw new IllegalStateException("Upload " + upload.id() + " expects offset " + received + ", not " + offset);
+            }
+
+            // One byte more than allowed, to tell a chunk that ends at the length from one that goes past it
+            ReadableByteChannel in = Channels.newChannel(body);
+            long remaining = upload.length() - received + 1;
+            long transferred;
+            while (remaining > 0 && (transferred = channel.transferFrom(in, received, remaining)) > 0) {
+                received += transferred;
+                remaining -= transferred;
+            }
+            if (received > upload.length()) {
+                channel.truncate(offset);   // Drop the whole chunk so that the client can resend it
+                throw new IllegalArgumentException("Chunk goes past the length of upload " + upload.id());
+            }
+            return received;
+        } finally {
+            writing.remove(upload.id());
+            metrics.storeTimer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Moves a fully received upload to uploadDir.
+     *
+     * @param upload                 The upload.
+     * @return                       The stored file.
+     * @throws IllegalStateException If bytes are still missing.
+     * @throws IOException           If the file cannot be moved.
+     */
+    public Attachment complete(ChunkedUpload upload) throws IOException {
+        Path partPath = partPath(upload.id());
+        if (Files.size(partPath) != upload.length()) {
+            throw new IllegalStateException("Upload " + upload.id() + " is not complete");
+        }
+
+        String savedName = upload.id().toString().substring(0, 10) + upload.filename();
+        Path filepath = storageService.getInputPath(savedName);
+        Files.move(partPath, filepath, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(metadataPath(upload.id()));
+
+        String extension = upload.filename().substring(upload.filename().lastIndexOf(".")).toLowerCase(Locale.ROOT);
+        LOGGER.debug("Upload {} complete: {}", upload.id(), filepath);
+        Attachment attachment = new Attachment(upload.filename(), upload.id(), savedName, extension, filepath);
+        if (storageProperties.isPersist()) {
+            storageService.persist(attachment);
+        }
+        return attachment;
+    }
+
+    private Path partialDir() {
+        return Paths.get(storageProperties.getUploadDir(), PARTIAL_DIR);
+    }
+
+    private Path partPath(UUID id) {
+        return partialDir().resolve(id + ".part");
+    }
+
+    private Path metadataPath(UUID id) {
+        return partialDir().resolve(id + ".properties");
+    }
+}
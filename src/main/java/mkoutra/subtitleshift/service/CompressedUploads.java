@@ -0,0 +1,186 @@
+package mkoutra.subtitleshift.service;
+
+import lombok.RequiredArgsConstructor;
+import mkoutra.subtitleshift.config.StorageProperties;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Service for uploads sent as ".gz" or ".zip" files.
+ * <p>
+ * A compressed upload is wrapped in a {@link MultipartFile} that presents the subtitle file inside it:
+ * its name is the name of that file, and its input stream decompresses on the fly, so the rest of the
+ * pipeline (validation, caching, shifting) reads it like a plain upload and nothing is unpacked on disk
+ * or on the heap. Decompressed files are limited to maxUploadSize bytes.
+ *
+ * @author Michalis Koutrakis
+ */
+@Service
+@RequiredArgsConstructor
+public class CompressedUploads {
+
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final String ZIP_EXTENSION = ".zip";
+
+    private final StorageProperties storageProperties;
+
+    /**
+     * @param file The uploaded file.
+     * @return     The subtitle file inside a compressed upload, or the upload itself if not compressed.
+     * @throws IOException If a ZIP upload cannot be read or contains no file.
+     */
+    public MultipartFile unwrap(MultipartFile file) throws IOException {
+        String filename = file == null ? null : file.getOriginalFilename();
+        if (filename == null || file.isEmpty()) {
+            return file;
+        }
+
+        String lowerCaseName = filename.toLowerCase(Locale.ROOT);
+        if (lowerCaseName.endsWith(GZIP_EXTENSION)) {
+            String name = filename.substring(0, filename.length() - GZIP_EXTENSION.length());
+            return new DecompressedFile(file, name, false);
+        }
+        if (lowerCaseName.endsWith(ZIP_EXTENSION)) {
+            try (ZipInputStream zip = new ZipInputStream(file.getInputStream())) {
+                ZipEntry entry = nextFile(zip);
+                if (entry == null) {
+                    throw new IOException("No file in " + filename);
+                }
+                return new DecompressedFile(file, Path.of(entry.getName()).getFileName().toString(), true);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * @return The next entry that is a file, skipping directories and macOS metadata, or null.
+     */
+    private static ZipEntry nextFile(ZipInputStream zip) throws IOException {
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (!entry.isDirectory() && !entry.getName().startsWith("__MACOSX/")) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The first file of a compressed upload. The size is the one of the compressed upload,
+     * as the decompressed size is only known after reading it.
+     */
+    private final class DecompressedFile implements MultipartFile {
+
+        private final MultipartFile compressed;
+        private final String filename;
+        private final boolean zip;
+
+        DecompressedFile(MultipartFile compressed, String filename, boolean zip) {
+            this.compressed = compressed;
+            this.filename = filename;
+            this.zip = zip;
+        }
+
+        @Override
+        public String getName() {
+            return compressed.getName();
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return filename;
+        }
+
+        @Override
+        public String getContentType() {
+            return null;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return compressed.isEmpty();
+        }
+
+        @Override
+        public long getSize() {
+            return compressed.getSize();
+        }
+
+        @Override
+        public byte[] getBytes() throws IOException {
+            try (InputStream inputStream = getInputStream()) {
+                return inputStream.readAllBytes();
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            InputStream inputStream = compressed.getInputStream();
+            if (!zip) {
+                return limit(new GZIPInputStream(inputStream));
+            }
+            ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+            if (nextFile(zipInputStream) == null) {
+                zipInputStream.close();
+                throw new IOException("No file in " + compressed.getOriginalFilename());
+            }
+            return limit(zipInputStream);
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            transferTo(dest.toPath());
+        }
+
+        @Override
+        public void transferTo(Path dest) throws IOException {
+            try (InputStream inputStream = getInputStream()) {
+                Files.copy(inputStream, dest, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        /**
+         * Fails once more than maxUploadSize bytes are read, so that a small upload
+         * cannot expand into an endless stream.
+         */
+        private InputStream limit(InputStream inputStream) {
+            long maxBytes = storageProperties.getMaxUploadSize();
+            return new FilterInputStream(inputStream) {
+                private long read;
+
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    count(b < 0 ? 0 : 1);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    count(Math.max(n, 0));
+                    return n;
+                }
+
+                private void count(int n) throws IOException {
+                    read += n;
+                    if (read > maxBytes) {
+                        throw new IOException(filename + " is larger than " + maxBytes + " bytes decompressed");
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package mkoutra.subtitleshift.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import mkoutra.subtitleshift.config.StorageProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Publishes the bytes used by uploadDir and shiftedDir as the subtitle.storage.disk.usage gauge.
+ * <p>
+ * Walking the directories is too slow for every scrape, so the sizes are refreshed periodically
+ * and the gauge reports the last refresh.
+ *
+ * @author Michalis Koutrakis
+ */
+@Service
+public class DiskUsageMonitor implements MeterBinder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskUsageMonitor.class);
+
+    private final StorageProperties storageProperties;
+    private final AtomicLong uploadBytes = new AtomicLong();
+    private final AtomicLong shiftedBytes = new AtomicLong();
+
+    public DiskUsageMonitor(StorageProperties storageProperties) {
+        this.storageProperties = storageProperties;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("subtitle.storage.disk.usage", uploadBytes, AtomicLong::get)
+                .description("Bytes stored in the directory, as of the last refresh")
+                .baseUnit("bytes")
+                .tag("dir", "upload")
+                .register(registry);
+        Gauge.builder("subtitle.storage.disk.usage", shiftedBytes, AtomicLong::get)
+                .description("Bytes stored in the directory, as of the last refresh")
+                .baseUnit("bytes")
+                .tag("dir", "shifted")
+                .register(registry);
+    }
+
+    /**
+     * Recomputes the size of both directories.
+     */
+    @Scheduled(fixedDelayString = "${storage.diskUsageInterval:PT1M}")
+    public void refresh() {
+        measure(Paths.get(storageProperties.getUploadDir()), uploadBytes);
+        measure(Paths.get(storageProperties.getShiftedDir()), shiftedBytes);
+    }
+
+    /**
+     * Sets bytes to the size of the directory, or leaves it as of the last refresh if the directory
+     * cannot be walked, rather than reporting it as empty.
+     */
+    private static void measure(Path dir, AtomicLong bytes) {
+        if (Files.notExists(dir)) {
+            bytes.set(0);
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            bytes.set(paths.mapToLong(path -> {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    return attributes.isRegularFile() ? attributes.size() : 0;
+                } catch (IOException e) {
+                    return 0;   // e.g. deleted meanwhile
+                }
+            }).sum());
+        } catch (IOException | UncheckedIOException e) {
+            // The stream throws UncheckedIOException when a directory is deleted while it is walked
+            LOGGER.warn("Failed to measure {}: {}", dir, e.getMessage());
+        }
+    }
+}
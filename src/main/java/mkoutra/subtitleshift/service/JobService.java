@@ -0,0 +1,567 @@
+package mkoutra.subtitleshift.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import mkoutra.subtitleshift.config.ExecutionProperties;
+import mkoutra.subtitleshift.config.StorageProperties;
+import mkoutra.subtitleshift.exceptions.StorageException;
+import mkoutra.subtitleshift.model.Attachment;
+import mkoutra.subtitleshift.model.JobStatus;
+import mkoutra.subtitleshift.model.TimeTransform;
+import mkoutra.subtitleshift.model.Timestamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Service for shift jobs: files submitted for shifting in the background, whose status is polled
+ * (or posted to a callback URL) and whose result is downloaded once done.
+ * <p>
+ * Jobs run on their own pool of threads, sized apart from the request threads, and wait in a queue
+ * of at most maxQueued jobs. The progress of a running job is the number of cues shifted so far.
+ * <p>
+ * The input and result of every known job are kept out of the retention sweep until the job is forgotten.
+ * <p>
+ * Every job is journaled as a small properties file under "uploadDir/jobs", rewritten on each change
+ * of state. On startup, queued and running jobs are queued again, and finished ones can still be
+ * polled until they are older than storage.retention.maxAge.
+ *
+ * @author Michalis Koutrakis
+ */
+@Service
+public class JobService implements MeterBinder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobService.class);
+
+    /** Directory of uploadDir holding the journal. Left alone by the retention sweep. */
+    public static final String JOBS_DIR = "jobs";
+
+    private final StorageService storageService;
+    private final SubtitleShifter subtitleShifter;
+    private final RetentionService retentionService;
+    private final StorageProperties storageProperties;
+    private final ExecutionProperties.Jobs properties;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService jobExecutor;
+    private final HttpClient httpClient;
+
+    private final Map<UUID, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder done = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * A job and its progress. The state is only changed by the worker running the job.
+     */
+    private static final class Job {
+        final UUID id;
+        final String filename;
+        final String savedName;
+        final Path input;
+        final String timeshift;
+        final String callback;
+        final Instant submitted;
+        final LongAdder cues = new LongAdder();
+
+        volatile JobStatus.State state = JobStatus.State.QUEUED;
+        volatile Instant started;
+        volatile Instant finished;
+        volatile Path result;
+        volatile String hash;
+        volatile String error;
+
+        Job(UUID id, String filename, String savedName, Path input, String timeshift, String callback, Instant submitted) {
+            this.id = id;
+            this.filename = filename;
+            this.savedName = savedName;
+            this.input = input;
+            this.timeshift = timeshift;
+            this.callback = callback;
+            this.submitted = submitted;
+        }
+
+        JobStatus status() {
+            return new JobStatus(id, state, filename, timeshift, cues.sum(), submitted, started, finished, error,
+                    state == JobStatus.State.DONE ? "/jobs/" + id + "/result" : null);
+        }
+    }
+
+    /**
+     * Counts the cues the wrapped transform is applied to, on every path of the engine.
+     */
+    private record ProgressTransform(TimeTransform transform, LongAdder cues) implements TimeTransform {
+
+        @Override
+        public void applyToCue(long cue, long[] times) {
+            transform.applyToCue(cue, times);
+            cues.increment();
+        }
+
+        @Override
+        public boolean isCueIndependent() {
+            return transform.isCueIndependent();
+        }
+
+        @Override
+        public String describe() {
+            return transform.describe();
+        }
+    }
+
+    public JobService(StorageService storageService,
+                      SubtitleShifter subtitleShifter,
+                      RetentionService retentionService,
+                      StorageProperties storageProperties,
+                      ExecutionProperties executionProperties,
+                      ObjectMapper objectMapper) {
+        this.storageService = storageService;
+        this.subtitleShifter = subtitleShifter;
+        this.retentionService = retentionService;
+        this.storageProperties = storageProperties;
+        this.properties = executionProperties.getJobs();
+        this.objectMapper = objectMapper;
+
+        AtomicInteger threads = new AtomicInteger();
+        this.jobExecutor = Executors.newFixedThreadPool(properties.getThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "job-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(properties.getCallbackTimeout())
+                .followRedirects(HttpClient.Redirect.NEVER)     // A redirect would skip the check of the callback host
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();  // Interrupted jobs stay "running" in the journal and run again after a restart
+    }
+
+    /**
+     * Checks a job before it is submitted, e.g. every file of a request before any of them is queued.
+     *
+     * @param file                      The uploaded subtitle file.
+     * @param timeshift                 The time shift in milliseconds.
+     * @param callback                  An http(s) URL the status is posted to once the job finishes, or null.
+     * @throws StorageException         If the file is empty or has an invalid extension.
+     * @throws IllegalArgumentException If the timeshift or the callback URL is invalid.
+     */
+    public void validate(MultipartFile file, String timeshift, String callback) throws StorageException {
+        Timestamp.parseShift(timeshift);
+        if (callback != null) {
+            checkCallback(callback);
+        }
+        storageService.validate(file);
+    }
+
+    /**
+     * Stores an upload and queues a job shifting it.
+     *
+     * @param file                        The uploaded subtitle file.
+     * @param timeshift                   The time shift in milliseconds.
+     * @param callback                    An http(s) URL the status is posted to once the job finishes, or null.
+     * @return                            The status of the queued job.
+     * @throws StorageException           If the file is empty or has an invalid extension.
+     * @throws IllegalArgumentException   If the timeshift or the callback URL is invalid.
+     * @throws RejectedExecutionException If maxQueued jobs are already waiting.
+     * @throws IOException                If the file cannot be stored or the job journaled.
+     */
+    public JobStatus submit(MultipartFile file, String timeshift, String callback) throws StorageException, IOException {
+        validate(file, timeshift, callback);
+        if (queued.incrementAndGet() > properties.getMaxQueued()) {     // Reserves the slot, so that concurrent submits cannot overshoot
+            queued.decrementAndGet();
+            throw new RejectedExecutionException(properties.getMaxQueued() + " jobs are waiting already");
+        }
+
+        boolean enqueued = false;
+        try {
+            Attachment upload = storageService.store(file);
+            Job job = new Job(upload.getUuid(), upload.getOriginalFileName(), upload.getSavedName(), upload.getFilepath(),
+                    timeshift, callback, Instant.now());
+            retentionService.protect(job.input);
+            journal(job);
+            jobs.put(job.id, job);
+            enqueue(job);
+            enqueued = true;
+            LOGGER.debug("Job {} for {} queued.", job.id, job.filename);
+            return job.status();
+        } finally {
+            if (!enqueued) {
+                queued.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @param id The id of the job.
+     * @return   Its status, or empty if there is no such job (anymore).
+     */
+    public Optional<JobStatus> find(UUID id) {
+        return Optional.ofNullable(jobs.get(id)).map(Job::status);
+    }
+
+    /**
+     * @param id The id of the job.
+     * @return   The shifted file of a finished job, or empty if the job is not done or its file was deleted.
+     */
+    public Optional<Path> result(UUID id) {
+        Job job = jobs.get(id);
+        if (job == null || job.state != JobStatus.State.DONE || Files.notExists(job.result)) {
+            return Optional.empty();
+        }
+        return Optional.of(job.result);
+    }
+
+    /**
+     * @param id The id of the job.
+     * @return   The SHA-256 of the shifted file of a finished job in hex, e.g. for an ETag,
+     *           or empty if the job is not done.
+     */
+    public Optional<String> resultHash(UUID id) {
+        Job job = jobs.get(id);
+        return job == null || job.state != JobStatus.State.DONE ? Optional.empty() : Optional.ofNullable(job.hash);
+    }
+
+    /**
+     * @param id The id of the job.
+     * @return   The stored upload of the job, or empty if there is no such job.
+     */
+    public Optional<Path> input(UUID id) {
+        return Optional.ofNullable(jobs.get(id)).map(job -> job.input);
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getRunning() {
+        return running.get();
+    }
+
+    /**
+     * Loads the journal: jobs that were queued or running when the application stopped are queued again.
+     */
+    @PostConstruct
+    public void recover() throws IOException {
+        Path dir = journalDir();
+        if (Files.notExists(dir)) {
+            return;
+        }
+        int requeued = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.properties")) {
+            for (Path file : files) {
+                Job job;
+                try {
+                    job = load(file);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.warn("Skipping unreadable job {}: {}", file.getFileName(), e.getMessage());
+                    continue;
+                }
+                if (jobs.putIfAbsent(job.id, job) != null) {
+                    continue;
+                }
+                retentionService.protect(job.input);
+                if (job.state.isFinished()) {
+                    if (job.result != null) {
+                        retentionService.protect(job.result);
+                    }
+                    continue;
+                }
+                job.state = JobStatus.State.QUEUED;
+                job.started = null;
+                job.finished = null;
+                job.result = null;
+                job.hash = null;
+                job.error = null;
+                job.cues.reset();                   // Shifted again from the start
+                queued.incrementAndGet();
+                enqueue(job);
+                requeued++;
+            }
+        }
+        if (requeued > 0) {
+            LOGGER.info("Queued {} jobs left over from the last run.", requeued);
+        }
+    }
+
+    /**
+     * Forgets finished jobs older than storage.retention.maxAge and hands their files back to the retention sweep.
+     */
+    @Scheduled(fixedDelayString = "${storage.retention.interval:PT10M}")
+    public void prune() {
+        Instant expiredBefore = Instant.now().minus(storageProperties.getRetention().getMaxAge());
+        jobs.values().removeIf(job -> {
+            if (!job.state.isFinished() || job.finished.isAfter(expiredBefore)) {
+                return false;
+            }
+            retentionService.release(job.input);
+            if (job.result != null) {
+                retentionService.release(job.result);
+            }
+            try {
+                Files.deleteIfExists(journalPath(job.id));
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete job {}: {}", job.id, e.getMessage());
+            }
+            return true;
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("subtitle.jobs.queued", this, JobService::getQueued)
+                .description("Jobs waiting for a worker")
+                .register(registry);
+        Gauge.builder("subtitle.jobs.running", this, JobService::getRunning)
+                .description("Jobs being shifted")
+                .register(registry);
+        FunctionCounter.builder("subtitle.jobs.finished", done, LongAdder::sum)
+                .description("Jobs finished")
+                .tag("result", "done")
+                .register(registry);
+        FunctionCounter.builder("subtitle.jobs.finished", failed, LongAdder::sum)
+                .description("Jobs finished")
+                .tag("result", "failed")
+                .register(registry);
+    }
+
+    /**
+     * Hands the job to a worker. Its slot in the queue must have been counted in queued already.
+     */
+    private void enqueue(Job job) {
+        jobExecutor.execute(() -> {
+            queued.decrementAndGet();
+            running.incrementAndGet();
+            try {
+                run(job);
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+    }
+
+    private void run(Job job) {
+        job.state = JobStatus.State.RUNNING;
+        job.started = Instant.now();
+        JobStatus.State state;
+        try {
+            journal(job);
+            String extension = job.filename.substring(job.filename.lastIndexOf('.')).toLowerCase(Locale.ROOT);
+            Attachment upload = new Attachment(job.filename, job.id, job.savedName, extension, job.input);
+            TimeTransform transform = new ProgressTransform(TimeTransform.offset(Timestamp.parseShift(job.timeshift)), job.cues);
+
+            job.result = subtitleShifter.applyShift(upload, transform).getFilepath();
+            retentionService.protect(job.result);
+            job.hash = sha256(job.result);
+            state = JobStatus.State.DONE;
+            done.increment();
+        } catch (Exception e) {
+            LOGGER.error("Job {} for {} failed: {}", job.id, job.filename, e.getMessage());
+            job.error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            state = JobStatus.State.FAILED;
+            failed.increment();
+        }
+        job.finished = Instant.now();
+        job.state = state;                  // Published last: a finished job always has its finish time, e.g. for prune()
+
+        try {
+            journal(job);
+        } catch (IOException e) {
+            LOGGER.error("Failed to journal job {}: {}", job.id, e.getMessage());
+        }
+        if (job.callback != null) {
+            callback(job);
+        }
+    }
+
+    /**
+     * Posts the status of a finished job to its callback URL, without waiting for the answer.
+     * <p>
+     * The host is checked again right before sending, since it may resolve to another address than it did
+     * when the job was submitted (DNS rebinding). The client then resolves it through the same JVM address
+     * cache (networkaddress.cache.ttl, 30 seconds by default), so it connects to an address that was just checked.
+     * Redirects are never followed.
+     */
+    private void callback(Job job) {
+        try {
+            checkCallback(job.callback);
+            HttpRequest request = HttpRequest.newBuilder(URI.create(job.callback))
+                    .timeout(properties.getCallbackTimeout())
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(job.status())))
+                    .build();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, e) -> {
+                        if (e != null || response.statusCode() / 100 != 2) {
+                            LOGGER.warn("Callback of job {} to {} failed: {}", job.id, job.callback,
+                                    e != null ? e.getMessage() : "status " + response.statusCode());
+                        }
+                    });
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.warn("Callback of job {} to {} failed: {}", job.id, job.callback, e.getMessage());
+        }
+    }
+
+    /**
+     * Accepts http(s) URLs of the hosts in callbackHosts or, without such a list, of any host that only
+     * resolves to public addresses: callbacks must not reach the loopback interface or the internal network.
+     */
+    private void checkCallback(String callback) {
+        URI uri = URI.create(callback);
+        if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null) {
+            throw new IllegalArgumentException("Invalid callback URL: " + callback);
+        }
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        if (!properties.getCallbackHosts().isEmpty()) {
+            if (properties.getCallbackHosts().stream().noneMatch(host::equalsIgnoreCase)) {
+                throw new IllegalArgumentException("Callback host not allowed: " + host);
+            }
+            return;
+        }
+
+        InetAddress[] addresses;
+        try {
+            addresses = InetAddress.getAllByName(host);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Unknown callback host: " + host);
+        }
+        for (InetAddress address : addresses) {
+            if (!isPublic(address)) {
+                throw new IllegalArgumentException("Callback host " + host + " is not public: " + address.getHostAddress());
+            }
+        }
+    }
+
+    static boolean isPublic(InetAddress address) {
+        if (address.isAnyLocalAddress() || address.isLoopbackAddress() || address.isLinkLocalAddress()
+                || address.isSiteLocalAddress() || address.isMulticastAddress()) {
+            return false;
+        }
+        byte[] bytes = address.getAddress();
+        if (bytes.length == 16) {
+            return (bytes[0] & 0xFE) != 0xFC;                           // IPv6 unique local, fc00::/7
+        }
+        return !((bytes[0] & 0xFF) == 100 && (bytes[1] & 0xC0) == 64)   // Carrier-grade NAT, 100.64.0.0/10
+                && (bytes[0] & 0xFF) != 0;                              // "This" network, 0.0.0.0/8
+    }
+
+    /**
+     * Writes the job to a temporary file that replaces its journal file, so a crash never leaves it half-written.
+     */
+    private void journal(Job job) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("filename", job.filename);
+        properties.setProperty("savedName", job.savedName);
+        properties.setProperty("input", job.input.toString());
+        properties.setProperty("timeshift", job.timeshift);
+        properties.setProperty("submitted", job.submitted.toString());
+        properties.setProperty("state", job.state.name());
+        properties.setProperty("cues", String.valueOf(job.cues.sum()));
+        setIfPresent(properties, "callback", job.callback);
+        setIfPresent(properties, "started", job.started);
+        setIfPresent(properties, "finished", job.finished);
+        setIfPresent(properties, "result", job.result);
+        setIfPresent(properties, "hash", job.hash);
+        setIfPresent(properties, "error", job.error);
+
+        Path journalPath = journalPath(job.id);
+        Files.createDirectories(journalPath.getParent());
+        Path temp = journalPath.resolveSibling(job.id + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        Files.move(temp, journalPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void setIfPresent(Properties properties, String key, Object value) {
+        if (value != null) {
+            properties.setProperty(key, value.toString());
+        }
+    }
+
+    private static Job load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        String name = file.getFileName().toString();
+        Job job = new Job(UUID.fromString(name.substring(0, name.length() - ".properties".length())),
+                properties.getProperty("filename"), properties.getProperty("savedName"),
+                Paths.get(properties.getProperty("input")), properties.getProperty("timeshift"),
+                properties.getProperty("callback"), Instant.parse(properties.getProperty("submitted")));
+        job.state = JobStatus.State.valueOf(properties.getProperty("state"));
+        job.cues.add(Long.parseLong(properties.getProperty("cues", "0")));
+        job.started = Optional.ofNullable(properties.getProperty("started")).map(Instant::parse).orElse(null);
+        job.finished = Optional.ofNullable(properties.getProperty("finished")).map(Instant::parse).orElse(null);
+        job.result = Optional.ofNullable(properties.getProperty("result")).map(Paths::get).orElse(null);
+        job.hash = properties.getProperty("hash");
+        job.error = properties.getProperty("error");
+        return job;
+    }
+
+    /**
+     * Hashes a shifted file once, when its job finishes, instead of on every download.
+     */
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);     // Every JVM must support SHA-256
+        }
+        try (InputStream inputStream = new DigestInputStream(Files.newInputStream(file), digest)) {
+            inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private Path journalDir() {
+        return Paths.get(storageProperties.getUploadDir(), JOBS_DIR);
+    }
+
+    private Path journalPath(UUID id) {
+        return journalDir().resolve(id + ".properties");
+    }
+}
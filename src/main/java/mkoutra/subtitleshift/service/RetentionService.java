@@ -0,0 +1,223 @@
+package mkoutra.subtitleshift.service;
+
+import mkoutra.subtitleshift.config.StorageProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Service for deleting old files from uploadDir and shiftedDir.
+ * <p>
+ * A scheduled sweep first deletes files older than maxAge, then the oldest remaining files
+ * until both directories together fit in maxTotalBytes. Files can also be deleted right after
+ * their response has been streamed. The result cache under shiftedDir/cache, the store spool
+ * under uploadDir/spool and the job journal under uploadDir/jobs are left alone, and so are the
+ * files other services still need, registered with {@link #protect}.
+ * <p>
+ * Resumable uploads under uploadDir/partial are never evicted for size, as they are still being
+ * received. An upload is deleted as a whole (its part and properties files) once none of its files
+ * has changed for maxAge.
+ *
+ * @author Michalis Koutrakis
+ */
+@Service
+public class RetentionService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetentionService.class);
+
+    private final StorageProperties storageProperties;
+    private final StorageProperties.Retention properties;
+
+    /** Files in use elsewhere, e.g. by a job, as absolute normalized paths. */
+    private final Set<Path> protectedPaths = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    private final AtomicLong reclaimedFiles = new AtomicLong();
+
+    private record StoredFile(Path path, long size, long lastModified) {
+    }
+
+    public RetentionService(StorageProperties storageProperties) {
+        this.storageProperties = storageProperties;
+        this.properties = storageProperties.getRetention();
+    }
+
+    /**
+     * Deletes expired files, then the oldest files while over the size limit.
+     */
+    @Scheduled(fixedDelayString = "${storage.retention.interval:PT10M}")
+    public void sweep() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        List<StoredFile> files = new ArrayList<>();
+        collect(Paths.get(storageProperties.getUploadDir()), files);
+        collect(Paths.get(storageProperties.getShiftedDir()), files);
+        files.sort(Comparator.comparingLong(StoredFile::lastModified));
+
+        long expiredBefore = System.currentTimeMillis() - properties.getMaxAge().toMillis();
+        long total = files.stream().mapToLong(StoredFile::size).sum();
+        long bytesBefore = reclaimedBytes.get();
+        long filesBefore = reclaimedFiles.get();
+
+        sweepPartialUploads(expiredBefore);
+
+        for (StoredFile file : files) {
+            if (total <= properties.getMaxTotalBytes() && file.lastModified() > expiredBefore) {
+                break;  // Files are sorted oldest first, so every remaining file is kept
+            }
+            if (delete(file.path(), file.size())) {
+                total -= file.size();
+            }
+        }
+
+        LOGGER.info("Retention sweep reclaimed {} files ({} bytes), {} bytes remain.",
+                reclaimedFiles.get() - filesBefore, reclaimedBytes.get() - bytesBefore, total);
+    }
+
+    /**
+     * Deletes files whose response has been fully streamed, if deleteAfterResponse is enabled.
+     *
+     * @param paths The stored files to delete.
+     */
+    public void afterResponse(Path... paths) {
+        if (!properties.isDeleteAfterResponse()) {
+            return;
+        }
+        for (Path path : paths) {
+            try {
+                delete(path, Files.size(path));
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete {} after response: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return True if files are deleted once their response has been streamed, so they cannot be downloaded again.
+     */
+    public boolean isDeleteAfterResponse() {
+        return properties.isDeleteAfterResponse();
+    }
+
+    /**
+     * Keeps files out of the sweep until they are released, e.g. the input and result of a job that can
+     * still be downloaded. {@link #afterResponse} deletes them all the same.
+     *
+     * @param paths The files to keep.
+     */
+    public void protect(Path... paths) {
+        for (Path path : paths) {
+            protectedPaths.add(path.toAbsolutePath().normalize());
+        }
+    }
+
+    /**
+     * @param paths Files passed to {@link #protect} that the sweep may delete again.
+     */
+    public void release(Path... paths) {
+        for (Path path : paths) {
+            protectedPaths.remove(path.toAbsolutePath().normalize());
+        }
+    }
+
+    public long getReclaimedBytes() {
+        return reclaimedBytes.get();
+    }
+
+    public long getReclaimedFiles() {
+        return reclaimedFiles.get();
+    }
+
+    private void collect(Path dir, List<StoredFile> files) {
+        if (Files.notExists(dir)) {
+            return;
+        }
+        Path cacheDir = dir.resolve(ShiftResultCache.CACHE_DIR);
+        Path spoolDir = dir.resolve(StorageService.SPOOL_DIR);
+        Path jobsDir = dir.resolve(JobService.JOBS_DIR);
+        Path partialDir = dir.resolve(ChunkedUploadService.PARTIAL_DIR);
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.filter(path -> !path.startsWith(cacheDir) && !path.startsWith(spoolDir) && !path.startsWith(jobsDir)
+                            && !path.startsWith(partialDir))
+                    .filter(path -> !protectedPaths.contains(path.toAbsolutePath().normalize()))
+                    .forEach(path -> {
+                        try {
+                            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                            if (attributes.isRegularFile()) {
+                                files.add(new StoredFile(path, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                            }
+                        } catch (IOException e) {
+                            LOGGER.debug("Skipping {}: {}", path, e.getMessage());  // e.g. deleted meanwhile
+                        }
+                    });
+        } catch (IOException | UncheckedIOException e) {
+            // The stream throws UncheckedIOException when a directory is deleted while it is walked
+            LOGGER.error("Failed to list {}: {}", dir, e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the resumable uploads whose files (named after the upload id) have all expired.
+     */
+    private void sweepPartialUploads(long expiredBefore) {
+        Path partialDir = Paths.get(storageProperties.getUploadDir(), ChunkedUploadService.PARTIAL_DIR);
+        if (Files.notExists(partialDir)) {
+            return;
+        }
+        Map<String, List<StoredFile>> uploads = new HashMap<>();
+        try (Stream<Path> paths = Files.list(partialDir)) {
+            paths.forEach(path -> {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    String name = path.getFileName().toString();
+                    String id = name.indexOf('.') < 0 ? name : name.substring(0, name.indexOf('.'));
+                    if (attributes.isRegularFile()) {
+                        uploads.computeIfAbsent(id, key -> new ArrayList<>())
+                                .add(new StoredFile(path, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    }
+                } catch (IOException e) {
+                    LOGGER.debug("Skipping {}: {}", path, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.error("Failed to list {}: {}", partialDir, e.getMessage());
+            return;
+        }
+        for (List<StoredFile> upload : uploads.values()) {
+            if (upload.stream().allMatch(file -> file.lastModified() <= expiredBefore)) {
+                upload.forEach(file -> delete(file.path(), file.size()));
+            }
+        }
+    }
+
+    private boolean delete(Path path, long size) {
+        try {
+            if (Files.deleteIfExists(path)) {
+                reclaimedBytes.addAndGet(size);
+                reclaimedFiles.incrementAndGet();
+                return true;
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete {}: {}", path, e.getMessage());
+        }
+        return false;
+    }
+}
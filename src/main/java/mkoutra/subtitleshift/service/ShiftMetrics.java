@@ -0,0 +1,136 @@
+package mkoutra.subtitleshift.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import mkoutra.subtitleshift.engine.RepairReport;
+import mkoutra.subtitleshift.engine.ShiftCounts;
+import mkoutra.subtitleshift.engine.SubtitleEngine;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Micrometer meters of the upload → shift → download path.
+ * <p>
+ * Timers cover storing, charset detection, shifting (tagged with the byte, parallel, char or stream path)
+ * and response streaming, so latency can be attributed to disk, Tika or parsing.
+ *
+ * @author Michalis Koutrakis
+ */
+@Component
+public class ShiftMetrics {
+
+    public static final String PATH_BYTE = SubtitleEngine.PATH_BYTE;
+    public static final String PATH_PARALLEL = SubtitleEngine.PATH_PARALLEL;
+    public static final String PATH_CHAR = SubtitleEngine.PATH_CHAR;
+    public static final String PATH_STREAM = "stream";
+    public static final String PATH_REPAIR = "repair";
+
+    public static final String REJECTED_EXTENSION = "extension";
+    public static final String REJECTED_TIMESHIFT = "timeshift";
+
+    private final MeterRegistry registry;
+    private final Timer storeTimer;
+    private final Timer charsetTimer;
+    private final Timer responseTimer;
+    private final DistributionSummary fileSize;
+    private final DistributionSummary cues;
+    private final Counter lines;
+    private final Map<String, Timer> shiftTimers;
+
+    public ShiftMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.storeTimer = Timer.builder("subtitle.store")
+                .description("Time to store an upload in uploadDir")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.charsetTimer = Timer.builder("subtitle.charset.detection")
+                .description("Time to detect the charset of a file")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.responseTimer = Timer.builder("subtitle.response.stream")
+                .description("Time to stream a shifted file to the client")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.fileSize = DistributionSummary.builder("subtitle.file.size")
+                .description("Size of the shifted files")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.cues = DistributionSummary.builder("subtitle.cues")
+                .description("Number of cues of the shifted files")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.lines = Counter.builder("subtitle.lines")
+                .description("Lines processed by the shifter, rate() gives lines per second")
+                .register(registry);
+        this.shiftTimers = Stream.of(PATH_BYTE, PATH_PARALLEL, PATH_CHAR, PATH_STREAM, PATH_REPAIR)
+                .collect(Collectors.toMap(Function.identity(), path -> Timer.builder("subtitle.shift")
+                        .description("Time to shift a file")
+                        .tag("path", path)
+                        .publishPercentileHistogram()
+                        .register(registry)));
+    }
+
+    public Timer storeTimer() {
+        return storeTimer;
+    }
+
+    public Timer charsetTimer() {
+        return charsetTimer;
+    }
+
+    public Timer responseTimer() {
+        return responseTimer;
+    }
+
+    /**
+     * @param path One of PATH_BYTE, PATH_PARALLEL, PATH_CHAR, PATH_STREAM or PATH_REPAIR.
+     */
+    public Timer shiftTimer(String path) {
+        return shiftTimers.get(path);
+    }
+
+    /**
+     * Records the size and the line/cue counts of a shifted file.
+     */
+    void recordFile(long bytes, ShiftCounts counts) {
+        fileSize.record(bytes);
+        cues.record(counts.cues());
+        lines.increment(counts.lines());
+    }
+
+    /**
+     * Counts what the repair stage found, in subtitle.repair.issues tagged by kind.
+     */
+    void recordRepair(RepairReport report) {
+        repairIssue("clamped", report.clamped());
+        repairIssue("dropped", report.dropped());
+        repairIssue("renumbered", report.renumbered());
+        repairIssue("overlaps", report.overlaps());
+        repairIssue("outOfOrder", report.outOfOrder());
+        repairIssue("malformed", report.malformed());
+    }
+
+    private void repairIssue(String kind, long count) {
+        if (count > 0) {
+            registry.counter("subtitle.repair.issues", "kind", kind).increment(count);
+        }
+    }
+
+    /**
+     * @param reason One of REJECTED_EXTENSION or REJECTED_TIMESHIFT.
+     */
+    public void rejected(String reason) {
+        registry.counter("subtitle.rejected", "reason", reason).increment();
+    }
+
+    public void cacheLookup(boolean hit) {
+        registry.counter("subtitle.cache.lookups", "result", hit ? "hit" : "miss").increment();
+    }
+}
@@ -0,0 +1,351 @@
+package mkoutra.subtitleshift.service;
+
+import mkoutra.subtitleshift.config.StorageProperties;
+import mkoutra.subtitleshift.model.TimeTransform;
+import mkoutra.subtitleshift.model.Timestamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content-addressed cache of shifted subtitle files.
+ * <p>
+ * Results are keyed on the SHA-256 of the uploaded file plus the timeshift, so the same file shifted
+ * by the same amount is only processed once. Entries live in a size-bounded in-memory LRU tier and
+ * in a size-bounded disk tier under {@code shiftedDir/cache}; both tiers expire entries after a TTL.
+ * The disk tier is gzip-compressed, which shrinks subtitle text 3-5 times, and its files can be sent
+ * as they are to clients accepting gzip.
+ *
+ * @author Michalis Koutrakis
+ */
+@Service
+public class ShiftResultCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShiftResultCache.class);
+
+    static final String CACHE_DIR = "cache";
+    private static final String CACHE_FILE_SUFFIX = ".shifted.gz";
+    private static final String UNCOMPRESSED_CACHE_FILE_SUFFIX = ".shifted"; // Written before the disk tier was compressed
+
+    private final StorageProperties.Cache properties;
+    private final Path cacheDir;
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private final AtomicLong diskBytes = new AtomicLong(-1);   // -1 until the disk tier is scanned
+
+    private record Entry(byte[] bytes, long expiresAt) {
+    }
+
+    public ShiftResultCache(StorageProperties storageProperties) {
+        this.properties = storageProperties.getCache();
+        this.cacheDir = Paths.get(storageProperties.getShiftedDir(), CACHE_DIR);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Computes the cache key of an upload shifted by the given timeshift.
+     *
+     * @param file         The uploaded subtitle file.
+     * @param timeshift    The time shift in milliseconds.
+     * @return             The cache key.
+     * @throws IOException If the upload cannot be read.
+     */
+    public String key(MultipartFile file, String timeshift) throws IOException {
+        return key(file, TimeTransform.offset(Timestamp.parseShift(timeshift)));
+    }
+
+    /**
+     * Computes the cache key of an upload mapped by the given transform.
+     *
+     * @param file         The uploaded subtitle file.
+     * @param transform    The transform applied to the file.
+     * @return             The cache key.
+     * @throws IOException If the upload cannot be read.
+     */
+    public String key(MultipartFile file, TimeTransform transform) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream inputStream = new DigestInputStream(file.getInputStream(), digest)) {
+            inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest()) + "_" + transform.describe();
+    }
+
+    /**
+     * Looks up a shifted file, first in memory and then on disk.
+     * Disk hits are promoted to the memory tier.
+     *
+     * @param key The key returned by {@link #key(MultipartFile, String)}.
+     * @return    The shifted file content, if cached and not expired.
+     */
+    public Optional<byte[]> get(String key) {
+        if (!properties.isEnabled()) {
+            return Optional.empty();
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (entry.expiresAt() > now) {
+                    return Optional.of(entry.bytes());
+                }
+                removeFromMemory(key);
+            }
+        }
+
+        Path path = diskPath(key);
+        try {
+            if (Files.notExists(path)) {
+                return Optional.empty();
+            }
+            if (Files.getLastModifiedTime(path).toMillis() + properties.getTtl().toMillis() <= now) {
+                deleteFromDisk(path);
+                return Optional.empty();
+            }
+            byte[] bytes;
+            try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(path))) {
+                bytes = inputStream.readAllBytes();
+            }
+            putInMemory(key, bytes);
+            return Optional.of(bytes);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read cached result {}: {}", path, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Looks up the gzip-compressed disk entry of a shifted file, to send it with "Content-Encoding: gzip".
+     *
+     * @param key The key returned by {@link #key(MultipartFile, String)}.
+     * @return    The path of the compressed file, if cached and not expired.
+     */
+    public Optional<Path> getCompressed(String key) {
+        if (!properties.isEnabled()) {
+            return Optional.empty();
+        }
+        Path path = diskPath(key);
+        try {
+            if (Files.notExists(path)
+                    || Files.getLastModifiedTime(path).toMillis() + properties.getTtl().toMillis() <= System.currentTimeMillis()) {
+                return Optional.empty();
+            }
+            return Optional.of(path);
+        } catch (IOException e) {
+            return Optional.empty();    // Deleted meanwhile
+        }
+    }
+
+    /**
+     * Stores a shifted file in both tiers. Results larger than maxEntryBytes are not cached.
+     *
+     * @param key   The key returned by {@link #key(MultipartFile, String)}.
+     * @param bytes The shifted file content.
+     */
+    public void put(String key, byte[] bytes) {
+        if (!properties.isEnabled() || bytes.length > properties.getMaxEntryBytes()) {
+            return;
+        }
+        putInMemory(key, bytes);
+        putOnDisk(key, bytes);
+    }
+
+    /**
+     * Stores an already shifted file in both tiers.
+     *
+     * @param key          The key returned by {@link #key(MultipartFile, String)}.
+     * @param shiftedFile  The path of the shifted file.
+     * @throws IOException If the file cannot be read.
+     */
+    public void put(String key, Path shiftedFile) throws IOException {
+        if (!properties.isEnabled() || Files.size(shiftedFile) > properties.getMaxEntryBytes()) {
+            return;
+        }
+        put(key, Files.readAllBytes(shiftedFile));
+    }
+
+    /**
+     * Wraps a stream so that everything written to it is also captured and cached under
+     * the given key when the wrapper is closed. Close it only once the whole result has been
+     * written, so that failed shifts are never cached. The wrapped stream itself is not closed.
+     * Results growing beyond maxEntryBytes stop being captured and are not cached.
+     *
+     * @param key          The key returned by {@link #key(MultipartFile, String)}.
+     * @param outputStream The stream receiving the shifted file.
+     * @return             The capturing stream.
+     */
+    public OutputStream capture(String key, OutputStream outputStream) {
+        return new FilterOutputStream(outputStream) {
+            private ByteArrayOutputStream buffer = properties.isEnabled() ? new ByteArrayOutputStream() : null;
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                if (capturing(1)) {
+                    buffer.write(b);
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                if (capturing(len)) {
+                    buffer.write(b, off, len);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.flush();
+                if (buffer != null) {
+                    put(key, buffer.toByteArray());
+                    buffer = null;
+                }
+            }
+
+            private boolean capturing(int len) {
+                if (buffer != null && buffer.size() + len > properties.getMaxEntryBytes()) {
+                    buffer = null;
+                }
+                return buffer != null;
+            }
+        };
+    }
+
+    private synchronized void putInMemory(String key, byte[] bytes) {
+        if (bytes.length > properties.getMemoryMaxBytes()) {
+            return;
+        }
+        removeFromMemory(key);
+        memory.put(key, new Entry(bytes, System.currentTimeMillis() + properties.getTtl().toMillis()));
+        memoryBytes += bytes.length;
+
+        // Evict the least recently used entries
+        Iterator<Map.Entry<String, Entry>> it = memory.entrySet().iterator();
+        while (memoryBytes > properties.getMemoryMaxBytes() && it.hasNext()) {
+            memoryBytes -= it.next().getValue().bytes().length;
+            it.remove();
+        }
+    }
+
+    private void removeFromMemory(String key) {
+        Entry removed = memory.remove(key);
+        if (removed != null) {
+            memoryBytes -= removed.bytes().length;
+        }
+    }
+
+    private void putOnDisk(String key, byte[] bytes) {
+        Path path = diskPath(key);
+        try {
+            Files.createDirectories(cacheDir);
+            long currentDiskBytes = diskBytes();
+            Path tmp = Files.createTempFile(cacheDir, key, ".tmp");
+            try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                outputStream.write(bytes);
+            }
+            long size = Files.size(tmp);
+            long previousSize = Files.exists(path) ? Files.size(path) : 0;
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            if (currentDiskBytes + size - previousSize > properties.getDiskMaxBytes()) {
+                evictFromDisk();
+            } else {
+                diskBytes.addAndGet(size - previousSize);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to cache result {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Rescans the disk tier, dropping expired entries and then the oldest ones until
+     * the tier fits in diskMaxBytes. Uncompressed entries of older versions are no longer read,
+     * but are still counted and evicted here, since the retention sweep skips the cache directory.
+     */
+    private synchronized void evictFromDisk() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(cacheDir)) {
+            files = stream.filter(p -> p.toString().endsWith(CACHE_FILE_SUFFIX)
+                            || p.toString().endsWith(UNCOMPRESSED_CACHE_FILE_SUFFIX))
+                    .sorted(Comparator.comparing(ShiftResultCache::lastModified))
+                    .toList();
+        }
+
+        long expiredBefore = System.currentTimeMillis() - properties.getTtl().toMillis();
+        long total = 0;
+        for (Path file : files) {
+            total += Files.size(file);
+        }
+        for (Path file : files) {
+            if (total <= properties.getDiskMaxBytes() && lastModified(file).toMillis() > expiredBefore) {
+                break;
+            }
+            total -= Files.size(file);
+            Files.deleteIfExists(file);
+        }
+        diskBytes.set(total);
+    }
+
+    private long diskBytes() throws IOException {
+        if (diskBytes.get() < 0) {
+            evictFromDisk();
+        }
+        return diskBytes.get();
+    }
+
+    private void deleteFromDisk(Path path) throws IOException {
+        long size = Files.size(path);
+        if (Files.deleteIfExists(path) && diskBytes.get() >= 0) {
+            diskBytes.addAndGet(-size);
+        }
+    }
+
+    private Path diskPath(String key) {
+        return cacheDir.resolve(key + CACHE_FILE_SUFFIX);
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);     // Every JVM must support SHA-256
+        }
+    }
+}
@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import mkoutra.subtitleshift.config.StorageProperties;
 import mkoutra.subtitleshift.exceptions.StorageException;
 import mkoutra.subtitleshift.model.Attachment;
+import mkoutra.subtitleshift.store.AsyncStoreWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -13,7 +14,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service for managing storage paths for subtitle files.
@@ -25,46 +28,102 @@ import java.util.UUID;
 public class StorageService {
     private static final Logger LOGGER = LoggerFactory.getLogger(StorageService.class);
 
+    private static final int SHARD_NAME_LENGTH = 2;
+
+    /** Directory of uploadDir where uploads wait to be written to the store. Left alone by the retention sweep. */
+    public static final String SPOOL_DIR = "spool";
+
+    /** Prefix of the store keys of uploaded files. */
+    public static final String ORIGINALS_PREFIX = "originals/";
+
     private final StorageProperties storageProperties;
+    private final ShiftMetrics metrics;
+    private final AsyncStoreWriter storeWriter;
 
     public Attachment store(MultipartFile file) throws StorageException, IOException {
+        String extension = validate(file);
+        String originalFileName = file.getOriginalFilename();
+
+        UUID uuid = UUID.randomUUID();
+        String savedName = uuid.toString().substring(0, 10) + originalFileName;
+        Path filepath = shard(Paths.get(storageProperties.getUploadDir()), savedName).resolve(savedName);
+
+        long start = System.nanoTime();
+        Files.createDirectories(filepath.getParent());  // Create the parent directories if they do not exist.
+        file.transferTo(filepath);                      // Streamed (or moved) from the spooled part, never held on the heap
+        metrics.storeTimer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        Attachment attachment = new Attachment(originalFileName, uuid, savedName, extension, filepath);
+        if (storageProperties.isPersist()) {
+            persist(attachment);
+        }
+        return attachment;
+    }
+
+    /**
+     * Queues a stored upload to be copied to the store, under "originals/" and its saved name.
+     * Only links the file into the spool, the copy itself is made in the background.
+     *
+     * @param attachment   The stored upload.
+     * @throws IOException If the file cannot be spooled.
+     */
+    public void persist(Attachment attachment) throws IOException {
+        storeWriter.submit(ORIGINALS_PREFIX + attachment.getSavedName(), attachment.getFilepath());
+    }
+
+    /**
+     * Checks that the uploaded file is non-empty and has one of the valid extensions.
+     *
+     * @param file              The uploaded subtitle file.
+     * @return                  The extension of the uploaded file.
+     * @throws StorageException If the file is empty or its extension is not accepted.
+     */
+    public String validate(MultipartFile file) throws StorageException {
         if (file == null || file.isEmpty()) {
             LOGGER.error("Failed to store null or empty file.");
             throw new StorageException("Failed to store uploaded file.");
         }
 
-        String originalFileName = file.getOriginalFilename();
-        String extension = originalFileName.substring(originalFileName.lastIndexOf("."));
+        return validateFilename(file.getOriginalFilename());
+    }
+
+    /**
+     * Checks that a filename has one of the valid extensions.
+     *
+     * @param originalFileName  The name of the subtitle file.
+     * @return                  The extension of the file.
+     * @throws StorageException If the extension is not accepted.
+     */
+    public String validateFilename(String originalFileName) throws StorageException {
+        if (originalFileName == null) {
+            throw new StorageException("Missing filename.");
+        }
+        String extension = originalFileName.lastIndexOf(".") < 0
+                ? ""
+                : originalFileName.substring(originalFileName.lastIndexOf(".")).toLowerCase(Locale.ROOT);
 
-        if (!extension.equals(storageProperties.getValidExtension())) {
+        if (!storageProperties.getValidExtensions().contains(extension)) {
+            metrics.rejected(ShiftMetrics.REJECTED_EXTENSION);
             LOGGER.error("Failed to save file with invalid extension: {}", extension);
             throw new StorageException("Invalid file extension: " + originalFileName +
-                    ". Required extension: " + storageProperties.getValidExtension());
+                    ". Accepted extensions: " + String.join(", ", storageProperties.getValidExtensions()));
         }
-
-        UUID uuid = UUID.randomUUID();
-        String savedName = uuid.toString().substring(0, 10) + originalFileName;
-        Path filepath = Paths.get(storageProperties.getUploadDir(), savedName);
-
-        Files.createDirectories(filepath.getParent());  // Create the parent directories if they do not exist.
-        Files.write(filepath, file.getBytes());         // Save the file to the target filepath
-
-        return new Attachment(originalFileName, uuid, savedName, extension, filepath);
+        return extension;
     }
 
     /**
      * Returns the output file path where the shifted subtitles will be saved.
-     * Creates the output directory if it does not exist.
+     * Creates the output directory (and its shard directories) if it does not exist.
      *
      * @param inputFilename The name of the input subtitle file.
-     * @param timeshift     The time shift applied to the file.
+     * @param timeshift     The time shift applied to the file, or the description of its transform.
      * @return              The path to the output file.
      * @throws IOException  If an error occurs while accessing the directory.
      */
     public Path getOutputPath(String inputFilename, String timeshift) throws IOException {
-        Path outputDir = Paths.get(storageProperties.getShiftedDir());
+        Path outputDir = shard(Paths.get(storageProperties.getShiftedDir()), inputFilename);
         if (Files.notExists(outputDir)) {
-            Files.createDirectory(outputDir);
+            Files.createDirectories(outputDir);
             LOGGER.debug("Output dir: {} created successfully.", outputDir);
         }
         String outputFilename = createOutputFilename(inputFilename, timeshift);
@@ -81,27 +140,48 @@ public class StorageService {
      * @throws IOException  If an error occurs while accessing the directory.
      */
     public Path getInputPath(String inputFilename) throws IOException {
-        Path inputDir = Paths.get(storageProperties.getUploadDir());
+        Path inputDir = shard(Paths.get(storageProperties.getUploadDir()), inputFilename);
         if (Files.notExists(inputDir)) {
-            Files.createDirectory(inputDir);
+            Files.createDirectories(inputDir);
             LOGGER.debug("Input dir: {} created successfully.", inputDir);
         }
         Path inputPath = inputDir.resolve(inputFilename);
         return inputPath;
     }
 
+    /**
+     * Returns the shard directory of a file, e.g. "uploads/3f/a2" for "3fa2c9e1-..." with two shard levels.
+     * Saved names start with random UUID characters, so files spread evenly over the shards
+     * and no directory grows too large.
+     *
+     * @param dir      The base directory.
+     * @param filename The name of the file.
+     * @return         The directory holding the file.
+     */
+    private Path shard(Path dir, String filename) {
+        Path shardDir = dir;
+        for (int level = 0; level < storageProperties.getShardLevels(); level++) {
+            int start = level * SHARD_NAME_LENGTH;
+            if (filename.length() < start + SHARD_NAME_LENGTH) {
+                break;
+            }
+            shardDir = shardDir.resolve(filename.substring(start, start + SHARD_NAME_LENGTH));
+        }
+        return shardDir;
+    }
+
     /**
      * Generates a filename for the shifted subtitle file
      * based on the original filename and time shift.
      *
      * @param inputFilename The original subtitle filename.
-     * @param timeshift     The time shift applied.
+     * @param timeshift     The time shift applied, or the description of the transform (e.g. "x1001_960+0").
      * @return              The new filename with the time shift included.
      */
     public static String createOutputFilename(String inputFilename, String timeshift) {
         String filenameExtension = inputFilename.substring(inputFilename.lastIndexOf("."));
         String filenameWithoutExtension = inputFilename.substring(0, inputFilename.lastIndexOf("."));
-        String shiftSign = timeshift.startsWith("-") ? "" : "+";
+        String shiftSign = Character.isDigit(timeshift.charAt(0)) ? "+" : "";   // "-1500" and "x1001_960+0" keep theirs
         return new StringBuilder(filenameWithoutExtension)
                 .append("_")
                 .append(shiftSign)
@@ -1,11 +1,17 @@
 package mkoutra.subtitleshift.service;
 
 import lombok.RequiredArgsConstructor;
+import mkoutra.subtitleshift.engine.CueWindow;
+import mkoutra.subtitleshift.engine.RepairOptions;
+import mkoutra.subtitleshift.engine.RepairReport;
+import mkoutra.subtitleshift.engine.ShiftCounts;
+import mkoutra.subtitleshift.engine.SubtitleEngine;
 import mkoutra.subtitleshift.exceptions.StorageException;
+import mkoutra.subtitleshift.format.SubtitleFormat;
 import mkoutra.subtitleshift.model.Attachment;
+import mkoutra.subtitleshift.model.CueIndex;
+import mkoutra.subtitleshift.model.TimeTransform;
 import mkoutra.subtitleshift.model.Timestamp;
-import org.apache.tika.parser.txt.CharsetDetector;
-import org.apache.tika.parser.txt.CharsetMatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -13,9 +19,9 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service for applying time shifts to subtitle files.
@@ -28,17 +34,151 @@ public class SubtitleShifter {
     private static final Logger LOGGER = LoggerFactory.getLogger(SubtitleShifter.class);
 
     private final StorageService storageService;
+    private final SubtitleEngine subtitleEngine;
+    private final ShiftMetrics metrics;
 
     public Attachment getShiftedFile(MultipartFile file, String timeshift) throws IOException, StorageException {
-        if (!timeshift.matches("^-?\\d+$")) {
-            LOGGER.error("Invalid timeshift: {}", timeshift);
-            throw new IllegalArgumentException("Invalid timeshift: " + timeshift);
-        }
-
+        validateTimeshift(timeshift);
         Attachment attachment = storageService.store(file); // Save the file
         return applyShift(attachment, timeshift);
     }
 
+    /**
+     * Checks an upload and its timeshift before any shifting starts, so that
+     * invalid requests are rejected before the response is committed.
+     *
+     * @param file                      The uploaded subtitle file.
+     * @param timeshift                 The time shift in milliseconds.
+     * @throws StorageException         If the file is empty or has an invalid extension.
+     * @throws IllegalArgumentException If the timeshift value is invalid.
+     */
+    public void validate(MultipartFile file, String timeshift) throws StorageException {
+        validateTimeshift(timeshift);
+        storageService.validate(file);
+    }
+
+    /**
+     * Checks an upload before any shifting starts.
+     *
+     * @param file              The uploaded subtitle file.
+     * @throws StorageException If the file is empty or has an invalid extension.
+     */
+    public void validate(MultipartFile file) throws StorageException {
+        storageService.validate(file);
+    }
+
+    /**
+     * Shifts the uploaded subtitle file and writes the result directly to the given stream,
+     * without storing the original or the shifted file on disk.
+     *
+     * @param file         The uploaded subtitle file.
+     * @param timeshift    The time shift in milliseconds (e.g., "2000" or "-1500").
+     * @param outputStream The stream receiving the shifted subtitles, e.g. the response body.
+     * @throws IOException If an error occurs while reading the upload or writing the output.
+     */
+    public void shiftToStream(MultipartFile file, String timeshift, OutputStream outputStream) throws IOException {
+        shiftToStream(file, TimeTransform.offset(Timestamp.parseShift(timeshift)), outputStream);
+    }
+
+    /**
+     * Transforms the times of the uploaded subtitle file and writes the result directly to the given stream,
+     * without storing the original or the shifted file on disk.
+     *
+     * @param file         The uploaded subtitle file.
+     * @param transform    The transform to apply to every cue.
+     * @param outputStream The stream receiving the shifted subtitles, e.g. the response body.
+     * @throws IOException If an error occurs while reading the upload or writing the output.
+     */
+    public void shiftToStream(MultipartFile file, TimeTransform transform, OutputStream outputStream) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(file.getInputStream())) {
+            Charset charset = detectCharset(inputStream);
+            SubtitleFormat format = subtitleEngine.detectFormat(inputStream, charset, file.getOriginalFilename());
+
+            long start = System.nanoTime();
+            ShiftCounts counts = subtitleEngine.shift(inputStream, outputStream, charset, format, transform);
+            metrics.shiftTimer(ShiftMetrics.PATH_STREAM).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            metrics.recordFile(file.getSize(), counts);
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Transforms the times of the uploaded subtitle file and repairs its structure in the same pass,
+     * writing the result to the given stream.
+     *
+     * @param file         The uploaded subtitle file.
+     * @param transform    The transform to apply to every cue.
+     * @param options      What to repair.
+     * @param outputStream The stream receiving the repaired subtitles, or a null stream to only validate.
+     * @return             What was found and fixed.
+     * @throws IOException If an error occurs while reading the upload or writing the output.
+     */
+    public RepairReport repairToStream(MultipartFile file, TimeTransform transform, RepairOptions options,
+                                       OutputStream outputStream) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(file.getInputStream())) {
+            Charset charset = detectCharset(inputStream);
+            SubtitleFormat format = subtitleEngine.detectFormat(inputStream, charset, file.getOriginalFilename());
+
+            long start = System.nanoTime();
+            RepairReport report = subtitleEngine.repair(inputStream, outputStream, charset, format, transform, options);
+            metrics.shiftTimer(ShiftMetrics.PATH_REPAIR).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            metrics.recordRepair(report);
+            return report;
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the start and end times of every cue of the uploaded file into a {@link CueIndex}.
+     *
+     * @param file         The uploaded subtitle file.
+     * @return             The index of the cues, in file order.
+     * @throws IOException If the upload cannot be read.
+     */
+    public CueIndex buildIndex(MultipartFile file) throws IOException {
+        try (InputStream inputStream = file.getInputStream()) {
+            return subtitleEngine.buildIndex(inputStream, file.getOriginalFilename());
+        }
+    }
+
+    /**
+     * Finds the start times of cues, e.g. to anchor a {@link mkoutra.subtitleshift.model.LinearTransform}.
+     * Stops reading as soon as the last requested cue is found.
+     *
+     * @param file                      The uploaded subtitle file.
+     * @param cues                      1-based cue numbers, counting the time lines of the file.
+     * @return                          The start time in milliseconds of every requested cue.
+     * @throws IOException              If the upload cannot be read.
+     * @throws IllegalArgumentException If the file has fewer cues.
+     */
+    public long[] findCueStarts(MultipartFile file, long... cues) throws IOException {
+        try (InputStream inputStream = file.getInputStream()) {
+            return subtitleEngine.findCueStarts(inputStream, file.getOriginalFilename(), cues);
+        }
+    }
+
+    /**
+     * Reads a window of cues of the uploaded file, with their times before and after the transform.
+     * Stops reading right after the window, so previewing the start of a large file is cheap.
+     *
+     * @param file                      The uploaded subtitle file.
+     * @param transform                 The transform to preview.
+     * @param offset                    The 0-based index of the first cue of the window.
+     * @param limit                     The maximum number of cues of the window.
+     * @return                          The cues of the window.
+     * @throws IOException              If the upload cannot be read.
+     * @throws IllegalArgumentException If offset is negative or limit is not positive.
+     */
+    public CueWindow readCues(MultipartFile file, TimeTransform transform, long offset, int limit) throws IOException {
+        try (InputStream inputStream = file.getInputStream()) {
+            return subtitleEngine.readCues(inputStream, file.getOriginalFilename(), transform, offset, limit);
+        }
+    }
+
     /**
      * Applies a time shift to the timestamps in a subtitle file
      * and writes the modified content to a new file.
@@ -49,9 +189,21 @@ public class SubtitleShifter {
      * @throws IllegalArgumentException If the timeshift value is invalid.
      */
     public Attachment applyShift(Attachment attachment, String timeshift) throws IOException {
-        Path inputPath = attachment.getFilepath();                                              // Input file path
-        Path outputPath = storageService.getOutputPath(attachment.getSavedName(), timeshift);   // Output file path
-        createShiftedFile(inputPath, outputPath, timeshift);
+        return applyShift(attachment, TimeTransform.offset(Timestamp.parseShift(timeshift)));
+    }
+
+    /**
+     * Applies a transform to the timestamps in a subtitle file
+     * and writes the modified content to a new file.
+     *
+     * @param attachment   The {@link Attachment} describing the input subtitle file.
+     * @param transform    The transform to apply to every cue.
+     * @throws IOException If an error occurs while reading or writing the file.
+     */
+    public Attachment applyShift(Attachment attachment, TimeTransform transform) throws IOException {
+        Path inputPath = attachment.getFilepath();                                                       // Input file path
+        Path outputPath = storageService.getOutputPath(attachment.getSavedName(), transform.describe()); // Output file path
+        createShiftedFile(inputPath, outputPath, attachment.getOriginalFileName(), transform);
 
         // Shifted file
         Attachment shiftedFileAttachment = new Attachment(attachment);
@@ -61,71 +213,47 @@ public class SubtitleShifter {
     }
 
     /**
-     * Reads a subtitle file, applies a time shift to timestamp lines, and writes the result to a new file.
+     * Reads a subtitle file, applies a transform to timestamp lines, and writes the result to a new file
+     * through the {@link SubtitleEngine}, which picks the byte, parallel or char path.
      *
      * @param inputPath  The path to the original subtitle file.
      * @param outputPath The path where the modified file will be saved.
-     * @param timeshift  The time shift (in milliseconds) to apply to the timestamps.
+     * @param filename   The original name of the file, used if the format cannot be detected from the content.
+     * @param transform  The transform to apply to the timestamps.
      * @throws IOException If an error occurs while reading or writing the file.
      */
-    private void createShiftedFile(Path inputPath, Path outputPath, String timeshift) throws IOException {
-        Charset charset = getCharset(inputPath.toFile());
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputPath.toFile(), charset));
-             PrintWriter writer = new PrintWriter(new FileWriter(outputPath.toFile(), charset))) {
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (isTimeLine(line)) {
-                    String shiftedTimeLine = getShiftedTimeLine(line, timeshift);
-                    writer.println(shiftedTimeLine);
-                    continue;
-                }
-                writer.println(line);
+    private void createShiftedFile(Path inputPath, Path outputPath, String filename, TimeTransform transform)
+            throws IOException {
+        try {
+            Charset charset;
+            SubtitleFormat format;
+            try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(inputPath))) {
+                charset = detectCharset(inputStream);
+                format = subtitleEngine.detectFormat(inputStream, charset, filename);
             }
+
+            long start = System.nanoTime();
+            SubtitleEngine.Result result = subtitleEngine.shiftFile(inputPath, outputPath, charset, format, transform);
+            metrics.shiftTimer(result.path()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            metrics.recordFile(Files.size(inputPath), result.counts());
         } catch (IOException e) {
             LOGGER.error(e.getMessage());
             throw e;
         }
     }
 
-    /**
-     * Detects the most probable character encoding of the given file.
-     *
-     * @param file The file whose encoding needs to be determined.
-     * @return The detected Charset of the file.
-     * @throws IOException If an error occurs while reading the file.
-     */
-    private Charset getCharset(File file) throws IOException {
-        CharsetDetector charsetDetector = new CharsetDetector();
-        charsetDetector.setText(new BufferedInputStream(new FileInputStream(file)));
-        CharsetMatch match = charsetDetector.detect();
-        return Charset.forName(match.getNormalizedName());
-    }
-
-    /**
-     * Adjusts the timestamps in a subtitle "time line" based on the given time shift.
-     *
-     * @param line      A subtitle "time line" in the format "hh:mm:ss,xxx --> hh:mm:ss,xxx".
-     * @param timeshift The time shift in milliseconds.
-     * @return          The modified "time line" with adjusted timestamps.
-     */
-    private static String getShiftedTimeLine(String line, String timeshift) {
-        List<Timestamp> timestamps = Arrays.stream(line.split(" --> ")).map(Timestamp::new).toList();
-        timestamps.forEach(t -> t.shift(timeshift));
-        return new StringBuilder(timestamps.get(0).toString())
-                .append(" --> ")
-                .append(timestamps.get(1).toString())
-                .toString();
+    private Charset detectCharset(InputStream inputStream) throws IOException {
+        long start = System.nanoTime();
+        Charset charset = subtitleEngine.detectCharset(inputStream);
+        metrics.charsetTimer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return charset;
     }
 
-
-    /**
-     * Checks if a line contains a timestamp in the format "hh:mm:ss,xxx --> hh:mm:ss,xxx".
-     *
-     * @param line A line from the subtitle file.
-     * @return True if the line contains a timestamp, otherwise false.
-     */
-    private boolean isTimeLine(String line) {
-        return line.matches("^\\d{2}:\\d{2}:\\d{2},\\d{3} --> \\d{2}:\\d{2}:\\d{2},\\d{3}$");
+    private void validateTimeshift(String timeshift) {
+        if (!timeshift.matches("^-?\\d+$")) {
+            metrics.rejected(ShiftMetrics.REJECTED_TIMESHIFT);
+            LOGGER.error("Invalid timeshift: {}", timeshift);
+            throw new IllegalArgumentException("Invalid timeshift: " + timeshift);
+        }
     }
 }
@@ -0,0 +1,316 @@
+package mkoutra.subtitleshift.store;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes files to a {@link SubtitleStore} in the background, so that persisting an upload
+ * never delays its response.
+ * <p>
+ * {@link #submit} only links the file into the spool directory (copying it if linking is not possible)
+ * and queues its key. A single worker thread collects up to batchSize keys, waiting at most batchDelay
+ * for more after the first one, and stores them with one {@link SubtitleStore#putAll} call.
+ * A spooled file is deleted once stored, so the spool is also the journal of pending writes:
+ * files left by a failed write or a restart are queued again by {@link #recover()}.
+ * When the queue is full, files stay spooled and are picked up once it drains.
+ * <p>
+ * Published as the subtitle.store.pending gauge and the subtitle.store.writes and .deferred counters.
+ *
+ * @author Michalis Koutrakis
+ */
+public class AsyncStoreWriter implements MeterBinder, AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncStoreWriter.class);
+
+    /** Delay before files whose write failed are tried again. */
+    static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+
+    /** How long the idle worker waits for a file before checking for rescans and close, if batchDelay is shorter. */
+    private static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final String TEMP_PREFIX = ".";
+
+    private final SubtitleStore store;
+    private final Path spoolDir;
+    private final int batchSize;
+    private final long batchDelayNanos;
+    private final BlockingQueue<String> queue;
+    private final Thread worker;
+
+    /** Files queued or being written. */
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+
+    /** System.nanoTime() after which the spool is scanned again, or Long.MAX_VALUE if it is not needed. */
+    private volatile long rescanAt = Long.MAX_VALUE;
+    private volatile boolean closed;
+
+    /**
+     * @param store         The store to write to.
+     * @param spoolDir      The directory of the files waiting to be written. Must be on the same
+     *                      file system as the submitted files, so that they are linked instead of copied.
+     * @param queueCapacity The maximum number of queued files.
+     * @param batchSize     The maximum number of files per {@link SubtitleStore#putAll} call.
+     * @param batchDelay    How long the worker waits for more files before writing a batch; zero writes
+     *                      every batch right away.
+     * @throws IOException  If the spool directory cannot be created or read.
+     */
+    public AsyncStoreWriter(SubtitleStore store, Path spoolDir, int queueCapacity, int batchSize, Duration batchDelay)
+            throws IOException {
+        if (batchDelay.isNegative()) {
+            throw new IllegalArgumentException("Negative batch delay: " + batchDelay);
+        }
+        this.store = store;
+        this.spoolDir = Files.createDirectories(spoolDir);
+        this.batchSize = Math.max(1, batchSize);
+        this.batchDelayNanos = batchDelay.toNanos();
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+
+        // Files being spooled when the application stopped
+        try (DirectoryStream<Path> temps = Files.newDirectoryStream(spoolDir, TEMP_PREFIX + "*")) {
+            for (Path temp : temps) {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        this.worker = new Thread(this::run, "store-writer");
+        worker.setDaemon(true);
+        worker.start();
+        recover();
+    }
+
+    /**
+     * Queues a file to be written to the store.
+     *
+     * @param key          The key of the object.
+     * @param file         The file to store. It may be moved or deleted right after this call.
+     * @throws IOException If the file cannot be spooled.
+     */
+    public void submit(String key, Path file) throws IOException {
+        SubtitleStore.checkKey(key);
+        if (closed) {
+            throw new IllegalStateException("The store writer is closed");
+        }
+
+        Path temp = spoolDir.resolve(TEMP_PREFIX + UUID.randomUUID());
+        try {
+            try {
+                Files.createLink(temp, file);   // No copy when on the same file system
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(file, temp);
+            }
+            Files.move(temp, spoolPath(key), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        enqueue(key);
+    }
+
+    /**
+     * Queues every file of the spool directory, e.g. those left by a restart.
+     *
+     * @throws IOException If the spool directory cannot be read.
+     */
+    public void recover() throws IOException {
+        int recovered = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spoolDir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(TEMP_PREFIX)) {
+                    if (!enqueue(URLDecoder.decode(name, StandardCharsets.UTF_8))) {
+                        break;
+                    }
+                    recovered++;
+                }
+            }
+        }
+        if (recovered > 0) {
+            LOGGER.info("Queued {} spooled files for the {} store.", recovered, store.getName());
+        }
+    }
+
+    /**
+     * Waits until every queued file has been written, or has failed.
+     *
+     * @param timeout The maximum time to wait.
+     * @return        True if nothing is pending anymore.
+     */
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (pending.get() > 0) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of files queued or being written.
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getDeferred() {
+        return deferred.sum();
+    }
+
+    /**
+     * Writes the queued files and stops the worker. Files left in the spool are written after a restart.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        worker.join(TimeUnit.NANOSECONDS.toMillis(Math.max(batchDelayNanos, IDLE_POLL_NANOS)) + 30_000);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("subtitle.store.pending", this, AsyncStoreWriter::getPending)
+                .description("Files waiting to be written to the store")
+                .tag("store", store.getName())
+                .register(registry);
+        FunctionCounter.builder("subtitle.store.writes", written, LongAdder::sum)
+                .description("Files written to the store")
+                .tag("store", store.getName())
+                .tag("result", "ok")
+                .register(registry);
+        FunctionCounter.builder("subtitle.store.writes", failed, LongAdder::sum)
+                .description("Files written to the store")
+                .tag("store", store.getName())
+                .tag("result", "failed")
+                .register(registry);
+        FunctionCounter.builder("subtitle.store.deferred", deferred, LongAdder::sum)
+                .description("Files left in the spool because the queue was full")
+                .tag("store", store.getName())
+                .register(registry);
+    }
+
+    /**
+     * @return False if the queue is full; the file is then written after a later scan of the spool.
+     */
+    private boolean enqueue(String key) {
+        pending.incrementAndGet();
+        if (queue.offer(key)) {
+            return true;
+        }
+        pending.decrementAndGet();
+        deferred.increment();
+        rescanAt = System.nanoTime();
+        return false;
+    }
+
+    private void run() {
+        List<String> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                // Blocks while idle, even with a zero batchDelay, instead of spinning
+                String first = queue.poll(Math.max(batchDelayNanos, IDLE_POLL_NANOS), TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    if (closed) {
+                        return;
+                    }
+                    if (System.nanoTime() - rescanAt >= 0) {
+                        rescanAt = Long.MAX_VALUE;
+                        recover();
+                    }
+                    continue;
+                }
+
+                batch.add(first);
+                long deadline = System.nanoTime() + batchDelayNanos;
+                while (batch.size() < batchSize) {
+                    String next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Store writer failed: {}", e.getMessage(), e);
+            } finally {
+                pending.addAndGet(-batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<String> keys) throws IOException {
+        Map<String, Path> files = new LinkedHashMap<>();
+        for (String key : keys) {
+            files.put(key, spoolPath(key));     // A key submitted twice is written once
+        }
+        files.values().removeIf(Files::notExists);
+
+        long start = System.nanoTime();
+        try {
+            store.putAll(files);
+            for (Path file : files.values()) {
+                stored(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Batch of {} files failed in the {} store, writing them one by one: {}",
+                    files.size(), store.getName(), e.getMessage());
+            for (Map.Entry<String, Path> file : files.entrySet()) {
+                try {
+                    store.put(file.getKey(), file.getValue());
+                    stored(file.getValue());
+                } catch (IOException | RuntimeException single) {
+                    failed.increment();
+                    rescanAt = System.nanoTime() + RETRY_DELAY.toNanos();
+                    LOGGER.error("Failed to write {} to the {} store: {}", file.getKey(), store.getName(), single.getMessage());
+                }
+            }
+        }
+        LOGGER.debug("Wrote {} files to the {} store in {} ms.", files.size(), store.getName(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void stored(Path file) throws IOException {
+        written.increment();
+        Files.deleteIfExists(file);
+    }
+
+    private Path spoolPath(String key) {
+        String name = URLEncoder.encode(key, StandardCharsets.UTF_8);
+        return spoolDir.resolve(name.startsWith(TEMP_PREFIX) ? "%2E" + name.substring(1) : name);
+    }
+}
@@ -0,0 +1,124 @@
+package mkoutra.subtitleshift.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps objects in memory, for ephemeral deployments without a disk or a bucket to persist to.
+ * <p>
+ * At most maxBytes are kept; the least recently used objects are evicted to make room for new ones.
+ * With offHeap, the content lives in direct buffers, outside the Java heap and the garbage collector's work.
+ * A stream returned by {@link #get} stays valid even if its object is evicted meanwhile.
+ *
+ * @author Michalis Koutrakis
+ */
+public class MemorySubtitleStore implements SubtitleStore {
+
+    private final long maxBytes;
+    private final boolean offHeap;
+
+    /** In access order, so the first entry is the least recently used one. Guarded by this. */
+    private final LinkedHashMap<String, ByteBuffer> objects = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    public MemorySubtitleStore(long maxBytes, boolean offHeap) {
+        this.maxBytes = maxBytes;
+        this.offHeap = offHeap;
+    }
+
+    @Override
+    public String getName() {
+        return offHeap ? "memory-offheap" : "memory";
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        SubtitleStore.checkKey(key);
+        ByteBuffer content;
+        try (FileChannel channel = FileChannel.open(source)) {
+            long size = channel.size();
+            if (size > maxBytes || size > Integer.MAX_VALUE) {
+                throw new IOException(source.getFileName() + " (" + size + " bytes) does not fit in the store");
+            }
+            content = offHeap ? ByteBuffer.allocateDirect((int) size) : ByteBuffer.allocate((int) size);
+            while (content.hasRemaining() && channel.read(content) >= 0) {
+                // Fill the buffer
+            }
+            content.flip();
+        }
+
+        synchronized (this) {
+            ByteBuffer previous = objects.put(key, content);
+            bytes += content.remaining() - (previous == null ? 0 : previous.remaining());
+            Iterator<Map.Entry<String, ByteBuffer>> eldest = objects.entrySet().iterator();
+            while (bytes > maxBytes) {
+                bytes -= eldest.next().getValue().remaining();
+                eldest.remove();
+            }
+        }
+    }
+
+    @Override
+    public Optional<InputStream> get(String key) {
+        ByteBuffer content;
+        synchronized (this) {
+            content = objects.get(SubtitleStore.checkKey(key));
+        }
+        return content == null ? Optional.empty() : Optional.of(new BufferInputStream(content.duplicate()));
+    }
+
+    @Override
+    public synchronized boolean delete(String key) {
+        ByteBuffer content = objects.remove(SubtitleStore.checkKey(key));
+        if (content == null) {
+            return false;
+        }
+        bytes -= content.remaining();
+        return true;
+    }
+
+    /**
+     * @return The number of bytes stored.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package mkoutra.subtitleshift.store;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Stores objects in a bucket of an S3-compatible service (AWS S3, MinIO, Ceph, ...), through its REST API
+ * with path-style URLs ("endpoint/bucket/key") and Signature Version 4, without an SDK.
+ * <p>
+ * Payloads are sent unsigned (x-amz-content-sha256: UNSIGNED-PAYLOAD), so files are streamed from disk
+ * without being read twice; use an https endpoint. {@link #putAll} uploads a batch concurrently.
+ *
+ * @author Michalis Koutrakis
+ */
+public class S3SubtitleStore implements SubtitleStore {
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    private static final String SIGNED_HEADERS = "host;x-amz-content-sha256;x-amz-date";
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+    private final URI endpoint;
+    private final String region;
+    private final String bucket;
+    private final String accessKey;
+    private final String secretKey;
+    private final HttpClient client;
+    private final Clock clock;
+
+    /**
+     * @param endpoint  The URL of the service, e.g. "https://s3.eu-central-1.amazonaws.com" or "http://localhost:9000".
+     * @param region    The region of the bucket, e.g. "us-east-1".
+     * @param bucket    The name of the bucket.
+     * @param accessKey The access key id.
+     * @param secretKey The secret access key.
+     */
+    public S3SubtitleStore(URI endpoint, String region, String bucket, String accessKey, String secretKey) {
+        this(endpoint, region, bucket, accessKey, secretKey, Clock.systemUTC());
+    }
+
+    S3SubtitleStore(URI endpoint, String region, String bucket, String accessKey, String secretKey, Clock clock) {
+        if (bucket == null || bucket.isBlank() || accessKey == null || secretKey == null) {
+            throw new IllegalArgumentException("The S3 store needs a bucket, an access key and a secret key");
+        }
+        this.endpoint = URI.create(endpoint.toString().replaceAll("/+$", ""));
+        this.region = region;
+        this.bucket = bucket;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.clock = clock;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return "s3";
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        check(send(putRequest(key, source), HttpResponse.BodyHandlers.discarding()), key);
+    }
+
+    @Override
+    public void putAll(Map<String, Path> files) throws IOException {
+        List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<>(files.size());
+        List<String> keys = new ArrayList<>(files.size());
+        for (Map.Entry<String, Path> file : files.entrySet()) {
+            keys.add(file.getKey());
+            responses.add(client.sendAsync(putRequest(file.getKey(), file.getValue()), HttpResponse.BodyHandlers.discarding()));
+        }
+
+        IOException failure = null;
+        for (int i = 0; i < responses.size(); i++) {
+            try {
+                check(responses.get(i).join(), keys.get(i));
+            } catch (CompletionException e) {
+                failure = failure == null ? new IOException("Failed to store " + keys.get(i), e.getCause()) : failure;
+            } catch (IOException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public Optional<InputStream> get(String key) throws IOException {
+        HttpResponse<InputStream> response = send(request("GET", key).GET().build(), HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() == 404) {
+            response.body().close();
+            return Optional.empty();
+        }
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("GET " + key + " failed with status " + response.statusCode());
+        }
+        return Optional.of(response.body());
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        // S3 answers a DELETE with 204 whether the object existed or not
+        HttpRequest head = request("HEAD", key).method("HEAD", HttpRequest.BodyPublishers.noBody()).build();
+        if (send(head, HttpResponse.BodyHandlers.discarding()).statusCode() == 404) {
+            return false;
+        }
+        check(send(request("DELETE", key).DELETE().build(), HttpResponse.BodyHandlers.discarding()), key);
+        return true;
+    }
+
+    private HttpRequest putRequest(String key, Path source) {
+        try {
+            return request("PUT", key).PUT(HttpRequest.BodyPublishers.ofFile(source)).build();
+        } catch (FileNotFoundException e) {
+            throw new IllegalArgumentException("No such file: " + source, e);
+        }
+    }
+
+    /**
+     * @return A request for the object, signed with Signature Version 4.
+     */
+    private HttpRequest.Builder request(String method, String key) {
+        String path = endpoint.getRawPath() + "/" + encode(bucket, false) + "/" + encode(SubtitleStore.checkKey(key), true);
+        URI uri = URI.create(endpoint.getScheme() + "://" + endpoint.getRawAuthority() + path);
+        String host = uri.getPort() < 0 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+
+        ZonedDateTime now = ZonedDateTime.now(clock.withZone(ZoneOffset.UTC));
+        String amzDate = AMZ_DATE.format(now);
+        String date = amzDate.substring(0, 8);
+        String scope = date + "/" + region + "/s3/aws4_request";
+
+        String canonicalRequest = method + "\n"
+                + path + "\n"
+                + "\n"                                                  // No query string
+                + "host:" + host + "\n"
+                + "x-amz-content-sha256:" + UNSIGNED_PAYLOAD + "\n"
+                + "x-amz-date:" + amzDate + "\n"
+                + "\n"
+                + SIGNED_HEADERS + "\n"
+                + UNSIGNED_PAYLOAD;
+        String stringToSign = ALGORITHM + "\n" + amzDate + "\n" + scope + "\n" + hex(sha256(canonicalRequest));
+
+        byte[] signingKey = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        signingKey = hmac(signingKey, region);
+        signingKey = hmac(signingKey, "s3");
+        signingKey = hmac(signingKey, "aws4_request");
+        String signature = hex(hmac(signingKey, stringToSign));
+
+        return HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMinutes(1))
+                .header("x-amz-content-sha256", UNSIGNED_PAYLOAD)
+                .header("x-amz-date", amzDate)
+                .header("Authorization", ALGORITHM + " Credential=" + accessKey + "/" + scope
+                        + ", SignedHeaders=" + SIGNED_HEADERS + ", Signature=" + signature);
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return client.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calling " + request.uri(), e);
+        }
+    }
+
+    private static void check(HttpResponse<?> response, String key) throws IOException {
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException(response.request().method() + " " + key + " failed with status " + response.statusCode());
+        }
+    }
+
+    /**
+     * URI-encodes a path the way Signature Version 4 expects: every byte except unreserved characters
+     * (and "/" in keys) as %XX, with upper-case hex digits.
+     */
+    static String encode(String value, boolean keepSlashes) {
+        StringBuilder encoded = new StringBuilder(value.length() + 16);
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || (c == '/' && keepSlashes)) {
+                encoded.append(c);
+            } else {
+                encoded.append('%').append(HexFormat.of().withUpperCase().toHexDigits(b));
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String value) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+}
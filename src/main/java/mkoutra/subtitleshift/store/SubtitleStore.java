@@ -0,0 +1,75 @@
+package mkoutra.subtitleshift.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Where uploaded files are persisted, e.g. a directory, memory or an S3 bucket.
+ * <p>
+ * Uploads are still written to uploadDir first, as the shifter maps local files into memory;
+ * a store keeps the durable copy, written in the background by {@link AsyncStoreWriter}.
+ * Keys are relative, "/"-separated paths such as "originals/3fa2c9e1-5Fallen1.srt".
+ * Implementations must be thread-safe.
+ *
+ * @author Michalis Koutrakis
+ */
+public interface SubtitleStore {
+
+    /**
+     * @return A short name of the implementation, for logs and metrics.
+     */
+    String getName();
+
+    /**
+     * Stores a copy of a local file, replacing any previous object with the same key.
+     *
+     * @param key          The key of the object.
+     * @param source       The file to copy.
+     * @throws IOException If the file cannot be read or stored.
+     */
+    void put(String key, Path source) throws IOException;
+
+    /**
+     * Stores several files, e.g. concurrently. By default, they are stored one after another.
+     *
+     * @param files        The files to copy, by key.
+     * @throws IOException If any file cannot be stored. Others may have been stored.
+     */
+    default void putAll(Map<String, Path> files) throws IOException {
+        for (Map.Entry<String, Path> file : files.entrySet()) {
+            put(file.getKey(), file.getValue());
+        }
+    }
+
+    /**
+     * @param key          The key of the object.
+     * @return             The content of the object, or empty if there is none. The caller closes the stream.
+     * @throws IOException If the object cannot be read.
+     */
+    Optional<InputStream> get(String key) throws IOException;
+
+    /**
+     * @param key          The key of the object.
+     * @return             True if the object existed.
+     * @throws IOException If the object cannot be deleted.
+     */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * Rejects keys that are empty, absolute or that climb out of the store with "..".
+     *
+     * @param key                       The key to check.
+     * @return                          The key.
+     * @throws IllegalArgumentException If the key is invalid.
+     */
+    static String checkKey(String key) {
+        if (key == null || key.isEmpty() || key.startsWith("/") || key.contains("\\")
+                || key.equals("..") || key.startsWith("../") || key.contains("/../") || key.endsWith("/..")) {
+            throw new IllegalArgumentException("Invalid key: " + key);
+        }
+        return key;
+    }
+}
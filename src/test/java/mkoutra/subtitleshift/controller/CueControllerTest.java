@@ -0,0 +1,104 @@
+package mkoutra.subtitleshift.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mkoutra.subtitleshift.config.StorageProperties;
+import mkoutra.subtitleshift.engine.SubtitleEngine;
+import mkoutra.subtitleshift.service.CompressedUploads;
+import mkoutra.subtitleshift.service.ShiftMetrics;
+import mkoutra.subtitleshift.service.StorageService;
+import mkoutra.subtitleshift.service.SubtitleShifter;
+import mkoutra.subtitleshift.store.AsyncStoreWriter;
+import mkoutra.subtitleshift.store.TestStoreWriters;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMultipartHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class CueControllerTest {
+
+    private static final String SUBTITLES = "1\n00:00:01,000 --> 00:00:02,000\nHello\n\n"
+            + "2\n00:00:03,000 --> 00:00:04,000\nworld\n\n"
+            + "3\n00:00:05,000 --> 00:00:06,000\nBye\n";
+
+    @TempDir
+    Path root;
+
+    private AsyncStoreWriter storeWriter;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        StorageProperties storageProperties = new StorageProperties();
+        storageProperties.setUploadDir(root.resolve("uploads").toString());
+        storageProperties.setShiftedDir(root.resolve("shifted").toString());
+        ShiftMetrics metrics = new ShiftMetrics(new SimpleMeterRegistry());
+        storeWriter = TestStoreWriters.inMemory(root.resolve("spool"));
+        StorageService storageService = new StorageService(storageProperties, metrics, storeWriter);
+        SubtitleShifter subtitleShifter = new SubtitleShifter(storageService, SubtitleEngine.defaults(), metrics);
+        mockMvc = MockMvcBuilders
+                .standaloneSetup(new CueController(subtitleShifter, new CompressedUploads(storageProperties)))
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        storeWriter.close();
+    }
+
+    private static MockMultipartHttpServletRequestBuilder preview() {
+        return multipart("/cues/preview")
+                .file(new MockMultipartFile("subtitleFile", "movie.srt", null, SUBTITLES.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testPreviewIsPaginated() throws Exception {
+        mockMvc.perform(preview().param("timeshift.msg", "-500").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.offset").value(0))
+                .andExpect(jsonPath("$.limit").value(2))
+                .andExpect(jsonPath("$.cues.length()").value(2))
+                .andExpect(jsonPath("$.cues[0].cue").value(1))
+                .andExpect(jsonPath("$.cues[0].start").value("00:00:01,000"))
+                .andExpect(jsonPath("$.cues[0].shiftedStart").value("00:00:00,500"))
+                .andExpect(jsonPath("$.cues[1].text").value("world"))
+                .andExpect(jsonPath("$.next").value(2));
+
+        mockMvc.perform(preview().param("timeshift.msg", "-500").param("offset", "2").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cues.length()").value(1))
+                .andExpect(jsonPath("$.cues[0].cue").value(3))
+                .andExpect(jsonPath("$.cues[0].shiftedEnd").value("00:00:05,500"))
+                .andExpect(jsonPath("$.next").doesNotExist());
+
+        mockMvc.perform(preview().param("offset", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cues").isEmpty())
+                .andExpect(jsonPath("$.next").doesNotExist());
+    }
+
+    @Test
+    void testInvalidPreviewIsBadRequest() throws Exception {
+        mockMvc.perform(preview().param("limit", String.valueOf(CueController.MAX_PREVIEW_CUES)))
+                .andExpect(status().isOk());
+        mockMvc.perform(preview().param("limit", String.valueOf(CueController.MAX_PREVIEW_CUES + 1)))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(preview().param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(preview().param("offset", "-1"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(preview().param("timeshift.msg", "1s"))
+                .andExpect(status().isBadRequest());
+    }
+}
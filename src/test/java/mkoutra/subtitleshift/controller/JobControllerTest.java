@@ -0,0 +1,202 @@
+package mkoutra.subtitleshift.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mkoutra.subtitleshift.config.ExecutionProperties;
+import mkoutra.subtitleshift.config.StorageProperties;
+import mkoutra.subtitleshift.engine.SubtitleEngine;
+import mkoutra.subtitleshift.model.JobStatus;
+import mkoutra.subtitleshift.service.CompressedUploads;
+import mkoutra.subtitleshift.service.JobService;
+import mkoutra.subtitleshift.service.RetentionService;
+import mkoutra.subtitleshift.service.ShiftMetrics;
+import mkoutra.subtitleshift.service.StorageService;
+import mkoutra.subtitleshift.service.SubtitleShifter;
+import mkoutra.subtitleshift.store.AsyncStoreWriter;
+import mkoutra.subtitleshift.store.TestStoreWriters;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class JobControllerTest {
+
+    private static final String SUBTITLES = "1\n00:00:01,000 --> 00:00:02,000\nHello\n\n"
+            + "2\n00:00:03,000 --> 00:00:04,000\nworld\n";
+    private static final UUID RUNNING = UUID.randomUUID();
+
+    @TempDir
+    Path root;
+
+    private final StorageProperties storageProperties = new StorageProperties();
+    private final ExecutionProperties executionProperties = new ExecutionProperties();
+    private AsyncStoreWriter storeWriter;
+    private JobService jobService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storageProperties.setUploadDir(root.resolve("uploads").toString());
+        storageProperties.setShiftedDir(root.resolve("shifted").toString());
+        ShiftMetrics metrics = new ShiftMetrics(new SimpleMeterRegistry());
+        storeWriter = TestStoreWriters.inMemory(root.resolve("spool"));
+        StorageService storageService = new StorageService(storageProperties, metrics, storeWriter);
+        SubtitleShifter subtitleShifter = new SubtitleShifter(storageService, SubtitleEngine.defaults(), metrics);
+        RetentionService retentionService = new RetentionService(storageProperties);
+        jobService = new JobService(storageService, subtitleShifter, retentionService, storageProperties,
+                executionProperties, new ObjectMapper().findAndRegisterModules()) {
+            @Override
+            public Optional<JobStatus> find(UUID id) {
+                // Shown as still running, so that 409 can be checked without racing the worker
+                return id.equals(RUNNING) ? Optional.of(new JobStatus(id, JobStatus.State.RUNNING, "movie.srt", "0", 1,
+                        Instant.now(), Instant.now(), null, null, null)) : super.find(id);
+            }
+        };
+        mockMvc = MockMvcBuilders
+                .standaloneSetup(new JobController(jobService, new CompressedUploads(storageProperties), retentionService, metrics))
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        jobService.shutdown();
+        storeWriter.close();
+    }
+
+    private UUID submitAndAwait() throws Exception {
+        JobStatus queued = jobService.submit(new MockMultipartFile("subtitleFile", "movie.srt", null,
+                SUBTITLES.getBytes(StandardCharsets.UTF_8)), "1500", null);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!jobService.find(queued.id()).orElseThrow().state().isFinished() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(JobStatus.State.DONE, jobService.find(queued.id()).orElseThrow().state());
+        return queued.id();
+    }
+
+    private byte[] resultBytes(UUID id) throws IOException {
+        return Files.readAllBytes(jobService.result(id).orElseThrow());
+    }
+
+    @Test
+    void testResultHasETagAndIsNotSentAgain() throws Exception {
+        UUID id = submitAndAwait();
+
+        MvcResult result = mockMvc.perform(get("/jobs/{id}/result", id))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=movie.srt"))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andExpect(content().bytes(resultBytes(id)))
+                .andReturn();
+        String etag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals("\"" + jobService.resultHash(id).orElseThrow() + "\"", etag);
+
+        mockMvc.perform(get("/jobs/{id}/result", id).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+        mockMvc.perform(get("/jobs/{id}/result", id).header(HttpHeaders.IF_NONE_MATCH, "\"stale\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void testRangeIsPartialContent() throws Exception {
+        UUID id = submitAndAwait();
+        byte[] bytes = resultBytes(id);
+
+        mockMvc.perform(get("/jobs/{id}/result", id).header(HttpHeaders.RANGE, "bytes=2-11"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-11/" + bytes.length))
+                .andExpect(content().bytes(Arrays.copyOfRange(bytes, 2, 12)));
+    }
+
+    @Test
+    void testResultBeforeDoneIsConflict() throws Exception {
+        mockMvc.perform(get("/jobs/{id}/result", RUNNING))
+                .andExpect(status().isConflict());
+        mockMvc.perform(get("/jobs/{id}/result", UUID.randomUUID()))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testSendfileIsUsedWhenSupported() throws Exception {
+        UUID id = submitAndAwait();
+        Path file = jobService.result(id).orElseThrow();
+
+        mockMvc.perform(get("/jobs/{id}/result", id).requestAttr(JobController.SENDFILE_SUPPORTED, Boolean.TRUE))
+                .andExpect(status().isOk())
+                .andExpect(request().attribute(JobController.SENDFILE_FILENAME, file.toAbsolutePath().toString()))
+                .andExpect(request().attribute(JobController.SENDFILE_START, 0L))
+                .andExpect(request().attribute(JobController.SENDFILE_END, Files.size(file)))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, Files.size(file)))
+                .andExpect(content().bytes(new byte[0]));
+
+        // Ranges and HEAD requests are left to Spring MVC
+        mockMvc.perform(get("/jobs/{id}/result", id).requestAttr(JobController.SENDFILE_SUPPORTED, Boolean.TRUE)
+                        .header(HttpHeaders.RANGE, "bytes=0-0"))
+                .andExpect(status().isPartialContent())
+                .andExpect(request().attribute(JobController.SENDFILE_FILENAME, (Object) null));
+        mockMvc.perform(head("/jobs/{id}/result", id).requestAttr(JobController.SENDFILE_SUPPORTED, Boolean.TRUE))
+                .andExpect(status().isOk())
+                .andExpect(request().attribute(JobController.SENDFILE_FILENAME, (Object) null));
+    }
+
+    @Test
+    void testResultIsDeletedAfterResponse() throws Exception {
+        storageProperties.getRetention().setDeleteAfterResponse(true);
+        UUID id = submitAndAwait();
+        Path file = jobService.result(id).orElseThrow();
+        Path input = jobService.input(id).orElseThrow();
+        byte[] bytes = resultBytes(id);
+
+        // A range leaves the file for the rest of the download
+        mockMvc.perform(get("/jobs/{id}/result", id).header(HttpHeaders.RANGE, "bytes=0-0"))
+                .andExpect(status().isPartialContent());
+        assertTrue(Files.exists(file));
+
+        mockMvc.perform(get("/jobs/{id}/result", id).requestAttr(JobController.SENDFILE_SUPPORTED, Boolean.TRUE))
+                .andExpect(status().isOk())
+                .andExpect(request().attribute(JobController.SENDFILE_FILENAME, (Object) null))
+                .andExpect(content().bytes(bytes));
+        assertFalse(Files.exists(file));
+        assertFalse(Files.exists(input));
+
+        mockMvc.perform(get("/jobs/{id}/result", id))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testInvalidFileQueuesNoJob() throws Exception {
+        executionProperties.getJobs().setMaxQueued(0);   // Any queued job would be rejected with 503
+        mockMvc.perform(multipart("/jobs")
+                        .file(new MockMultipartFile("subtitleFile", "movie.srt", null, SUBTITLES.getBytes(StandardCharsets.UTF_8)))
+                        .file(new MockMultipartFile("subtitleFile", "movie.txt", null, SUBTITLES.getBytes(StandardCharsets.UTF_8)))
+                        .param("timeshift.msg", "1000"))
+                .andExpect(status().isBadRequest());
+        assertEquals(0, jobService.getQueued());
+    }
+}
@@ -0,0 +1,106 @@
+package mkoutra.subtitleshift.controller;
+
+import mkoutra.subtitleshift.config.StorageProperties;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Fires a few hundred concurrent uploads and reports the JVM thread counts and latency percentiles.
+ * All uploads come from one client, so the per-client admission limit is lifted; uploads shed
+ * by the admission control (503) are counted and left out of the percentiles.
+ * Excluded from the regular test task; run it with {@code ./gradlew loadTest}, and compare with
+ * {@code ./gradlew loadTest -PjavaVersion=21 -PvirtualThreads=true}.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "execution.admission.maxPerClient=0")
+class ShiftLoadTest {
+
+    private static final int CONCURRENT_UPLOADS = 300;
+    private static final String BOUNDARY = "subtitle-shift-load-test";
+
+    @LocalServerPort
+    private int port;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Autowired
+    private StorageProperties storageProperties;
+
+    @Test
+    public void testConcurrentUploads() throws IOException {
+        byte[] subtitles = Files.readAllBytes(Paths.get(storageProperties.getUploadDir(), "Fallen1.srt"));
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/uploadAndShift"))
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(multipartBody(subtitles, "1234")))
+                .build();
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int threadsBefore = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+
+        List<CompletableFuture<Long>> latencies = new ArrayList<>(CONCURRENT_UPLOADS);
+        for (int i = 0; i < CONCURRENT_UPLOADS; i++) {
+            long start = System.nanoTime();
+            latencies.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                    .thenApply(response -> {
+                        if (response.statusCode() == 503) {
+                            assertNotNull(response.headers().firstValue("Retry-After").orElse(null));
+                            return -1L;
+                        }
+                        assertEquals(200, response.statusCode());
+                        return (System.nanoTime() - start) / 1_000_000;
+                    }));
+        }
+        long[] millis = latencies.stream().map(CompletableFuture::join).mapToLong(Long::longValue)
+                .filter(latency -> latency >= 0).sorted().toArray();
+        assertTrue(millis.length > 0);
+
+        System.out.printf("uploads=%d shed=%d virtualThreads=%s java=%d threads(before/peak)=%d/%d "
+                        + "p50=%dms p99=%dms max=%dms%n",
+                CONCURRENT_UPLOADS, CONCURRENT_UPLOADS - millis.length, virtualThreads, Runtime.version().feature(),
+                threadsBefore, threads.getPeakThreadCount(),
+                percentile(millis, 50), percentile(millis, 99), millis[millis.length - 1]);
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    private static byte[] multipartBody(byte[] subtitles, String timeshift) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"timeshift.msg\"\r\n\r\n"
+                + timeshift + "\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"subtitleFile\"; filename=\"Fallen1.srt\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(subtitles);
+        body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+}
@@ -0,0 +1,94 @@
+package mkoutra.subtitleshift.service;
+
+import mkoutra.subtitleshift.config.ExecutionProperties;
+import mkoutra.subtitleshift.exceptions.AdmissionRejectedException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlTest {
+
+    private static AdmissionControl admissionControl(int maxConcurrent, int maxQueued, int maxPerClient, Duration queueTimeout) {
+        ExecutionProperties properties = new ExecutionProperties();
+        properties.getAdmission().setMaxConcurrent(maxConcurrent);
+        properties.getAdmission().setMaxQueued(maxQueued);
+        properties.getAdmission().setMaxPerClient(maxPerClient);
+        properties.getAdmission().setQueueTimeout(queueTimeout);
+        return new AdmissionControl(properties);
+    }
+
+    @Test
+    void testClientLimit() throws Exception {
+        AdmissionControl admissionControl = admissionControl(10, 10, 2, Duration.ofSeconds(1));
+        AdmissionControl.Permit first = admissionControl.acquire("a");
+        admissionControl.acquire("a");
+
+        AdmissionRejectedException rejected = assertThrows(AdmissionRejectedException.class, () -> admissionControl.acquire("a"));
+        assertTrue(rejected.isClientLimit());
+        assertNotNull(admissionControl.acquire("b"));   // Other clients are not affected
+        assertEquals(1, admissionControl.getRejected(AdmissionControl.REJECTED_CLIENT));
+
+        first.close();
+        first.close();                                  // Released once only
+        assertNotNull(admissionControl.acquire("a"));
+        assertEquals(3, admissionControl.getActive());
+    }
+
+    @Test
+    void testQueueFull() throws Exception {
+        AdmissionControl admissionControl = admissionControl(1, 0, 0, Duration.ofSeconds(1));
+        AdmissionControl.Permit permit = admissionControl.acquire("a");
+
+        AdmissionRejectedException rejected = assertThrows(AdmissionRejectedException.class, () -> admissionControl.acquire("b"));
+        assertFalse(rejected.isClientLimit());
+        assertEquals(1, admissionControl.getRejected(AdmissionControl.REJECTED_QUEUE_FULL));
+        assertEquals(0, admissionControl.getQueued());
+
+        permit.close();
+        assertNotNull(admissionControl.acquire("b"));
+    }
+
+    @Test
+    void testQueueTimeout() throws Exception {
+        AdmissionControl admissionControl = admissionControl(1, 5, 1, Duration.ofMillis(50));
+        admissionControl.acquire("a");
+
+        long start = System.nanoTime();
+        assertThrows(AdmissionRejectedException.class, () -> admissionControl.acquire("b"));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, admissionControl.getRejected(AdmissionControl.REJECTED_TIMEOUT));
+
+        // The rejected request no longer counts for its client
+        assertThrows(AdmissionRejectedException.class, () -> admissionControl.acquire("b"));
+        assertEquals(2, admissionControl.getRejected(AdmissionControl.REJECTED_TIMEOUT));
+        assertEquals(0, admissionControl.getRejected(AdmissionControl.REJECTED_CLIENT));
+    }
+
+    @Test
+    void testQueuedRequestIsAdmittedOnRelease() throws Exception {
+        AdmissionControl admissionControl = admissionControl(1, 1, 0, Duration.ofSeconds(10));
+        AdmissionControl.Permit permit = admissionControl.acquire("a");
+
+        CompletableFuture<AdmissionControl.Permit> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return admissionControl.acquire("b");
+            } catch (AdmissionRejectedException | InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (admissionControl.getQueued() == 0 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(1, admissionControl.getQueued());
+
+        permit.close();
+        assertNotNull(waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(0, admissionControl.getQueued());
+        assertEquals(1, admissionControl.getActive());
+    }
+}
@@ -0,0 +1,66 @@
+package mkoutra.subtitleshift.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mkoutra.subtitleshift.config.StorageProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class BatchShifterTest {
+
+    @Autowired
+    private BatchShifter batchShifter;
+
+    @Autowired
+    private StorageProperties storageProperties;
+
+    @Test
+    public void testShiftAllReportsFailuresInManifest() throws IOException {
+        byte[] subtitles = Files.readAllBytes(Paths.get(storageProperties.getUploadDir(), "Fallen1.srt"));
+        List<MultipartFile> files = List.of(
+                new MockMultipartFile("subtitleFiles", "Fallen1.srt", null, subtitles),
+                new MockMultipartFile("subtitleFiles", "Fallen1.txt", null, subtitles),
+                new MockMultipartFile("subtitleFiles", "Fallen1.srt", null, subtitles));
+
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        batchShifter.shiftAll(files, List.of("1234", "1234", "-399"), zip);
+
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(zip.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                entries.put(entry.getName(), zipInputStream.readAllBytes());
+            }
+        }
+
+        assertEquals(3, entries.size());
+        assertEquals(
+                Files.readAllLines(Paths.get(storageProperties.getShiftedDir(), "Fallen1_+1234.srt")),
+                new String(entries.get("Fallen1_+1234.srt"), StandardCharsets.UTF_8).lines().toList());
+        assertTrue(entries.containsKey("Fallen1_-399.srt"));
+
+        JsonNode manifest = new ObjectMapper().readTree(entries.get(BatchShifter.MANIFEST_NAME));
+        assertEquals("Fallen1_+1234.srt", manifest.get(0).get("entry").asText());
+        assertTrue(manifest.get(1).get("entry").isNull());
+        assertFalse(manifest.get(1).get("error").isNull());
+        assertEquals("Fallen1_-399.srt", manifest.get(2).get("entry").asText());
+    }
+}
@@ -0,0 +1,122 @@
+package mkoutra.subtitleshift.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mkoutra.subtitleshift.config.StorageProperties;
+import mkoutra.subtitleshift.exceptions.StorageException;
+import mkoutra.subtitleshift.model.Attachment;
+import mkoutra.subtitleshift.model.ChunkedUpload;
+import mkoutra.subtitleshift.store.AsyncStoreWriter;
+import mkoutra.subtitleshift.store.MemorySubtitleStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedUploadServiceTest {
+
+    private static final byte[] SUBTITLES =
+            "1\n00:00:39,398 --> 00:00:40,940\nHello\n\n".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path root;
+
+    private final StorageProperties storageProperties = new StorageProperties();
+    private final MemorySubtitleStore store = new MemorySubtitleStore(10_000, false);
+    private AsyncStoreWriter storeWriter;
+    private ChunkedUploadService uploadService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storageProperties.setUploadDir(root.resolve("uploads").toString());
+        storageProperties.setShiftedDir(root.resolve("shifted").toString());
+        storageProperties.setMaxUploadSize(1000);
+        ShiftMetrics metrics = new ShiftMetrics(new SimpleMeterRegistry());
+        storeWriter = new AsyncStoreWriter(store, root.resolve("uploads").resolve(StorageService.SPOOL_DIR),
+                10, 10, Duration.ofMillis(10));
+        uploadService = new ChunkedUploadService(storageProperties,
+                new StorageService(storageProperties, metrics, storeWriter), metrics);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        storeWriter.close();
+    }
+
+    private static ByteArrayInputStream chunk(int from, int to) {
+        return new ByteArrayInputStream(Arrays.copyOfRange(SUBTITLES, from, to));
+    }
+
+    @Test
+    void testUploadInChunks() throws Exception {
+        ChunkedUpload upload = uploadService.start("../movie.srt", SUBTITLES.length, "1000");
+        assertEquals("movie.srt", upload.filename());
+
+        assertEquals(10, uploadService.append(upload, 0, chunk(0, 10)));
+        // A resumed upload finds its state again
+        ChunkedUpload resumed = uploadService.find(upload.id()).orElseThrow();
+        assertEquals(upload, resumed);
+        assertEquals(10, uploadService.offset(resumed));
+        assertEquals(SUBTITLES.length, uploadService.append(resumed, 10, chunk(10, SUBTITLES.length)));
+
+        Attachment stored = uploadService.complete(resumed);
+        assertArrayEquals(SUBTITLES, Files.readAllBytes(stored.getFilepath()));
+        assertEquals(".srt", stored.getExtension());
+        assertTrue(uploadService.find(upload.id()).isEmpty());
+    }
+
+    @Test
+    void testCompletedUploadIsPersistedToStore() throws Exception {
+        storageProperties.setPersist(true);
+        ChunkedUpload upload = uploadService.start("movie.srt", SUBTITLES.length, "0");
+        uploadService.append(upload, 0, chunk(0, SUBTITLES.length));
+
+        Attachment stored = uploadService.complete(upload);
+        assertTrue(storeWriter.awaitIdle(Duration.ofSeconds(5)));
+        try (InputStream in = store.get(StorageService.ORIGINALS_PREFIX + stored.getSavedName()).orElseThrow()) {
+            assertArrayEquals(SUBTITLES, in.readAllBytes());
+        }
+        assertArrayEquals(SUBTITLES, Files.readAllBytes(stored.getFilepath()));   // The working copy stays
+    }
+
+    @Test
+    void testChunkAtWrongOffset() throws Exception {
+        ChunkedUpload upload = uploadService.start("movie.srt", SUBTITLES.length, "0");
+        uploadService.append(upload, 0, chunk(0, 10));
+
+        assertThrows(IllegalStateException.class, () -> uploadService.append(upload, 5, chunk(5, 15)));
+        assertThrows(IllegalStateException.class, () -> uploadService.complete(upload));
+        assertEquals(10, uploadService.offset(upload));
+    }
+
+    @Test
+    void testChunkPastLength() throws Exception {
+        ChunkedUpload upload = uploadService.start("movie.srt", 10, "0");
+
+        assertThrows(IllegalArgumentException.class, () -> uploadService.append(upload, 0, chunk(0, 11)));
+        assertEquals(0, uploadService.offset(upload));
+    }
+
+    @Test
+    void testInvalidUploads() {
+        assertThrows(StorageException.class, () -> uploadService.start("movie.exe", 10, "0"));
+        assertThrows(StorageException.class, () -> uploadService.start("movie.srt", 1001, "0"));
+        assertThrows(IllegalArgumentException.class, () -> uploadService.start("movie.srt", 10, "1s"));
+    }
+
+    @Test
+    void testStartCreatesNoFileForInvalidUpload() throws IOException {
+        assertThrows(StorageException.class, () -> uploadService.start("movie.srt", 0, "0"));
+        assertTrue(Files.notExists(root.resolve("uploads").resolve(ChunkedUploadService.PARTIAL_DIR)));
+    }
+}
@@ -0,0 +1,78 @@
+package mkoutra.subtitleshift.service;
+
+import mkoutra.subtitleshift.config.StorageProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedUploadsTest {
+
+    private static final byte[] SUBTITLES =
+            "1\n00:00:39,398 --> 00:00:40,940\nHello\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final CompressedUploads compressedUploads = new CompressedUploads(new StorageProperties());
+
+    @Test
+    void testUnwrapGzip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(SUBTITLES);
+        }
+
+        MultipartFile file = compressedUploads.unwrap(
+                new MockMultipartFile("subtitleFile", "movie.srt.GZ", null, bytes.toByteArray()));
+
+        assertEquals("movie.srt", file.getOriginalFilename());
+        assertArrayEquals(SUBTITLES, file.getBytes());
+        assertArrayEquals(SUBTITLES, file.getInputStream().readAllBytes());    // Decompressed again on every read
+    }
+
+    @Test
+    void testUnwrapZip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("subs/"));
+            zip.putNextEntry(new ZipEntry("__MACOSX/subs/._movie.vtt"));
+            zip.write(new byte[] {1, 2, 3});
+            zip.putNextEntry(new ZipEntry("subs/movie.vtt"));
+            zip.write(SUBTITLES);
+        }
+
+        MultipartFile file = compressedUploads.unwrap(
+                new MockMultipartFile("subtitleFile", "movie.zip", null, bytes.toByteArray()));
+
+        assertEquals("movie.vtt", file.getOriginalFilename());
+        assertArrayEquals(SUBTITLES, file.getBytes());
+    }
+
+    @Test
+    void testPlainUploadIsUnchanged() throws IOException {
+        MockMultipartFile upload = new MockMultipartFile("subtitleFile", "movie.srt", null, SUBTITLES);
+
+        assertSame(upload, compressedUploads.unwrap(upload));
+    }
+
+    @Test
+    void testDecompressedSizeIsLimited() throws IOException {
+        StorageProperties storageProperties = new StorageProperties();
+        storageProperties.setMaxUploadSize(SUBTITLES.length - 1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(SUBTITLES);
+        }
+
+        MultipartFile file = new CompressedUploads(storageProperties).unwrap(
+                new MockMultipartFile("subtitleFile", "movie.srt.gz", null, bytes.toByteArray()));
+
+        assertThrows(IOException.class, file::getBytes);
+    }
+}
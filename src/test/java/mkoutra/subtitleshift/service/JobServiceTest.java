@@ -0,0 +1,293 @@
+package mkoutra.subtitleshift.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mkoutra.subtitleshift.config.ExecutionProperties;
+import mkoutra.subtitleshift.config.StorageProperties;
+import mkoutra.subtitleshift.engine.SubtitleEngine;
+import mkoutra.subtitleshift.exceptions.StorageException;
+import mkoutra.subtitleshift.model.Attachment;
+import mkoutra.subtitleshift.model.JobStatus;
+import mkoutra.subtitleshift.model.TimeTransform;
+import mkoutra.subtitleshift.store.AsyncStoreWriter;
+import mkoutra.subtitleshift.store.TestStoreWriters;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobServiceTest {
+
+    private static final String SUBTITLES = "1\n00:00:01,000 --> 00:00:02,000\nHello\n\n"
+            + "2\n00:00:03,000 --> 00:00:04,000\nworld\n";
+
+    @TempDir
+    Path root;
+
+    private final StorageProperties storageProperties = new StorageProperties();
+    private final ExecutionProperties executionProperties = new ExecutionProperties();
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private AsyncStoreWriter storeWriter;
+    private SubtitleShifter subtitleShifter;
+    private StorageService storageService;
+    private RetentionService retentionService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storageProperties.setUploadDir(root.resolve("uploads").toString());
+        storageProperties.setShiftedDir(root.resolve("shifted").toString());
+        ShiftMetrics metrics = new ShiftMetrics(new SimpleMeterRegistry());
+        storeWriter = TestStoreWriters.inMemory(root.resolve("spool"));
+        storageService = new StorageService(storageProperties, metrics, storeWriter);
+        subtitleShifter = new SubtitleShifter(storageService, SubtitleEngine.defaults(), metrics);
+        retentionService = new RetentionService(storageProperties);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        storeWriter.close();
+    }
+
+    private JobService jobService() {
+        return new JobService(storageService, subtitleShifter, retentionService, storageProperties, executionProperties, objectMapper);
+    }
+
+    private static MockMultipartFile upload(String filename) {
+        return new MockMultipartFile("subtitleFile", filename, null, SUBTITLES.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Path journal(UUID id) {
+        return root.resolve("uploads").resolve(JobService.JOBS_DIR).resolve(id + ".properties");
+    }
+
+    private Properties readJournal(UUID id) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(journal(id))) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    private void writeJournal(UUID id, Properties properties) throws IOException {
+        Files.createDirectories(journal(id).getParent());
+        try (Writer writer = Files.newBufferedWriter(journal(id))) {
+            properties.store(writer, null);
+        }
+    }
+
+    private static JobStatus await(JobService jobService, UUID id) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        JobStatus status = jobService.find(id).orElseThrow();
+        while (!status.state().isFinished() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            status = jobService.find(id).orElseThrow();
+        }
+        return status;
+    }
+
+    @Test
+    void testJobIsShiftedInBackground() throws Exception {
+        JobService jobService = jobService();
+        JobStatus queued = jobService.submit(upload("movie.srt"), "1500", null);
+        assertEquals("movie.srt", queued.filename());
+        assertNull(queued.result());
+
+        JobStatus done = await(jobService, queued.id());
+        assertEquals(JobStatus.State.DONE, done.state());
+        assertEquals(2, done.cues());
+        assertEquals("/jobs/" + queued.id() + "/result", done.result());
+        assertNotNull(done.started());
+        assertNotNull(done.finished());
+
+        Path result = jobService.result(queued.id()).orElseThrow();
+        assertTrue(Files.readString(result).contains("00:00:02,500 --> 00:00:03,500"));
+
+        Properties journal = readJournal(queued.id());
+        assertEquals("DONE", journal.getProperty("state"));
+        assertEquals(result.toString(), journal.getProperty("result"));
+
+        // Kept by the retention sweep while the job can be polled
+        storageProperties.getRetention().setMaxTotalBytes(0);
+        retentionService.sweep();
+        assertTrue(Files.exists(result));
+        assertTrue(Files.exists(jobService.input(queued.id()).orElseThrow()));
+
+        String hash = jobService.resultHash(queued.id()).orElseThrow();
+        assertEquals(64, hash.length());
+        assertEquals(hash, journal.getProperty("hash"));
+
+        JobService restarted = jobService();
+        restarted.recover();
+        assertEquals(Optional.of(hash), restarted.resultHash(queued.id()));
+    }
+
+    @Test
+    void testFailedJobIsReported() throws Exception {
+        JobService jobService = jobService();
+        JobStatus queued = jobService.submit(upload("movie.srt"), "0", null);
+        JobStatus done = await(jobService, queued.id());
+        assertEquals(JobStatus.State.DONE, done.state());
+
+        // A job whose upload is gone fails
+        Files.delete(jobService.input(queued.id()).orElseThrow());
+        JobService restarted = jobService();
+        Properties properties = readJournal(queued.id());
+        properties.setProperty("state", "RUNNING");
+        writeJournal(queued.id(), properties);
+        restarted.recover();
+
+        JobStatus failed = await(restarted, queued.id());
+        assertEquals(JobStatus.State.FAILED, failed.state());
+        assertNotNull(failed.error());
+        assertTrue(restarted.result(queued.id()).isEmpty());
+    }
+
+    @Test
+    void testUnfinishedJobsAreRecoveredFromJournal() throws Exception {
+        Path input = Files.createDirectories(root.resolve("uploads")).resolve("0123456789movie.srt");
+        Files.writeString(input, SUBTITLES);
+        UUID id = UUID.randomUUID();
+        Properties properties = new Properties();
+        properties.setProperty("filename", "movie.srt");
+        properties.setProperty("savedName", input.getFileName().toString());
+        properties.setProperty("input", input.toString());
+        properties.setProperty("timeshift", "-500");
+        properties.setProperty("submitted", Instant.now().toString());
+        properties.setProperty("state", "QUEUED");
+        writeJournal(id, properties);
+
+        JobService jobService = jobService();
+        jobService.recover();
+        JobStatus done = await(jobService, id);
+        assertEquals(JobStatus.State.DONE, done.state());
+        assertTrue(Files.readString(jobService.result(id).orElseThrow()).contains("00:00:00,500 --> 00:00:01,500"));
+    }
+
+    @Test
+    void testCallbackReceivesStatus() throws Exception {
+        CompletableFuture<String> received = new CompletableFuture<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/done", exchange -> {
+            received.complete(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        executionProperties.getJobs().setCallbackHosts(List.of("127.0.0.1"));   // Loopback is refused otherwise
+        try {
+            JobService jobService = jobService();
+            JobStatus queued = jobService.submit(upload("movie.srt"), "1000",
+                    "http://127.0.0.1:" + server.getAddress().getPort() + "/done");
+
+            JsonNode status = objectMapper.readTree(received.get(10, TimeUnit.SECONDS));
+            assertEquals(queued.id().toString(), status.get("id").asText());
+            assertEquals("DONE", status.get("state").asText());
+            assertEquals(2, status.get("cues").asLong());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testInvalidSubmissions() {
+        executionProperties.getJobs().setMaxQueued(0);
+        JobService jobService = jobService();
+
+        assertThrows(IllegalArgumentException.class, () -> jobService.submit(upload("movie.srt"), "1s", null));
+        assertThrows(IllegalArgumentException.class, () -> jobService.submit(upload("movie.srt"), "0", "file:///etc/passwd"));
+        assertThrows(IllegalArgumentException.class, () -> jobService.submit(upload("movie.srt"), "0", "http://127.0.0.1:8080/done"));
+        assertThrows(IllegalArgumentException.class, () -> jobService.submit(upload("movie.srt"), "0", "http://169.254.169.254/latest"));
+        assertThrows(IllegalArgumentException.class, () -> jobService.submit(upload("movie.srt"), "0", "http://10.1.2.3/done"));
+        assertThrows(IllegalArgumentException.class, () -> jobService.submit(upload("movie.srt"), "0", "http://[::1]/done"));
+        assertThrows(StorageException.class, () -> jobService.validate(upload("movie.txt"), "0", null));
+        assertThrows(RejectedExecutionException.class, () -> jobService.submit(upload("movie.srt"), "0", null));
+        assertTrue(jobService.find(UUID.randomUUID()).isEmpty());
+    }
+
+    @Test
+    void testConcurrentSubmissionsNeverExceedMaxQueued() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        subtitleShifter = new SubtitleShifter(storageService, SubtitleEngine.defaults(), new ShiftMetrics(new SimpleMeterRegistry())) {
+            @Override
+            public Attachment applyShift(Attachment attachment, TimeTransform transform) throws IOException {
+                try {
+                    release.await();            // Keeps the only worker busy, so that submitted jobs stay queued
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.applyShift(attachment, transform);
+            }
+        };
+        executionProperties.getJobs().setThreads(1);
+        executionProperties.getJobs().setMaxQueued(3);
+        JobService jobService = jobService();
+        ExecutorService submitters = Executors.newFixedThreadPool(8);
+        try {
+            jobService.submit(upload("movie.srt"), "0", null);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (jobService.getRunning() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            List<Callable<JobStatus>> submits = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                submits.add(() -> jobService.submit(upload("movie.srt"), "0", null));
+            }
+            int accepted = 0;
+            for (Future<JobStatus> submit : submitters.invokeAll(submits)) {
+                try {
+                    submit.get();
+                    accepted++;
+                } catch (ExecutionException e) {
+                    assertInstanceOf(RejectedExecutionException.class, e.getCause());
+                }
+            }
+            assertEquals(3, accepted);
+            assertEquals(3, jobService.getQueued());
+        } finally {
+            release.countDown();
+            submitters.shutdownNow();
+            jobService.shutdown();
+        }
+    }
+
+    @Test
+    void testOnlyPublicAddressesArePublic() throws UnknownHostException {
+        assertTrue(JobService.isPublic(InetAddress.getByName("93.184.216.34")));
+        assertTrue(JobService.isPublic(InetAddress.getByName("2606:2800:220:1::1")));
+        for (String address : List.of("127.0.0.1", "0.0.0.0", "10.0.0.1", "172.16.0.1", "192.168.1.1", "169.254.169.254",
+                "100.64.0.1", "::1", "fe80::1", "fd00::1", "::ffff:127.0.0.1")) {
+            assertFalse(JobService.isPublic(InetAddress.getByName(address)), address);
+        }
+    }
+}
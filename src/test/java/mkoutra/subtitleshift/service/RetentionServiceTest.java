@@ -0,0 +1,112 @@
+package mkoutra.subtitleshift.service;
+
+import mkoutra.subtitleshift.config.StorageProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetentionServiceTest {
+
+    @TempDir
+    Path root;
+
+    private StorageProperties storageProperties() {
+        StorageProperties storageProperties = new StorageProperties();
+        storageProperties.setUploadDir(root.resolve("uploads").toString());
+        storageProperties.setShiftedDir(root.resolve("shifted").toString());
+        storageProperties.getRetention().setMaxAge(Duration.ofHours(1));
+        storageProperties.getRetention().setMaxTotalBytes(1000);
+        return storageProperties;
+    }
+
+    private Path createFile(String path, int size, Duration age) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[size]);
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(age)));
+        return file;
+    }
+
+    @Test
+    void testSweepDeletesExpiredFiles() throws IOException {
+        Path expired = createFile("uploads/ab/expired.srt", 10, Duration.ofHours(2));
+        Path fresh = createFile("shifted/ab/fresh.srt", 10, Duration.ZERO);
+        Path cached = createFile("shifted/cache/abc_1000.shifted", 10, Duration.ofHours(2));
+
+        RetentionService retentionService = new RetentionService(storageProperties());
+        retentionService.sweep();
+
+        assertFalse(Files.exists(expired));
+        assertTrue(Files.exists(fresh));
+        assertTrue(Files.exists(cached));
+        assertEquals(1, retentionService.getReclaimedFiles());
+        assertEquals(10, retentionService.getReclaimedBytes());
+    }
+
+    @Test
+    void testSweepDeletesOldestFilesOverSizeLimit() throws IOException {
+        Path oldest = createFile("uploads/a.srt", 600, Duration.ofMinutes(3));
+        Path older = createFile("shifted/b.srt", 300, Duration.ofMinutes(2));
+        Path newest = createFile("uploads/c.srt", 300, Duration.ofMinutes(1));
+
+        new RetentionService(storageProperties()).sweep();
+
+        assertFalse(Files.exists(oldest));
+        assertTrue(Files.exists(older));
+        assertTrue(Files.exists(newest));
+    }
+
+    @Test
+    void testAfterResponse() throws IOException {
+        Path upload = createFile("uploads/a.srt", 10, Duration.ZERO);
+        StorageProperties storageProperties = storageProperties();
+
+        new RetentionService(storageProperties).afterResponse(upload);
+        assertTrue(Files.exists(upload));
+
+        storageProperties.getRetention().setDeleteAfterResponse(true);
+        new RetentionService(storageProperties).afterResponse(upload);
+        assertFalse(Files.exists(upload));
+    }
+
+    @Test
+    void testSweepKeepsUploadsInProgress() throws IOException {
+        // The properties file of an upload is written first, its part file on every chunk
+        Path properties = createFile("uploads/partial/abc.properties", 600, Duration.ofHours(2));
+        Path part = createFile("uploads/partial/abc.part", 600, Duration.ZERO);
+        Path abandoned = createFile("uploads/partial/def.part", 10, Duration.ofHours(2));
+        Path abandonedProperties = createFile("uploads/partial/def.properties", 10, Duration.ofHours(3));
+
+        new RetentionService(storageProperties()).sweep();
+
+        assertTrue(Files.exists(properties));
+        assertTrue(Files.exists(part));
+        assertFalse(Files.exists(abandoned));
+        assertFalse(Files.exists(abandonedProperties));
+    }
+
+    @Test
+    void testSweepKeepsProtectedFiles() throws IOException {
+        Path input = createFile("uploads/a.srt", 600, Duration.ofHours(2));
+        Path result = createFile("shifted/a_+1000.srt", 600, Duration.ofHours(2));
+        RetentionService retentionService = new RetentionService(storageProperties());
+
+        retentionService.protect(input, result);
+        retentionService.sweep();
+        assertTrue(Files.exists(input));
+        assertTrue(Files.exists(result));
+
+        retentionService.release(input, result);
+        retentionService.sweep();
+        assertFalse(Files.exists(input));
+        assertFalse(Files.exists(result));
+    }
+}
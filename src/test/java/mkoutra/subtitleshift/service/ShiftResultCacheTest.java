@@ -0,0 +1,102 @@
+package mkoutra.subtitleshift.service;
+
+import mkoutra.subtitleshift.config.StorageProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShiftResultCacheTest {
+
+    @TempDir
+    Path shiftedDir;
+
+    private StorageProperties storageProperties() {
+        StorageProperties storageProperties = new StorageProperties();
+        storageProperties.setShiftedDir(shiftedDir.toString());
+        return storageProperties;
+    }
+
+    @Test
+    void testKeyDependsOnContentAndShift() throws IOException {
+        ShiftResultCache cache = new ShiftResultCache(storageProperties());
+        MockMultipartFile file = new MockMultipartFile("subtitleFile", "a.srt", null, "1\n".getBytes());
+        MockMultipartFile renamed = new MockMultipartFile("subtitleFile", "b.srt", null, "1\n".getBytes());
+
+        assertEquals(cache.key(file, "1000"), cache.key(renamed, "1000"));
+        assertNotEquals(cache.key(file, "1000"), cache.key(file, "-1000"));
+    }
+
+    @Test
+    void testDiskTierSurvivesNewInstance() {
+        byte[] result = "shifted".getBytes(StandardCharsets.UTF_8);
+        new ShiftResultCache(storageProperties()).put("abc_1000", result);
+
+        ShiftResultCache cache = new ShiftResultCache(storageProperties());
+        assertArrayEquals(result, cache.get("abc_1000").orElseThrow());
+        assertTrue(cache.get("abc_2000").isEmpty());
+    }
+
+    @Test
+    void testDiskTierIsCompressed() throws IOException {
+        byte[] result = "00:00:39,398 --> 00:00:40,940\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+        ShiftResultCache cache = new ShiftResultCache(storageProperties());
+        cache.put("abc_1000", result);
+
+        Path compressed = cache.getCompressed("abc_1000").orElseThrow();
+        assertTrue(Files.size(compressed) < result.length / 3);
+        try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(compressed))) {
+            assertArrayEquals(result, inputStream.readAllBytes());
+        }
+        assertTrue(cache.getCompressed("abc_2000").isEmpty());
+    }
+
+    @Test
+    void testExpiredEntriesAreMissed() {
+        StorageProperties storageProperties = storageProperties();
+        storageProperties.getCache().setTtl(Duration.ZERO);
+        ShiftResultCache cache = new ShiftResultCache(storageProperties);
+
+        cache.put("abc_1000", new byte[] {1, 2, 3});
+        assertTrue(cache.get("abc_1000").isEmpty());
+    }
+
+    @Test
+    void testUncompressedEntriesAreEvicted() throws IOException {
+        // Left by versions before the disk tier was compressed, and never read again
+        Path cacheDir = Files.createDirectories(shiftedDir.resolve(ShiftResultCache.CACHE_DIR));
+        Path uncompressed = Files.write(cacheDir.resolve("abc_1000.shifted"), new byte[] {1, 2, 3});
+        Files.setLastModifiedTime(uncompressed, FileTime.from(Instant.now().minus(Duration.ofDays(30))));
+
+        new ShiftResultCache(storageProperties()).put("abc_2000", new byte[] {4, 5, 6});
+        assertFalse(Files.exists(uncompressed));
+        assertTrue(Files.exists(cacheDir.resolve("abc_2000.shifted.gz")));
+    }
+
+    @Test
+    void testCaptureCachesOnlyOnClose() throws IOException {
+        ShiftResultCache cache = new ShiftResultCache(storageProperties());
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+        OutputStream captureStream = cache.capture("abc_1000", response);
+        captureStream.write("shifted".getBytes(StandardCharsets.UTF_8));
+        assertTrue(cache.get("abc_1000").isEmpty());
+
+        captureStream.close();
+        assertEquals("shifted", response.toString(StandardCharsets.UTF_8));
+        assertEquals("shifted", new String(cache.get("abc_1000").orElseThrow(), StandardCharsets.UTF_8));
+    }
+}
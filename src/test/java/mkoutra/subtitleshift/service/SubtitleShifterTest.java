@@ -1,16 +1,21 @@
 package mkoutra.subtitleshift.service;
 
 import mkoutra.subtitleshift.config.StorageProperties;
+import mkoutra.subtitleshift.engine.CueWindow;
 import mkoutra.subtitleshift.model.Attachment;
+import mkoutra.subtitleshift.model.TimeTransform;
 import org.apache.tika.Tika;
 import org.apache.tika.parser.txt.CharsetDetector;
 import org.apache.tika.parser.txt.CharsetMatch;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
@@ -40,6 +45,52 @@ class SubtitleShifterTest {
         subtitleShifter.applyShift(attachment, "1234");
     }
 
+    @Test
+    public void testShiftToStream() throws IOException {
+        Path inputPath = Paths.get(storageProperties.getUploadDir(), "Fallen1.srt");
+        MockMultipartFile file = new MockMultipartFile("subtitleFile", "Fallen1.srt",
+                "application/octet-stream", Files.readAllBytes(inputPath));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        subtitleShifter.shiftToStream(file, "1234", outputStream);
+
+        // Byte for byte, line terminators included: the same as the file written by the byte path
+        Path expectedPath = Paths.get(storageProperties.getShiftedDir(), "Fallen1_+1234.srt");
+        assertArrayEquals(Files.readAllBytes(expectedPath), outputStream.toByteArray());
+    }
+
+    @Test
+    public void testFindCueStarts() throws IOException {
+        Path inputPath = Paths.get(storageProperties.getUploadDir(), "Fallen1.srt");
+        MockMultipartFile file = new MockMultipartFile("subtitleFile", "Fallen1.srt",
+                "application/octet-stream", Files.readAllBytes(inputPath));
+
+        assertArrayEquals(new long[] {48695, 39398}, subtitleShifter.findCueStarts(file, 3, 1));
+        assertThrows(IllegalArgumentException.class, () -> subtitleShifter.findCueStarts(file, 100_000));
+    }
+
+    @Test
+    public void testReadCues() throws IOException {
+        Path inputPath = Paths.get(storageProperties.getUploadDir(), "Fallen1.srt");
+        MockMultipartFile file = new MockMultipartFile("subtitleFile", "Fallen1.srt",
+                "application/octet-stream", Files.readAllBytes(inputPath));
+
+        CueWindow window = subtitleShifter.readCues(file, TimeTransform.offset(1000), 1, 2);
+        assertEquals(2, window.cues().size());
+        assertTrue(window.hasMore());
+        CueWindow.Cue cue = window.cues().get(0);
+        assertEquals(2, cue.cue());
+        assertEquals(43892, cue.start());
+        assertEquals(44892, cue.shiftedStart());
+        assertEquals(48298, cue.shiftedEnd());
+        assertEquals(48695, window.cues().get(1).start());
+
+        CueWindow end = subtitleShifter.readCues(file, TimeTransform.offset(1000), 100_000, 10);
+        assertTrue(end.cues().isEmpty());
+        assertFalse(end.hasMore());
+        assertThrows(IllegalArgumentException.class, () -> subtitleShifter.readCues(file, TimeTransform.offset(0), -1, 10));
+    }
+
     @Test
     public void testTika() throws IOException {
         String filename = "substance2.srt";
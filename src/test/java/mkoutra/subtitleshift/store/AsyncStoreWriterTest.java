@@ -0,0 +1,165 @@
+package mkoutra.subtitleshift.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class AsyncStoreWriterTest {
+
+    @TempDir
+    Path root;
+
+    /** Records the size of each batch, fails while failing is set and waits for the gate to open. */
+    private static class RecordingStore extends MemorySubtitleStore {
+        final List<Integer> batches = new CopyOnWriteArrayList<>();
+        final AtomicBoolean failing = new AtomicBoolean();
+        volatile CountDownLatch gate = new CountDownLatch(0);
+
+        RecordingStore() {
+            super(1_000_000, false);
+        }
+
+        @Override
+        public void put(String key, Path source) throws IOException {
+            if (failing.get()) {
+                throw new IOException("Store unavailable");
+            }
+            super.put(key, source);
+        }
+
+        @Override
+        public void putAll(Map<String, Path> files) throws IOException {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            batches.add(files.size());
+            super.putAll(files);
+        }
+    }
+
+    private Path file(String name, String content) throws IOException {
+        return Files.writeString(root.resolve(name), content, StandardCharsets.UTF_8);
+    }
+
+    private static String read(SubtitleStore store, String key) throws IOException {
+        Optional<InputStream> content = store.get(key);
+        assertTrue(content.isPresent(), key);
+        try (InputStream in = content.get()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static long spooled(Path spoolDir) throws IOException {
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void testWritesAreBatched() throws Exception {
+        RecordingStore store = new RecordingStore();
+        Path spoolDir = root.resolve("spool");
+        try (AsyncStoreWriter writer = new AsyncStoreWriter(store, spoolDir, 100, 5, Duration.ofMillis(200))) {
+            for (int i = 0; i < 12; i++) {
+                Path file = file(i + ".srt", "cue " + i);
+                writer.submit("originals/" + i + ".srt", file);
+                Files.delete(file);     // The spooled link keeps the content
+            }
+            assertTrue(writer.awaitIdle(Duration.ofSeconds(5)));
+
+            assertEquals(List.of(5, 5, 2), store.batches);
+            assertEquals("cue 7", read(store, "originals/7.srt"));
+            assertEquals(12, writer.getWritten());
+            assertEquals(0, spooled(spoolDir));
+        }
+    }
+
+    @Test
+    void testFailedWritesStaySpooledAndAreRecovered() throws Exception {
+        RecordingStore store = new RecordingStore();
+        store.failing.set(true);
+        Path spoolDir = root.resolve("spool");
+        try (AsyncStoreWriter writer = new AsyncStoreWriter(store, spoolDir, 100, 10, Duration.ofMillis(10))) {
+            writer.submit("originals/a.srt", file("a.srt", "a"));
+            writer.submit(".hidden/b.srt", file("b.srt", "b"));
+            assertTrue(writer.awaitIdle(Duration.ofSeconds(5)));
+            assertEquals(2, writer.getFailed());
+            assertEquals(2, spooled(spoolDir));
+        }
+
+        // After a restart, the spool is written
+        store.failing.set(false);
+        try (AsyncStoreWriter writer = new AsyncStoreWriter(store, spoolDir, 100, 10, Duration.ofMillis(10))) {
+            assertTrue(writer.awaitIdle(Duration.ofSeconds(5)));
+            assertEquals(2, writer.getWritten());
+            assertEquals("a", read(store, "originals/a.srt"));
+            assertEquals("b", read(store, ".hidden/b.srt"));
+            assertEquals(0, spooled(spoolDir));
+        }
+    }
+
+    @Test
+    void testFullQueueDefersToSpool() throws Exception {
+        RecordingStore store = new RecordingStore();
+        store.gate = new CountDownLatch(1);
+        try (AsyncStoreWriter writer = new AsyncStoreWriter(store, root.resolve("spool"), 1, 1, Duration.ofMillis(100))) {
+            for (int i = 0; i < 5; i++) {
+                writer.submit("originals/" + i + ".srt", file(i + ".srt", "cue " + i));
+            }
+            assertTrue(writer.getDeferred() >= 3);     // One file being written, one queued
+            store.gate.countDown();
+
+            // Deferred files are picked up by a scan of the spool once the queue drains
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (writer.getWritten() < 5 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            for (int i = 0; i < 5; i++) {
+                assertEquals("cue " + i, read(store, "originals/" + i + ".srt"));
+            }
+        }
+    }
+
+    @Test
+    void testIdleWorkerDoesNotSpin() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadCpuTimeSupported());
+        Set<Thread> before = Thread.getAllStackTraces().keySet();
+        try (AsyncStoreWriter writer = new AsyncStoreWriter(new RecordingStore(), root.resolve("spool"), 10, 10, Duration.ZERO)) {
+            Thread worker = Thread.getAllStackTraces().keySet().stream()
+                    .filter(thread -> thread.getName().equals("store-writer") && !before.contains(thread))
+                    .findFirst()
+                    .orElseThrow();
+            writer.submit("originals/a.srt", file("a.srt", "a"));
+            assertTrue(writer.awaitIdle(Duration.ofSeconds(5)));
+
+            long cpuBefore = threads.getThreadCpuTime(worker.getId());
+            Thread.sleep(500);
+            assertTrue(threads.getThreadCpuTime(worker.getId()) - cpuBefore < TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> new AsyncStoreWriter(new RecordingStore(), root.resolve("spool"), 10, 10, Duration.ofMillis(-1)));
+    }
+}
@@ -0,0 +1,145 @@
+package mkoutra.subtitleshift.store;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the S3 store against a minimal stand-in of the S3 object API.
+ */
+class S3SubtitleStoreTest {
+
+    @TempDir
+    Path root;
+
+    private HttpServer server;
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+    private S3SubtitleStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        Clock clock = Clock.fixed(Instant.parse("2026-03-01T12:30:00Z"), ZoneOffset.UTC);
+        store = new S3SubtitleStore(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/"),
+                "eu-west-1", "subtitles", "AKID", "secret", clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        authorizations.add(authorization);
+        if (authorization == null || !"UNSIGNED-PAYLOAD".equals(exchange.getRequestHeaders().getFirst("x-amz-content-sha256"))) {
+            exchange.sendResponseHeaders(403, -1);
+            exchange.close();
+            return;
+        }
+
+        String path = exchange.getRequestURI().getRawPath();
+        byte[] object = objects.get(path);
+        switch (exchange.getRequestMethod()) {
+            case "PUT" -> {
+                objects.put(path, exchange.getRequestBody().readAllBytes());
+                exchange.sendResponseHeaders(200, -1);
+            }
+            case "GET", "HEAD" -> {
+                if (object == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else if (exchange.getRequestMethod().equals("HEAD")) {
+                    exchange.getResponseHeaders().add("Content-Length", String.valueOf(object.length));
+                    exchange.sendResponseHeaders(200, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, object.length);
+                    exchange.getResponseBody().write(object);
+                }
+            }
+            case "DELETE" -> {
+                objects.remove(path);
+                exchange.sendResponseHeaders(204, -1);
+            }
+            default -> exchange.sendResponseHeaders(405, -1);
+        }
+        exchange.close();
+    }
+
+    private Path file(String name, String content) throws IOException {
+        return Files.writeString(root.resolve(name), content, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testPutGetDelete() throws IOException {
+        store.put("originals/3fa2 Fallen (1998).srt", file("a.srt", "Καλημέρα"));
+
+        assertTrue(objects.containsKey("/subtitles/originals/3fa2%20Fallen%20%281998%29.srt"));
+        try (InputStream in = store.get("originals/3fa2 Fallen (1998).srt").orElseThrow()) {
+            assertEquals("Καλημέρα", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertTrue(store.get("originals/missing.srt").isEmpty());
+
+        assertTrue(store.delete("originals/3fa2 Fallen (1998).srt"));
+        assertFalse(store.delete("originals/3fa2 Fallen (1998).srt"));
+        assertTrue(objects.isEmpty());
+    }
+
+    @Test
+    void testPutAllSendsEveryFile() throws IOException {
+        store.putAll(Map.of("a", file("a", "a"), "b", file("b", "b"), "c/d", file("d", "d")));
+
+        assertEquals(3, objects.size());
+        assertArrayEquals("d".getBytes(StandardCharsets.UTF_8), objects.get("/subtitles/c/d"));
+    }
+
+    @Test
+    void testRequestsAreSigned() throws IOException {
+        store.put("a.srt", file("a.srt", "a"));
+
+        String authorization = authorizations.get(0);
+        assertTrue(authorization.startsWith("AWS4-HMAC-SHA256 Credential=AKID/20260301/eu-west-1/s3/aws4_request, "
+                + "SignedHeaders=host;x-amz-content-sha256;x-amz-date, Signature="), authorization);
+        assertEquals(64, authorization.substring(authorization.indexOf("Signature=") + 10).length());
+    }
+
+    @Test
+    void testFailedRequestThrows() {
+        server.removeContext("/");
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        assertThrows(IOException.class, () -> store.put("a.srt", file("a.srt", "a")));
+        assertThrows(IOException.class, () -> store.get("a.srt"));
+    }
+
+    @Test
+    void testEncode() {
+        assertEquals("originals/a%2Bb%20c~.srt", S3SubtitleStore.encode("originals/a+b c~.srt", true));
+        assertEquals("a%2Fb", S3SubtitleStore.encode("a/b", false));
+        assertEquals("%CE%B1", S3SubtitleStore.encode("α", true));
+    }
+}
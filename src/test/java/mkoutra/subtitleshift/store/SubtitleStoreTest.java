@@ -0,0 +1,92 @@
+package mkoutra.subtitleshift.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubtitleStoreTest {
+
+    @TempDir
+    Path root;
+
+    private Path file(String name, String content) throws IOException {
+        return Files.writeString(root.resolve(name), content, StandardCharsets.UTF_8);
+    }
+
+    private static String read(SubtitleStore store, String key) throws IOException {
+        Optional<InputStream> content = store.get(key);
+        if (content.isEmpty()) {
+            return null;
+        }
+        try (InputStream in = content.get()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private void testPutGetDelete(SubtitleStore store) throws IOException {
+        store.put("originals/a.srt", file("a.srt", "first"));
+        store.put("originals/a.srt", file("b.srt", "replaced"));
+        store.putAll(Map.of("originals/c.srt", file("c.srt", "third")));
+
+        assertEquals("replaced", read(store, "originals/a.srt"));
+        assertEquals("third", read(store, "originals/c.srt"));
+        assertNull(read(store, "originals/missing.srt"));
+
+        assertTrue(store.delete("originals/a.srt"));
+        assertFalse(store.delete("originals/a.srt"));
+        assertNull(read(store, "originals/a.srt"));
+    }
+
+    @Test
+    void testLocalStore() throws IOException {
+        Path dir = root.resolve("store");
+        testPutGetDelete(new LocalSubtitleStore(dir));
+
+        assertTrue(Files.exists(dir.resolve("originals").resolve("c.srt")));
+        try (Stream<Path> files = Files.list(dir.resolve("originals"))) {
+            assertEquals(1, files.count());     // No temporary file left
+        }
+    }
+
+    @Test
+    void testMemoryStore() throws IOException {
+        testPutGetDelete(new MemorySubtitleStore(1000, false));
+        testPutGetDelete(new MemorySubtitleStore(1000, true));
+    }
+
+    @Test
+    void testMemoryStoreEvictsLeastRecentlyUsed() throws IOException {
+        MemorySubtitleStore store = new MemorySubtitleStore(10, true);
+        store.put("a", file("a", "aaaa"));
+        store.put("b", file("b", "bbbb"));
+        InputStream a = store.get("a").orElseThrow();  // a is now the most recently used
+
+        store.put("c", file("c", "cccc"));
+        assertNull(read(store, "b"));
+        assertEquals("cccc", read(store, "c"));
+        assertEquals(8, store.getBytes());
+        assertEquals("aaaa", new String(a.readAllBytes(), StandardCharsets.UTF_8));
+
+        assertThrows(IOException.class, () -> store.put("d", file("d", "dddddddddddd")));
+        assertEquals("aaaa", read(store, "a"));
+    }
+
+    @Test
+    void testInvalidKeys() throws IOException {
+        SubtitleStore store = new LocalSubtitleStore(root.resolve("store"));
+        Path file = file("a.srt", "a");
+        for (String key : new String[] {"", "/etc/passwd", "../a.srt", "originals/../../a.srt", "a\\b", ".."}) {
+            assertThrows(IllegalArgumentException.class, () -> store.put(key, file), key);
+        }
+    }
+}
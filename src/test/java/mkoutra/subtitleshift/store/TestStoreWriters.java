@@ -0,0 +1,22 @@
+package mkoutra.subtitleshift.store;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Store writers for tests that persist uploads but do not check the store itself.
+ */
+public final class TestStoreWriters {
+
+    private TestStoreWriters() {
+    }
+
+    /**
+     * @param spoolDir The spool directory of the writer.
+     * @return         A writer to an in-memory store large enough for every test file.
+     */
+    public static AsyncStoreWriter inMemory(Path spoolDir) throws IOException {
+        return new AsyncStoreWriter(new MemorySubtitleStore(64 * 1024 * 1024, false), spoolDir, 64, 8, Duration.ofMillis(10));
+    }
+}